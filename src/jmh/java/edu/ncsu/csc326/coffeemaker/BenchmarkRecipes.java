@@ -0,0 +1,86 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Random;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Fixed inputs shared by the benchmarks.  Everything random is drawn
+ * from a Random with a fixed seed so runs are comparable.
+ */
+final class BenchmarkRecipes {
+	/** Seed for every random input */
+	static final long SEED = 326L;
+	/** Number of precomputed inputs; a power of two so it can be masked */
+	static final int INPUTS = 1024;
+	/** Units of each ingredient loaded before a measurement */
+	static final int LARGE_STOCK = 1000000000;
+
+	private BenchmarkRecipes() {
+	}
+
+	/**
+	 * Returns a recipe with the given name and amounts.
+	 */
+	static Recipe recipe(String name, int coffee, int milk, int sugar, int chocolate, int price) {
+		try {
+			Recipe recipe = new Recipe();
+			recipe.setName(name);
+			recipe.setAmtCoffee(Integer.toString(coffee));
+			recipe.setAmtMilk(Integer.toString(milk));
+			recipe.setAmtSugar(Integer.toString(sugar));
+			recipe.setAmtChocolate(Integer.toString(chocolate));
+			recipe.setPrice(Integer.toString(price));
+			return recipe;
+		} catch (RecipeException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the four menu items the benchmarks sell.
+	 */
+	static Recipe[] menu() {
+		return new Recipe[] {
+			recipe("Coffee", 3, 1, 1, 0, 50),
+			recipe("Mocha", 3, 1, 1, 2, 75),
+			recipe("Latte", 3, 3, 1, 0, 100),
+			recipe("Hot Chocolate", 0, 1, 1, 4, 65),
+		};
+	}
+
+	/**
+	 * Returns a coffee maker with the benchmark menu and a large stock.
+	 */
+	static CoffeeMaker coffeeMaker() {
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory());
+		for (Recipe recipe : menu()) {
+			coffeeMaker.addRecipe(recipe);
+		}
+		return coffeeMaker;
+	}
+
+	/**
+	 * Returns an inventory holding LARGE_STOCK of every ingredient.
+	 */
+	static Inventory inventory() {
+		Inventory inventory = new Inventory();
+		inventory.setCoffee(LARGE_STOCK);
+		inventory.setMilk(LARGE_STOCK);
+		inventory.setSugar(LARGE_STOCK);
+		inventory.setChocolate(LARGE_STOCK);
+		return inventory;
+	}
+
+	/**
+	 * Returns INPUTS random menu slots drawn with the given stream.
+	 */
+	static int[] recipeSlots(int stream) {
+		Random random = new Random(SEED + stream);
+		int[] slots = new int[INPUTS];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = random.nextInt(4);
+		}
+		return slots;
+	}
+}
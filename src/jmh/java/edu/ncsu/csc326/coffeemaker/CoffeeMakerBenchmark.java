@@ -0,0 +1,86 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Sales through one coffee maker shared by all benchmark threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoffeeMakerBenchmark {
+
+	CoffeeMaker coffeeMaker;
+	CoffeeMaker combiningCoffeeMaker;
+	CoffeeMaker changeCoffeeMaker;
+	Inventory inventory;
+	Recipe coffee;
+
+	/**
+	 * Starts every iteration with a full stock so sales never run dry.
+	 */
+	@Setup(Level.Iteration)
+	public void setUp() {
+		coffeeMaker = BenchmarkRecipes.coffeeMaker();
+		combiningCoffeeMaker = BenchmarkRecipes.coffeeMaker();
+		combiningCoffeeMaker.setOrderCombining(true);
+		changeCoffeeMaker = BenchmarkRecipes.coffeeMaker();
+		ChangeDispenser dispenser = new ChangeDispenser(100, 25, 10, 5);
+		dispenser.addCoins(BenchmarkRecipes.LARGE_STOCK, BenchmarkRecipes.LARGE_STOCK, BenchmarkRecipes.LARGE_STOCK);
+		changeCoffeeMaker.setChangeDispenser(dispenser);
+		inventory = BenchmarkRecipes.inventory();
+		coffee = BenchmarkRecipes.menu()[0];
+	}
+
+	/** Per-thread order stream */
+	@State(Scope.Thread)
+	public static class Orders {
+		int[] slots;
+		int next;
+
+		@Setup
+		public void setUp(ThreadParams threadParams) {
+			slots = BenchmarkRecipes.recipeSlots(threadParams.getThreadIndex());
+		}
+
+		int nextSlot() {
+			return slots[next++ & (BenchmarkRecipes.INPUTS - 1)];
+		}
+	}
+
+	@Benchmark
+	public int makeCoffee(Orders orders) {
+		return coffeeMaker.makeCoffee(orders.nextSlot(), 100);
+	}
+
+	@Benchmark
+	public int makeCoffeeCombining(Orders orders) {
+		return combiningCoffeeMaker.makeCoffee(orders.nextSlot(), 100);
+	}
+
+	@Benchmark
+	public int makeCoffeeWithChange(Orders orders) {
+		return changeCoffeeMaker.makeCoffee(orders.nextSlot(), 100);
+	}
+
+	@Benchmark
+	public boolean useIngredients() {
+		return inventory.useIngredients(coffee);
+	}
+}
@@ -0,0 +1,67 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the inventory report of one coffee maker shared by all
+ * benchmark threads, as text and as reused snapshots.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryReportBenchmark {
+
+	CoffeeMaker coffeeMaker;
+	Inventory inventory;
+
+	@Setup
+	public void setUp() {
+		coffeeMaker = BenchmarkRecipes.coffeeMaker();
+		inventory = new Inventory();
+	}
+
+	@Benchmark
+	public String checkInventory() {
+		return coffeeMaker.checkInventory();
+	}
+
+	@Benchmark
+	public String inventoryToString() {
+		return inventory.toString();
+	}
+
+	@Benchmark
+	public InventorySnapshot checkInventoryHolder(Poller poller) {
+		return coffeeMaker.checkInventory(poller.holder);
+	}
+
+	@Benchmark
+	public int checkInventoryBuffer(Poller poller) {
+		poller.buffer.clear();
+		return coffeeMaker.checkInventory(poller.buffer);
+	}
+
+	/**
+	 * Buffers each polling thread reuses.
+	 */
+	@State(Scope.Thread)
+	public static class Poller {
+		final InventorySnapshot holder = new InventorySnapshot();
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+	}
+}
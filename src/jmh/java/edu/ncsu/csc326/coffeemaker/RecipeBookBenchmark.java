@@ -0,0 +1,53 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Adding recipes.  Each thread fills its own book up to BOOK_SIZE
+ * recipes and then starts a new one, so the measurement covers
+ * books of every size up to BOOK_SIZE.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecipeBookBenchmark {
+	/** Recipes added to one book before it is replaced */
+	private static final int BOOK_SIZE = 256;
+
+	Recipe[] recipes;
+	RecipeBook recipeBook;
+	int next;
+
+	@Setup
+	public void setUp(ThreadParams threadParams) {
+		recipes = new Recipe[BOOK_SIZE];
+		for (int i = 0; i < recipes.length; i++) {
+			recipes[i] = BenchmarkRecipes.recipe("Recipe " + threadParams.getThreadIndex() + "-" + i, 3, 1, 1, 0, 50);
+		}
+		recipeBook = new RecipeBook();
+	}
+
+	@Benchmark
+	public boolean addRecipe() {
+		if (next == BOOK_SIZE) {
+			recipeBook = new RecipeBook();
+			next = 0;
+		}
+		return recipeBook.addRecipe(recipes[next++]);
+	}
+}
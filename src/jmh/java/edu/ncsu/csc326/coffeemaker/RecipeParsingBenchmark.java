@@ -0,0 +1,65 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * The String-parsing setters on Recipe, fed valid amounts drawn
+ * with a fixed seed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecipeParsingBenchmark {
+
+	String[] amounts;
+	Recipe recipe;
+	int next;
+
+	@Setup
+	public void setUp(ThreadParams threadParams) {
+		Random random = new Random(BenchmarkRecipes.SEED + threadParams.getThreadIndex());
+		amounts = new String[BenchmarkRecipes.INPUTS];
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = Integer.toString(random.nextInt(200));
+		}
+		recipe = new Recipe();
+	}
+
+	private String nextAmount() {
+		return amounts[next++ & (BenchmarkRecipes.INPUTS - 1)];
+	}
+
+	@Benchmark
+	public Recipe setAllAmounts() throws RecipeException {
+		recipe.setPrice(nextAmount());
+		recipe.setAmtCoffee(nextAmount());
+		recipe.setAmtMilk(nextAmount());
+		recipe.setAmtSugar(nextAmount());
+		recipe.setAmtChocolate(nextAmount());
+		return recipe;
+	}
+
+	@Benchmark
+	public Recipe setAmtCoffee() throws RecipeException {
+		recipe.setAmtCoffee(nextAmount());
+		return recipe;
+	}
+}
@@ -0,0 +1,164 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Runs a script of coffee maker commands without prompting.
+ *
+ * Each line is one command and its arguments, separated by commas.
+ * Recipe numbers start at 1, as in the menu.  Blank lines and lines
+ * starting with # are skipped.
+ * <pre>
+ * add-recipe,Mocha,50,3,1,1,2
+ * edit-recipe,1,60,3,1,1,2
+ * delete-recipe,1
+ * add-inventory,5,5,5,5
+ * check-inventory
+ * make-coffee,1,75
+ * </pre>
+ * A line that cannot be carried out is reported with its number and
+ * the script goes on.  Output is written to the given writer, which
+ * the caller flushes, and ends with a summary.
+ */
+public class BatchRunner {
+	private final CoffeeMaker coffeeMaker;
+	private final PrintWriter out;
+
+	private long commands;
+	private long errors;
+	private long moneyTaken;
+
+	/**
+	 * Creates a runner for the given coffee maker.
+	 * @param coffeeMaker
+	 * @param out where results are written
+	 */
+	public BatchRunner(CoffeeMaker coffeeMaker, PrintWriter out) {
+		this.coffeeMaker = coffeeMaker;
+		this.out = out;
+	}
+
+	/**
+	 * Runs every command read from the reader and prints a summary.
+	 * @param in
+	 * @return the number of lines that could not be carried out
+	 * @throws IOException
+	 */
+	public long run(BufferedReader in) throws IOException {
+		long soldBefore = coffeeMaker.getMetrics().snapshot().getTotal(Outcome.SOLD);
+		String line;
+		long lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			String command = line.trim();
+			if (command.isEmpty() || command.startsWith("#")) {
+				continue;
+			}
+			commands++;
+			try {
+				execute(command.split(",", -1));
+			} catch (RecipeException | InventoryException | IllegalArgumentException e) {
+				errors++;
+				out.println("Line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+		long sold = coffeeMaker.getMetrics().snapshot().getTotal(Outcome.SOLD) - soldBefore;
+		out.println("Commands: " + commands);
+		out.println("Errors: " + errors);
+		out.println("Coffees sold: " + sold);
+		out.println("Money taken: " + moneyTaken);
+		return errors;
+	}
+
+	private void execute(String[] fields) throws RecipeException, InventoryException {
+		String name = fields[0].trim();
+		if ("add-recipe".equals(name)) {
+			expect(fields, 7);
+			Recipe r = new Recipe();
+			r.setName(fields[1].trim());
+			setRecipe(r, fields, 2);
+			if (coffeeMaker.addRecipe(r)) {
+				out.println(r.getName() + " successfully added.");
+			} else {
+				out.println(r.getName() + " could not be added.");
+			}
+		} else if ("edit-recipe".equals(name)) {
+			expect(fields, 7);
+			int recipe = recipeNumber(fields[1]);
+			Recipe r = new Recipe();
+			setRecipe(r, fields, 2);
+			String edited = coffeeMaker.editRecipe(recipe, r);
+			if (edited != null) {
+				out.println(edited + " successfully edited.");
+			} else {
+				out.println("Recipe " + (recipe + 1) + " could not be edited.");
+			}
+		} else if ("delete-recipe".equals(name)) {
+			expect(fields, 2);
+			int recipe = recipeNumber(fields[1]);
+			String deleted = coffeeMaker.deleteRecipe(recipe);
+			if (deleted != null) {
+				out.println(deleted + " successfully deleted.");
+			} else {
+				out.println("Selected recipe doesn't exist and could not be deleted.");
+			}
+		} else if ("add-inventory".equals(name)) {
+			expect(fields, 5);
+			coffeeMaker.addInventory(fields[1].trim(), fields[2].trim(), fields[3].trim(), fields[4].trim());
+			out.println("Inventory successfully added");
+		} else if ("check-inventory".equals(name)) {
+			expect(fields, 1);
+			out.print(coffeeMaker.checkInventory());
+		} else if ("make-coffee".equals(name)) {
+			expect(fields, 3);
+			int recipe = recipeNumber(fields[1]);
+			int amtPaid = number(fields[2], "Please enter a positive integer");
+			int change = coffeeMaker.makeCoffee(recipe, amtPaid);
+			moneyTaken += amtPaid - change;
+			out.println("Your change is: " + change);
+		} else {
+			throw new IllegalArgumentException("Unknown command " + name);
+		}
+	}
+
+	private static void setRecipe(Recipe r, String[] fields, int first) throws RecipeException {
+		r.setPrice(fields[first].trim());
+		r.setAmtCoffee(fields[first + 1].trim());
+		r.setAmtMilk(fields[first + 2].trim());
+		r.setAmtSugar(fields[first + 3].trim());
+		r.setAmtChocolate(fields[first + 4].trim());
+	}
+
+	private static void expect(String[] fields, int count) {
+		if (fields.length != count) {
+			throw new IllegalArgumentException(fields[0].trim() + " takes " + (count - 1) + " arguments");
+		}
+	}
+
+	/**
+	 * Returns the slot of the recipe with the given 1-based number.
+	 */
+	private int recipeNumber(String field) {
+		int numRecipes = coffeeMaker.getRecipes().length;
+		String message = "Please select a number from 1-" + numRecipes + ".";
+		int recipe = number(field, message) - 1;
+		if (recipe < 0 || recipe >= numRecipes) {
+			throw new IllegalArgumentException(message);
+		}
+		return recipe;
+	}
+
+	private static int number(String field, String message) {
+		try {
+			return Integer.parseInt(field.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(message);
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The coin tubes change is paid out of, and a table of how to pay
+ * every amount of change from them.
+ *
+ * For each amount up to the largest change the machine gives, the
+ * table holds the fewest coins that make it from the coins in the
+ * tubes, or marks it unreachable, so a sale looks its change up
+ * instead of searching for it.  The tubes and their table are one
+ * immutable state swapped by compare-and-set, so sales never lock.
+ *
+ * Taking coins only removes ways of making change, so a table built
+ * from more coins stays exact for as long as every breakdown in it
+ * can still be paid.  It is rebuilt only when a tube falls below the
+ * most coins of its kind any breakdown uses, or a refill brings a
+ * tube above what the table was built from.  A tube never counts for
+ * more coins than the largest change could use, so with full tubes
+ * sales and refills rebuild nothing; a rebuild is one pass over the
+ * amounts per denomination.
+ */
+public class ChangeDispenser {
+	private final int[] denominations;
+	private final int maxChange;
+	/** Coins of each denomination the largest change could use */
+	private final int[] caps;
+
+	private final AtomicReference<State> state;
+
+	/**
+	 * Creates empty tubes for the given coins.
+	 * @param maxChange largest change paid out
+	 * @param denominations value of each tube's coins
+	 */
+	public ChangeDispenser(int maxChange, int... denominations) {
+		if (maxChange < 0) {
+			throw new IllegalArgumentException("Largest change must not be negative");
+		}
+		if (denominations.length == 0) {
+			throw new IllegalArgumentException("At least one denomination is needed");
+		}
+		this.denominations = denominations.clone();
+		this.maxChange = maxChange;
+		this.caps = new int[denominations.length];
+		for (int i = 0; i < denominations.length; i++) {
+			if (denominations[i] <= 0) {
+				throw new IllegalArgumentException("Denomination " + denominations[i] + " must be positive");
+			}
+			for (int j = 0; j < i; j++) {
+				if (denominations[j] == denominations[i]) {
+					throw new IllegalArgumentException("Denomination " + denominations[i] + " is given twice");
+				}
+			}
+			caps[i] = maxChange / denominations[i];
+		}
+		int[] empty = new int[denominations.length];
+		this.state = new AtomicReference<State>(new State(empty, Table.build(this.denominations, empty, maxChange, 0)));
+	}
+
+	/**
+	 * Returns the value of each tube's coins.
+	 * @return int[]
+	 */
+	public int[] getDenominations() {
+		return denominations.clone();
+	}
+
+	/**
+	 * Returns the number of coin tubes.
+	 * @return int
+	 */
+	public int getTubes() {
+		return denominations.length;
+	}
+
+	/**
+	 * Returns the largest change paid out.
+	 * @return int
+	 */
+	public int getMaxChange() {
+		return maxChange;
+	}
+
+	/**
+	 * Returns the coins in each tube.
+	 * @return int[]
+	 */
+	public int[] getCoins() {
+		return state.get().coins.clone();
+	}
+
+	/**
+	 * Adds coins to the tubes, one count per denomination.
+	 * @param coins
+	 * @throws IllegalArgumentException if a count is negative
+	 */
+	public void addCoins(int... coins) {
+		if (coins.length > denominations.length) {
+			throw new IllegalArgumentException("There are only " + denominations.length + " tubes");
+		}
+		for (int i = 0; i < coins.length; i++) {
+			if (coins[i] < 0) {
+				throw new IllegalArgumentException("Coins of " + denominations[i] + " must not be negative");
+			}
+		}
+		for (;;) {
+			State current = state.get();
+			int[] next = current.coins.clone();
+			for (int i = 0; i < coins.length; i++) {
+				next[i] += coins[i];
+			}
+			if (state.compareAndSet(current, current.with(next))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the tubes can pay the given change exactly.
+	 * @param amount
+	 * @return boolean
+	 */
+	public boolean canMakeChange(int amount) {
+		return amount == 0 || (amount > 0 && amount <= maxChange && state.get().table.total[amount] >= 0);
+	}
+
+	/**
+	 * Takes the fewest coins that make the given change from the
+	 * tubes, or nothing if they cannot make it exactly.
+	 * @param amount
+	 * @param into receives the coins of each denomination taken, if not null
+	 * @return true if the change was taken
+	 * @throws IllegalArgumentException if into has fewer entries than there are tubes
+	 */
+	public boolean dispense(int amount, int[] into) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("Change must not be negative");
+		}
+		if (into != null && into.length < denominations.length) {
+			throw new IllegalArgumentException("Coins must have room for " + denominations.length + " tubes");
+		}
+		if (amount > maxChange) {
+			return false;
+		}
+		int n = denominations.length;
+		for (;;) {
+			State current = state.get();
+			Table table = current.table;
+			if (table.total[amount] < 0) {
+				return false;
+			}
+			int[] next = current.coins.clone();
+			for (int i = 0; i < n; i++) {
+				next[i] -= table.coins[amount * n + i];
+			}
+			if (state.compareAndSet(current, current.with(next))) {
+				if (into != null) {
+					System.arraycopy(table.coins, amount * n, into, 0, n);
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns how many times the table has been built.
+	 */
+	int getBuilds() {
+		return state.get().table.generation + 1;
+	}
+
+	/**
+	 * Coins in the tubes and a table that is exact for them.
+	 */
+	private final class State {
+		final int[] coins;
+		final Table table;
+
+		State(int[] coins, Table table) {
+			this.coins = coins;
+			this.table = table;
+		}
+
+		/**
+		 * Returns the state with the given coins, keeping this table if
+		 * it is still exact for them.
+		 */
+		State with(int[] next) {
+			int[] limits = new int[next.length];
+			boolean exact = true;
+			for (int i = 0; i < next.length; i++) {
+				limits[i] = Math.min(next[i], caps[i]);
+				exact &= table.maxUsed[i] <= limits[i] && limits[i] <= table.limits[i];
+			}
+			return new State(next, exact ? table : Table.build(denominations, limits, maxChange, table.generation + 1));
+		}
+	}
+
+	/**
+	 * Fewest coins making each amount from limited coins.
+	 */
+	private static final class Table {
+		/** Coins of each denomination the table was built from */
+		final int[] limits;
+		/** Most coins of each denomination any breakdown uses */
+		final int[] maxUsed;
+		/** Coins of each amount, or -1 if it cannot be made */
+		final int[] total;
+		/** Coins of denomination i in the breakdown of amount a, at a * n + i */
+		final int[] coins;
+		final int generation;
+
+		private Table(int[] limits, int[] maxUsed, int[] total, int[] coins, int generation) {
+			this.limits = limits;
+			this.maxUsed = maxUsed;
+			this.total = total;
+			this.coins = coins;
+			this.generation = generation;
+		}
+
+		/**
+		 * Adds the denominations one at a time.  With k coins of value d
+		 * allowed, amount a takes j coins of d on top of the best making
+		 * a - j * d, for the j that gives the fewest coins; the amounts
+		 * a, a - d, a - 2d, ... share their candidates, so a sliding
+		 * window minimum over them finds each j in constant time.
+		 */
+		static Table build(int[] denominations, int[] limits, int maxChange, int generation) {
+			int n = denominations.length;
+			int size = maxChange + 1;
+			int[] total = new int[size];
+			Arrays.fill(total, -1);
+			total[0] = 0;
+			int[] coins = new int[size * n];
+			int[] next = new int[size];
+			int[] taken = new int[size];
+			int[] window = new int[size];
+			for (int i = 0; i < n; i++) {
+				int value = denominations[i];
+				int limit = limits[i];
+				for (int start = 0; start < value && start < size; start++) {
+					int head = 0;
+					int tail = 0;
+					for (int j = 0, a = start; a < size; j++, a += value) {
+						// Candidate q costs total[start + q * value] - q + j coins for amount a.
+						if (total[a] >= 0) {
+							while (tail > head && total[start + window[tail - 1] * value] - window[tail - 1] >= total[a] - j) {
+								tail--;
+							}
+							window[tail++] = j;
+						}
+						while (tail > head && window[head] < j - limit) {
+							head++;
+						}
+						if (tail > head) {
+							int q = window[head];
+							next[a] = total[start + q * value] - q + j;
+							taken[a] = j - q;
+						} else {
+							next[a] = -1;
+						}
+					}
+				}
+				// Downwards, so each breakdown is copied from one not yet overwritten.
+				for (int a = size - 1; a >= 0; a--) {
+					if (next[a] >= 0) {
+						int from = a - taken[a] * value;
+						System.arraycopy(coins, from * n, coins, a * n, i);
+						coins[a * n + i] = taken[a];
+					}
+				}
+				System.arraycopy(next, 0, total, 0, size);
+			}
+			int[] maxUsed = new int[n];
+			for (int a = 0; a < size; a++) {
+				if (total[a] >= 0) {
+					for (int i = 0; i < n; i++) {
+						maxUsed[i] = Math.max(maxUsed[i], coins[a * n + i]);
+					}
+				}
+			}
+			return new Table(limits, maxUsed, total, coins, generation);
+		}
+	}
+}
@@ -13,6 +13,10 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 
 /**
@@ -23,6 +27,20 @@ public class CoffeeMaker {
 	private RecipeBook recipeBook;
 	/** Inventory of the coffee maker */
     private Inventory inventory;
+	/** Sales counters and latencies of the coffee maker */
+	private final CoffeeMakerMetrics metrics = new CoffeeMakerMetrics();
+	/** Servings of each recipe, kept once a menu first asks for them */
+	private volatile MenuAvailability menuAvailability;
+	/** Combines concurrent orders for the same recipe, or null */
+	private volatile OrderCombiner orderCombiner;
+	/** Takes restocks in striped cells, or null to restock directly */
+	private volatile StripedRestocker restocker;
+	/** Milliseconds between background folds of striped restocks */
+	private static final long RECONCILE_MILLIS = 10;
+	/** Record of every order taken, or null */
+	private volatile SalesLedger salesLedger;
+	/** Coin tubes change is paid from, or null to leave change to the caller */
+	private volatile ChangeDispenser changeDispenser;
 	
     /**
      * Constructor for the coffee maker
@@ -86,51 +104,508 @@ public class CoffeeMaker {
      * @param amtChocolate
      * @return boolean
      */
-    public synchronized void addInventory(String amtCoffee, String amtMilk, String amtSugar, String amtChocolate) throws InventoryException {
-	    inventory.addCoffee(amtCoffee);
-	    inventory.addMilk(amtMilk);
-	    inventory.addSugar(amtSugar);
-	    inventory.addChocolate(amtChocolate);
+    public void addInventory(String amtCoffee, String amtMilk, String amtSugar, String amtChocolate) throws InventoryException {
+	    addInventory(Inventory.parseUnits(IngredientCatalog.COFFEE, amtCoffee),
+	    		Inventory.parseUnits(IngredientCatalog.MILK, amtMilk),
+	    		Inventory.parseUnits(IngredientCatalog.SUGAR, amtSugar),
+	    		Inventory.parseUnits(IngredientCatalog.CHOCOLATE, amtChocolate));
+    }
+    
+    /**
+     * Adds the given units to the inventory.  Nothing is added if
+     * any amount is negative.
+     * @param amtCoffee
+     * @param amtMilk
+     * @param amtSugar
+     * @param amtChocolate
+     * @throws InventoryException
+     */
+    public void addInventory(int amtCoffee, int amtMilk, int amtSugar, int amtChocolate) throws InventoryException {
+    	restock(new int[] {amtCoffee, amtMilk, amtSugar, amtChocolate});
+    }
+    
+    /**
+     * Adds a whole delivery to the inventory in one step.  The
+     * delivery holds the units of each ingredient, indexed by
+     * IngredientCatalog id.  Nothing is added if any amount is negative
+     * or for an ingredient not in the catalog.
+     * @param delivery
+     * @throws InventoryException
+     */
+    public void restock(int[] delivery) throws InventoryException {
+    	StripedRestocker striped = restocker;
+    	if (striped != null) {
+    		striped.restock(delivery);
+    	} else {
+    		inventory.restock(delivery);
+    	}
+    }
+    
+    /**
+     * Turns striped restocking on or off.  When it is on, restocks go
+     * into per-thread cells and reach the inventory when a sale finds
+     * the stock short, when the inventory is checked, or within a few
+     * milliseconds in the background, so restock floods do not slow
+     * down sales.  Turning it off waits for restocks still in flight
+     * and moves whatever is left into the inventory.
+     * @param striped
+     * @see StripedRestocker
+     */
+    public synchronized void setStripedRestocking(boolean striped) {
+    	StripedRestocker current = restocker;
+    	if (striped && current == null) {
+    		StripedRestocker started = new StripedRestocker(inventory);
+    		started.start(RECONCILE_MILLIS);
+    		restocker = started;
+    	} else if (!striped && current != null) {
+    		restocker = null;
+    		current.stop();
+    	}
     }
     
     /**
      * Returns the inventory of the coffee maker
      * @return Inventory
      */
-    public synchronized String checkInventory() {
+    public String checkInventory() {
+    	foldRestocks();
         return inventory.toString();
     }
     
+    /**
+     * Moves striped restocks into the inventory, if restocks are striped.
+     */
+    private void foldRestocks() {
+    	StripedRestocker striped = restocker;
+    	if (striped != null) {
+    		striped.fold();
+    	}
+    }
+    
+    /**
+     * Copies the inventory into the given holder without locking or
+     * building any text, for callers that poll often.
+     * @param into
+     * @return the holder
+     */
+    public InventorySnapshot checkInventory(InventorySnapshot into) {
+    	foldRestocks();
+    	return inventory.snapshot(into);
+    }
+    
+    /**
+     * Copies the inventory into the given array, indexed by
+     * IngredientCatalog id.
+     * @param into
+     * @return the number of ingredients stocked
+     * @see Inventory#snapshot(int[])
+     */
+    public int checkInventory(int[] into) {
+    	foldRestocks();
+    	return inventory.snapshot(into);
+    }
+    
+    /**
+     * Writes the inventory to the given buffer.
+     * @param out
+     * @return the number of bytes written
+     * @see Inventory#snapshot(ByteBuffer)
+     */
+    public int checkInventory(ByteBuffer out) {
+    	foldRestocks();
+    	return inventory.snapshot(out);
+    }
+    
     /**
      * Returns the change of a user's beverage purchase, or
-     * the user's money if the beverage cannot be made
+     * the user's money if the beverage cannot be made.
+     * Ingredients are taken atomically by the inventory, and the
+     * recipe is read from one snapshot of the recipe book, so 
+     * concurrent purchases and menu edits never block a sale.
      * @param r
      * @param amtPaid
      * @return int
      */
-    public synchronized int makeCoffee(int recipeToPurchase, int amtPaid) {
-        int change = 0;
-        
-        if (getRecipes()[recipeToPurchase] == null) {
-        	change = amtPaid;
-        } else if (getRecipes()[recipeToPurchase].getPrice() <= amtPaid) {
-        	if (inventory.useIngredients(getRecipes()[recipeToPurchase])) {
-        		change = amtPaid - getRecipes()[recipeToPurchase].getPrice();
+    public int makeCoffee(int recipeToPurchase, int amtPaid) {
+    	return makeCoffee(recipeToPurchase, amtPaid, null);
+    }
+    
+    /**
+     * Returns the change of a user's beverage purchase, or the user's
+     * money if the beverage cannot be made.  If the machine has a
+     * change dispenser, the change is taken from its coin tubes before
+     * any ingredients are used, and a sale it cannot pay exact change
+     * for is refused.
+     * @param recipeToPurchase
+     * @param amtPaid
+     * @param coins receives the coins of each denomination paid out, if not null
+     * @return int
+     * @throws IllegalArgumentException if coins has fewer entries than the dispenser has tubes
+     * @see #setChangeDispenser(ChangeDispenser)
+     */
+    public int makeCoffee(int recipeToPurchase, int amtPaid, int[] coins) {
+        long start = System.nanoTime();
+        SalesLedger ledger = salesLedger;
+        // The ledger needs the recipe's stable id, so it reads the recipe from a snapshot.
+        RecipeBook.Snapshot book = ledger != null ? recipeBook.snapshot() : null;
+        Recipe recipe = (book != null ? book.recipes() : recipeBook.getRecipes())[recipeToPurchase];
+        int recipeId = book != null ? book.getRecipeIdAt(recipeToPurchase) : -1;
+        return sell(start, recipeToPurchase, recipeId, recipe, amtPaid, coins, null, ledger);
+    }
+    
+    /**
+     * Sells one beverage and records the order in the metrics and the
+     * ledger.  The change is taken from the change dispenser, if there
+     * is one, before the ingredients: from the reservation if one is
+     * given, otherwise from the inventory.  A reservation is released
+     * unless the sale goes through.
+     */
+    private int sell(long start, int slot, int recipeId, Recipe recipe, int amtPaid, int[] coins,
+    		Reservation reservation, SalesLedger ledger) {
+        ChangeDispenser dispenser = changeDispenser;
+        if (dispenser != null && coins != null && coins.length < dispenser.getTubes()) {
+        	// Checked before any coins are taken, so a short array cannot lose them.
+        	throw new IllegalArgumentException("Coins must have room for " + dispenser.getTubes() + " tubes");
+        }
+        if (coins != null) {
+        	Arrays.fill(coins, 0);
+        }
+        long inventoryNanos = 0;
+        int change = amtPaid;
+        Outcome outcome;
+        if (recipe == null) {
+        	outcome = Outcome.NO_RECIPE;
+        } else if (recipe.getPrice() <= amtPaid) {
+        	int owed = amtPaid - recipe.getPrice();
+        	int[] paidOut = dispenser == null ? null : coins != null ? coins : new int[dispenser.getTubes()];
+        	if (dispenser != null && !dispenser.dispense(owed, paidOut)) {
+        		outcome = Outcome.NOT_ENOUGH_CHANGE;
         	} else {
-        		change = amtPaid;
+        		long inventoryStart = System.nanoTime();
+        		boolean used = reservation != null ? inventory.commit(reservation) : useIngredients(slot, recipe);
+        		inventoryNanos = System.nanoTime() - inventoryStart;
+        		if (used) {
+        			change = owed;
+        			outcome = Outcome.SOLD;
+        		} else {
+        			if (dispenser != null) {
+        				dispenser.addCoins(Arrays.copyOf(paidOut, dispenser.getTubes()));
+        				Arrays.fill(paidOut, 0);
+        			}
+        			outcome = Outcome.NOT_ENOUGH_INGREDIENTS;
+        		}
         	}
         } else {
-        	change = amtPaid;
+        	outcome = Outcome.NOT_ENOUGH_MONEY;
+        }
+        if (reservation != null && outcome != Outcome.SOLD) {
+        	inventory.abort(reservation);
         }
         
+        metrics.record(slot, outcome, System.nanoTime() - start, inventoryNanos);
+        if (ledger != null) {
+        	ledger.record(System.currentTimeMillis(), recipeId, recipe == null ? 0 : recipe.getPrice(), amtPaid, outcome);
+        }
         return change;
     }
+    
+    /**
+     * Takes the ingredients of one serving, through the order combiner
+     * if it is on.  If the stock is short while restocks are striped,
+     * they are folded in and the sale is tried once more.
+     */
+    private boolean useIngredients(int slot, Recipe recipe) {
+    	OrderCombiner combiner = orderCombiner;
+    	boolean used = combiner != null ? combiner.useIngredients(slot, recipe) : inventory.useIngredients(recipe);
+    	if (!used) {
+    		StripedRestocker striped = restocker;
+    		if (striped != null) {
+    			// Retry even if another sale did the fold; its units may have just landed.
+    			striped.fold();
+    			used = inventory.useIngredients(recipe);
+    		}
+    	}
+    	return used;
+    }
+    
+    /**
+     * Takes the ingredients of a batch of orders by the same rules as
+     * single sales.  With order combining on, each order joins its
+     * slot's lane as a single sale would; otherwise the batch takes one
+     * atomic pass.  If some are short while restocks are striped, they
+     * are folded in and the orders left are tried once more.
+     */
+    private void useIngredients(int[] slots, Recipe[] orders, boolean[] made) {
+    	OrderCombiner combiner = orderCombiner;
+    	if (combiner != null) {
+    		for (int i = 0; i < orders.length; i++) {
+    			made[i] = orders[i] != null && useIngredients(slots[i], orders[i]);
+    		}
+    		return;
+    	}
+    	inventory.useIngredients(orders, made);
+    	StripedRestocker striped = restocker;
+    	if (striped == null) {
+    		return;
+    	}
+    	Recipe[] left = null;
+    	for (int i = 0; i < orders.length; i++) {
+    		if (orders[i] != null && !made[i]) {
+    			if (left == null) {
+    				left = new Recipe[orders.length];
+    			}
+    			left[i] = orders[i];
+    		}
+    	}
+    	if (left != null) {
+    		striped.fold();
+    		boolean[] retried = new boolean[orders.length];
+    		inventory.useIngredients(left, retried);
+    		for (int i = 0; i < orders.length; i++) {
+    			made[i] |= retried[i];
+    		}
+    	}
+    }
+    
+    /**
+     * Turns combining of concurrent orders on or off.  When it is on,
+     * orders for the same recipe that arrive together take their
+     * ingredients in one inventory update, which helps when many
+     * threads sell the same few drinks.
+     * @param combine
+     * @see OrderCombiner
+     */
+    public void setOrderCombining(boolean combine) {
+    	orderCombiner = combine ? new OrderCombiner(inventory) : null;
+    }
+    
+    /**
+     * Sets the coin tubes change is paid from, or null to leave paying
+     * change to the caller.  While one is set, a sale whose change the
+     * tubes cannot pay exactly is refused before any ingredients are
+     * used.
+     * @param dispenser
+     */
+    public void setChangeDispenser(ChangeDispenser dispenser) {
+    	changeDispenser = dispenser;
+    }
+    
+    /**
+     * Returns the coin tubes change is paid from, or null.
+     * @return ChangeDispenser
+     */
+    public ChangeDispenser getChangeDispenser() {
+    	return changeDispenser;
+    }
+    
+    /**
+     * Holds back the ingredients for a purchase while it is being
+     * paid for.  Returns null if the recipe does not exist or the
+     * ingredients are not in stock.  The reservation is released if
+     * it is not committed within the timeout.
+     * @param recipeToPurchase
+     * @param timeoutMillis
+     * @return Reservation
+     */
+    public Reservation reserveCoffee(int recipeToPurchase, long timeoutMillis) {
+    	RecipeBook.Snapshot book = recipeBook.snapshot();
+    	Recipe recipe = book.recipes()[recipeToPurchase];
+    	if (recipe == null) {
+    		return null;
+    	}
+    	Reservation reservation = inventory.reserve(recipe, timeoutMillis);
+    	if (reservation != null) {
+    		reservation.slot = recipeToPurchase;
+    		reservation.recipeId = book.getRecipeIdAt(recipeToPurchase);
+    	}
+    	return reservation;
+    }
+    
+    /**
+     * Returns the change of a reserved purchase once it has been paid,
+     * or the user's money if the payment is short or the reservation
+     * has expired.  A short payment releases the reservation.
+     * @param reservation
+     * @param amtPaid
+     * @return int
+     */
+    public int commitCoffee(Reservation reservation, int amtPaid) {
+    	return commitCoffee(reservation, amtPaid, null);
+    }
+    
+    /**
+     * Returns the change of a reserved purchase once it has been paid,
+     * or the user's money if it cannot be sold.  The order is counted
+     * and paid like one from makeCoffee: the change comes from the
+     * change dispenser, if there is one, and a sale that is refused
+     * releases the reservation.
+     * @param reservation
+     * @param amtPaid
+     * @param coins receives the coins of each denomination paid out, if not null
+     * @return int
+     * @throws IllegalArgumentException if coins has fewer entries than the dispenser has tubes
+     * @see #makeCoffee(int, int, int[])
+     */
+    public int commitCoffee(Reservation reservation, int amtPaid, int[] coins) {
+    	return sell(System.nanoTime(), reservation.slot, reservation.recipeId, reservation.getRecipe(), amtPaid,
+    			coins, reservation, salesLedger);
+    }
+    
+    /**
+     * Releases a reserved purchase that will not be paid.
+     * @param reservation
+     * @return true if the ingredients went back into the inventory
+     */
+    public boolean abortCoffee(Reservation reservation) {
+    	return inventory.abort(reservation);
+    }
+    
+    /**
+     * Returns the change for each of a batch of purchases, or the
+     * user's money for each beverage that cannot be made.  Order i
+     * buys recipesToPurchase[i] and pays amtsPaid[i].  The orders
+     * are filled in array order against one snapshot of the recipes
+     * and, unless orders are being combined, one atomic pass over the
+     * inventory.  With a change dispenser,
+     * each order's change is taken before that pass, and orders it
+     * cannot pay change for are refused.
+     * @param recipesToPurchase
+     * @param amtsPaid
+     * @return int[]
+     * @throws IllegalArgumentException if the arrays differ in length or
+     * any order names a recipe slot that does not exist, before any
+     * order is filled
+     */
+    public int[] makeCoffeeBatch(int[] recipesToPurchase, int[] amtsPaid) {
+    	if (recipesToPurchase.length != amtsPaid.length) {
+    		throw new IllegalArgumentException("Each order needs one recipe and one payment");
+    	}
+    	long start = System.nanoTime();
+    	SalesLedger ledger = salesLedger;
+    	RecipeBook.Snapshot book = ledger != null ? recipeBook.snapshot() : null;
+    	Recipe[] recipes = book != null ? book.recipes() : recipeBook.getRecipes();
+    	// Checked before any change is taken, so a bad order cannot strand coins.
+    	for (int slot : recipesToPurchase) {
+    		if (slot < 0 || slot >= recipes.length) {
+    			throw new IllegalArgumentException("No recipe slot " + slot);
+    		}
+    	}
+    	Recipe[] orders = new Recipe[recipesToPurchase.length];
+    	ChangeDispenser dispenser = changeDispenser;
+    	int[][] paidOut = dispenser != null ? new int[orders.length][] : null;
+    	for (int i = 0; i < orders.length; i++) {
+    		Recipe recipe = recipes[recipesToPurchase[i]];
+    		if (recipe != null && recipe.getPrice() <= amtsPaid[i]) {
+    			if (dispenser != null) {
+    				// Change is taken before the inventory pass, so an order without it uses nothing.
+    				int[] coins = new int[dispenser.getTubes()];
+    				if (!dispenser.dispense(amtsPaid[i] - recipe.getPrice(), coins)) {
+    					continue;
+    				}
+    				paidOut[i] = coins;
+    			}
+    			orders[i] = recipe;
+    		}
+    	}
+    	boolean[] made = new boolean[orders.length];
+    	long inventoryStart = System.nanoTime();
+    	try {
+    		useIngredients(recipesToPurchase, orders, made);
+    	} finally {
+    		// Also when a combined order fails, so the change of unmade orders goes back.
+    		if (dispenser != null) {
+    			for (int i = 0; i < orders.length; i++) {
+    				if (paidOut[i] != null && !made[i]) {
+    					dispenser.addCoins(paidOut[i]);
+    				}
+    			}
+    		}
+    	}
+    	long inventoryNanos = System.nanoTime() - inventoryStart;
+    	
+    	int[] change = new int[orders.length];
+    	long orderNanos = System.nanoTime() - start;
+    	long now = ledger != null ? System.currentTimeMillis() : 0;
+    	for (int i = 0; i < orders.length; i++) {
+    		change[i] = made[i] ? amtsPaid[i] - orders[i].getPrice() : amtsPaid[i];
+    		Outcome outcome;
+    		if (made[i]) {
+    			outcome = Outcome.SOLD;
+    		} else if (recipes[recipesToPurchase[i]] == null) {
+    			outcome = Outcome.NO_RECIPE;
+    		} else if (recipes[recipesToPurchase[i]].getPrice() > amtsPaid[i]) {
+    			outcome = Outcome.NOT_ENOUGH_MONEY;
+    		} else if (orders[i] == null) {
+    			outcome = Outcome.NOT_ENOUGH_CHANGE;
+    		} else {
+    			outcome = Outcome.NOT_ENOUGH_INGREDIENTS;
+    		}
+    		metrics.record(recipesToPurchase[i], outcome, orderNanos, orders[i] != null ? inventoryNanos : 0);
+    		if (ledger != null) {
+    			Recipe recipe = recipes[recipesToPurchase[i]];
+    			ledger.record(now, book.getRecipeIdAt(recipesToPurchase[i]),
+    					recipe == null ? 0 : recipe.getPrice(), amtsPaid[i], outcome);
+    		}
+    	}
+    	return change;
+    }
+
+	/**
+	 * Returns the sales counters and latencies recorded by
+	 * makeCoffee and makeCoffeeBatch.
+	 * @return CoffeeMakerMetrics
+	 */
+	public CoffeeMakerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers a listener to be told, away from the selling threads,
+	 * when the units of an ingredient fall below the threshold or
+	 * climb back to it.
+	 * @param ingredient IngredientCatalog id
+	 * @param threshold
+	 * @param listener
+	 * @see Inventory#addThresholdListener(int, int, StockThresholdListener)
+	 */
+	public void addThresholdListener(int ingredient, int threshold, StockThresholdListener listener) {
+		inventory.addThresholdListener(ingredient, threshold, listener);
+	}
+
+	/**
+	 * Returns the servings available of each recipe, which menus can
+	 * read without locking.  The answers are kept up to date from the
+	 * first call on.
+	 * @return MenuAvailability
+	 */
+	public MenuAvailability getMenuAvailability() {
+		MenuAvailability availability = menuAvailability;
+		if (availability == null) {
+			synchronized (this) {
+				availability = menuAvailability;
+				if (availability == null) {
+					availability = MenuAvailability.attach(recipeBook, inventory);
+					menuAvailability = availability;
+				}
+			}
+		}
+		return availability;
+	}
+
+	/**
+	 * Starts recording every order taken by makeCoffee and
+	 * makeCoffeeBatch in the given ledger, or stops if it is null.
+	 * @param ledger
+	 */
+	public void setSalesLedger(SalesLedger ledger) {
+		salesLedger = ledger;
+	}
 
 	/**
 	 * Returns the list of Recipes in the RecipeBook.
 	 * @return Recipe []
 	 */
-	public synchronized Recipe[] getRecipes() {
+	public Recipe[] getRecipes() {
 			return recipeBook.getRecipes();
 	}
 }
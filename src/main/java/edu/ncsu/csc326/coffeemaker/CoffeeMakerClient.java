@@ -0,0 +1,266 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.ServerException;
+
+/**
+ * Blocking client for a CoffeeMakerServer, for kiosks, terminals and
+ * tests.  A client is one connection and must be used by one thread
+ * at a time.
+ */
+public class CoffeeMakerClient implements Closeable {
+	/** Requests sent ahead before their responses are read */
+	private static final int PIPELINE_WINDOW = 256;
+
+	private final SocketChannel channel;
+	/** Requests being built, in write mode */
+	private ByteBuffer out = ByteBuffer.allocate(1024);
+	/** Responses received, in read mode */
+	private ByteBuffer in = ByteBuffer.allocate(1024);
+
+	/**
+	 * Connects to the server at the given address.
+	 * @param address
+	 * @throws IOException
+	 */
+	public CoffeeMakerClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		in.flip();
+	}
+
+	/**
+	 * Returns the change of a purchase, or the money paid if the
+	 * beverage cannot be made.
+	 * @param recipeToPurchase
+	 * @param amtPaid
+	 * @return int
+	 * @throws IOException
+	 */
+	public int makeCoffee(int recipeToPurchase, int amtPaid) throws IOException {
+		putMakeCoffee(recipeToPurchase, amtPaid);
+		flush();
+		return response().getInt();
+	}
+
+	/**
+	 * Sends a batch of purchases without waiting for each one and
+	 * returns the change of each, in order.
+	 * @param recipesToPurchase
+	 * @param amtsPaid
+	 * @return int[]
+	 * @throws IOException
+	 */
+	public int[] makeCoffee(int[] recipesToPurchase, int[] amtsPaid) throws IOException {
+		if (recipesToPurchase.length != amtsPaid.length) {
+			throw new IllegalArgumentException("Every order needs exactly one payment");
+		}
+		int[] change = new int[recipesToPurchase.length];
+		for (int start = 0; start < change.length; start += PIPELINE_WINDOW) {
+			int end = Math.min(change.length, start + PIPELINE_WINDOW);
+			for (int i = start; i < end; i++) {
+				putMakeCoffee(recipesToPurchase[i], amtsPaid[i]);
+			}
+			flush();
+			for (int i = start; i < end; i++) {
+				change[i] = response().getInt();
+			}
+		}
+		return change;
+	}
+
+	/**
+	 * Returns true if the recipe was added.
+	 * @param r
+	 * @return boolean
+	 * @throws IOException
+	 */
+	public boolean addRecipe(Recipe r) throws IOException {
+		int frame = begin(CoffeeMakerProtocol.ADD_RECIPE, WireFormat.recipeBytes(r));
+		WireFormat.putRecipe(out, r);
+		end(frame);
+		flush();
+		return response().get() != 0;
+	}
+
+	/**
+	 * Returns the name of the edited recipe, or null if it could not
+	 * be edited.
+	 * @param recipeToEdit
+	 * @param r
+	 * @return String
+	 * @throws IOException
+	 */
+	public String editRecipe(int recipeToEdit, Recipe r) throws IOException {
+		int frame = begin(CoffeeMakerProtocol.EDIT_RECIPE, 4 + WireFormat.recipeBytes(r));
+		out.putInt(recipeToEdit);
+		WireFormat.putRecipe(out, r);
+		end(frame);
+		flush();
+		return getName(response());
+	}
+
+	/**
+	 * Returns the name of the deleted recipe, or null if the slot
+	 * was empty.
+	 * @param recipeToDelete
+	 * @return String
+	 * @throws IOException
+	 */
+	public String deleteRecipe(int recipeToDelete) throws IOException {
+		int frame = begin(CoffeeMakerProtocol.DELETE_RECIPE, 4);
+		out.putInt(recipeToDelete);
+		end(frame);
+		flush();
+		return getName(response());
+	}
+
+	/**
+	 * Adds a delivery, indexed by IngredientCatalog id, to the
+	 * inventory.
+	 * @param delivery
+	 * @throws IOException
+	 * @throws InventoryException if the server refused the delivery
+	 */
+	public void addInventory(int[] delivery) throws IOException, InventoryException {
+		int frame = begin(CoffeeMakerProtocol.ADD_INVENTORY, 4 + 4 * delivery.length);
+		out.putInt(delivery.length);
+		for (int units : delivery) {
+			out.putInt(units);
+		}
+		end(frame);
+		flush();
+		try {
+			response();
+		} catch (ServerException e) {
+			throw new InventoryException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the units of each ingredient, indexed by
+	 * IngredientCatalog id.
+	 * @return int[]
+	 * @throws IOException
+	 */
+	public int[] checkInventory() throws IOException {
+		end(begin(CoffeeMakerProtocol.CHECK_INVENTORY, 0));
+		flush();
+		ByteBuffer response = response();
+		int[] units = new int[response.getInt()];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = response.getInt();
+		}
+		return units;
+	}
+
+	/**
+	 * Returns the recipes of the coffee maker, with null for empty
+	 * slots.
+	 * @return Recipe[]
+	 * @throws IOException
+	 */
+	public Recipe[] getRecipes() throws IOException {
+		end(begin(CoffeeMakerProtocol.GET_RECIPES, 0));
+		flush();
+		ByteBuffer response = response();
+		Recipe[] recipes = new Recipe[response.getInt()];
+		for (int i = 0; i < recipes.length; i++) {
+			recipes[i] = WireFormat.getRecipe(response);
+		}
+		return recipes;
+	}
+
+	/**
+	 * Closes the connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void putMakeCoffee(int recipeToPurchase, int amtPaid) {
+		int frame = begin(CoffeeMakerProtocol.MAKE_COFFEE, 8);
+		out.putInt(recipeToPurchase);
+		out.putInt(amtPaid);
+		end(frame);
+	}
+
+	/** Starts a request frame with room for the given payload. */
+	private int begin(byte op, int payloadBytes) {
+		if (out.remaining() < 5 + payloadBytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + 5 + payloadBytes));
+			out.flip();
+			grown.put(out);
+			out = grown;
+		}
+		int frame = out.position();
+		out.putInt(0);
+		out.put(op);
+		return frame;
+	}
+
+	private void end(int frame) {
+		out.putInt(frame, out.position() - frame - 4);
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Reads the next response and returns its payload.
+	 * @throws ServerException if the server answered with an error
+	 */
+	private ByteBuffer response() throws IOException {
+		fill(4);
+		int length = in.getInt();
+		fill(length);
+		ByteBuffer response = in.slice();
+		response.limit(length);
+		in.position(in.position() + length);
+		if (response.get() != CoffeeMakerProtocol.OK) {
+			throw new ServerException(WireFormat.getString(response));
+		}
+		return response;
+	}
+
+	/** Reads until at least the given number of bytes are buffered. */
+	private void fill(int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return;
+		}
+		if (in.capacity() < bytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(bytes, in.capacity() * 2));
+			grown.put(in);
+			in = grown;
+		} else {
+			in.compact();
+		}
+		while (in.position() < bytes) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("Server closed the connection");
+			}
+		}
+		in.flip();
+	}
+
+	private static String getName(ByteBuffer response) {
+		if (response.getShort(response.position()) < 0) {
+			return null;
+		}
+		return WireFormat.getString(response);
+	}
+}
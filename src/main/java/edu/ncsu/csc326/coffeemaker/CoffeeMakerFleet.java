@@ -0,0 +1,131 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * A set of independent coffee makers hosted in one process.
+ *
+ * Each machine owns its own Inventory, so orders on different
+ * machines never touch shared state.  Machines are identified by
+ * the dense integer id handed out by addMachine, which makes
+ * lookup a single array read.
+ */
+public class CoffeeMakerFleet {
+	/** Initial number of machine slots */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Machines indexed by id; replaced, never changed in place, once published */
+	private volatile CoffeeMaker[] machines;
+	/** Number of machines added so far */
+	private volatile int size;
+	/** Recipe book shared by every machine, or null if each has its own */
+	private final RecipeBook sharedRecipeBook;
+
+	/**
+	 * Creates an empty fleet where every machine has its own
+	 * recipe book.
+	 */
+	public CoffeeMakerFleet() {
+		this(null);
+	}
+
+	/**
+	 * Creates an empty fleet where every machine sells from the
+	 * given recipe book.  Sharing the menu keeps the per-machine
+	 * footprint down to the machine and its inventory.
+	 *
+	 * @param sharedRecipeBook recipe book used by all machines, or null
+	 */
+	public CoffeeMakerFleet(RecipeBook sharedRecipeBook) {
+		this.sharedRecipeBook = sharedRecipeBook;
+		this.machines = new CoffeeMaker[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a new machine with a full default inventory and returns
+	 * its id.
+	 * @return int
+	 */
+	public int addMachine() {
+		RecipeBook recipeBook = sharedRecipeBook != null ? sharedRecipeBook : new RecipeBook();
+		return addMachine(new CoffeeMaker(recipeBook, new Inventory()));
+	}
+
+	/**
+	 * Adds the given machine to the fleet and returns its id.
+	 * @param coffeeMaker
+	 * @return int
+	 */
+	public synchronized int addMachine(CoffeeMaker coffeeMaker) {
+		int id = size;
+		CoffeeMaker[] current = machines;
+		if (id == current.length) {
+			current = Arrays.copyOf(current, current.length * 2);
+		}
+		current[id] = coffeeMaker;
+		machines = current;
+		size = id + 1;
+		return id;
+	}
+
+	/**
+	 * Returns the machine with the given id.
+	 * @param machineId
+	 * @return CoffeeMaker
+	 * @throws IndexOutOfBoundsException if no machine has that id
+	 */
+	public CoffeeMaker getMachine(int machineId) {
+		if (machineId < 0 || machineId >= size) {
+			throw new IndexOutOfBoundsException("No coffee maker with id " + machineId);
+		}
+		return machines[machineId];
+	}
+
+	/**
+	 * Returns the change of a purchase on the given machine, or
+	 * the user's money if the beverage cannot be made.
+	 * @param machineId
+	 * @param recipeToPurchase
+	 * @param amtPaid
+	 * @return int
+	 */
+	public int makeCoffee(int machineId, int recipeToPurchase, int amtPaid) {
+		return getMachine(machineId).makeCoffee(recipeToPurchase, amtPaid);
+	}
+
+	/**
+	 * Applies a delivery manifest to the fleet.  Each machine in
+	 * machineIds gets the delivery at the same position, which holds
+	 * the units of each ingredient indexed by IngredientCatalog id.
+	 * The whole manifest is checked first, so nothing is added if any
+	 * machine id or amount is invalid.
+	 * @param machineIds
+	 * @param deliveries
+	 * @throws InventoryException if any amount is negative or for an unknown ingredient
+	 * @throws IllegalArgumentException if the arrays differ in length
+	 * @throws IndexOutOfBoundsException if no machine has one of the ids
+	 */
+	public void restock(int[] machineIds, int[][] deliveries) throws InventoryException {
+		if (machineIds.length != deliveries.length) {
+			throw new IllegalArgumentException("Every machine needs exactly one delivery");
+		}
+		CoffeeMaker[] targets = new CoffeeMaker[machineIds.length];
+		for (int i = 0; i < machineIds.length; i++) {
+			targets[i] = getMachine(machineIds[i]);
+			Inventory.checkDelivery(deliveries[i]);
+		}
+		for (int i = 0; i < targets.length; i++) {
+			targets[i].restock(deliveries[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of machines in the fleet.
+	 * @return int
+	 */
+	public int size() {
+		return size;
+	}
+}
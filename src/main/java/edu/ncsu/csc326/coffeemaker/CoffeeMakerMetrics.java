@@ -0,0 +1,250 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sales counters and latency histograms of one coffee maker.
+ *
+ * Orders record into an active set of striped counters and two
+ * histograms.  A snapshot swaps in the spare set, waits for orders
+ * still recording into the old one, and folds it into the running
+ * totals, so each snapshot contains every order completely or not
+ * at all.  Recording never allocates once a recipe slot has been
+ * seen.
+ */
+public class CoffeeMakerMetrics {
+
+	/**
+	 * How an order ended.
+	 */
+	public enum Outcome {
+		/** The beverage was made */
+		SOLD,
+		/** There is no recipe in the selected slot */
+		NO_RECIPE,
+		/** The payment was less than the price */
+		NOT_ENOUGH_MONEY,
+		/** The inventory could not make the recipe */
+		NOT_ENOUGH_INGREDIENTS,
+		/** The coin tubes could not pay the change exactly */
+		NOT_ENOUGH_CHANGE
+	}
+
+	/** Number of outcomes */
+	private static final int NUM_OUTCOMES = Outcome.values().length;
+	/** Recipe slots covered before the counters first grow */
+	private static final int INITIAL_SLOTS = 16;
+	/** Longs in a cache line; stripes start on separate lines */
+	private static final int LINE_LONGS = 8;
+
+	/** Counters and histograms orders are recording into */
+	private volatile Recorder active;
+	/** Spare recorder, empty between snapshots */
+	private Recorder inactive;
+	/** Everything recorded before the last snapshot */
+	private long[] totals;
+	private final LatencyHistogram orderLatency = new LatencyHistogram();
+	private final LatencyHistogram inventoryLatency = new LatencyHistogram();
+
+	/** Orders that started recording; negative while in the odd phase */
+	private final AtomicLong startEpoch = new AtomicLong();
+	/** Orders that finished recording in the even phase */
+	private final AtomicLong evenEndEpoch = new AtomicLong();
+	/** Orders that finished recording in the odd phase */
+	private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * Creates empty metrics.
+	 */
+	public CoffeeMakerMetrics() {
+		active = new Recorder(INITIAL_SLOTS);
+		inactive = new Recorder(INITIAL_SLOTS);
+		totals = new long[INITIAL_SLOTS * NUM_OUTCOMES];
+	}
+
+	/**
+	 * Records one order.
+	 * @param recipeSlot slot of the recipe that was ordered
+	 * @param outcome how the order ended
+	 * @param orderNanos time spent handling the whole order
+	 * @param inventoryNanos time spent taking the ingredients,
+	 * or 0 if the inventory was not reached
+	 */
+	public void record(int recipeSlot, Outcome outcome, long orderNanos, long inventoryNanos) {
+		if (recipeSlot >= active.slots) {
+			ensureSlots(recipeSlot + 1);
+		}
+		long epoch = startEpoch.getAndIncrement();
+		try {
+			Recorder recorder = active;
+			if (recipeSlot >= 0 && recipeSlot < recorder.slots) {
+				recorder.counts.getAndIncrement(recorder.index(recipeSlot, outcome.ordinal()));
+			}
+			recorder.orderLatency.record(orderNanos);
+			if (inventoryNanos > 0) {
+				recorder.inventoryLatency.record(inventoryNanos);
+			}
+		} finally {
+			if (epoch < 0) {
+				oddEndEpoch.getAndIncrement();
+			} else {
+				evenEndEpoch.getAndIncrement();
+			}
+		}
+	}
+
+	/**
+	 * Returns everything recorded so far as one consistent snapshot.
+	 * @return Snapshot
+	 */
+	public synchronized Snapshot snapshot() {
+		Recorder drained = swapRecorders(new Recorder(active.slots));
+		fold(drained);
+		return new Snapshot(totals.clone(), copyOf(orderLatency), copyOf(inventoryLatency));
+	}
+
+	/**
+	 * Grows the per-recipe counters to cover the given number of slots.
+	 */
+	private synchronized void ensureSlots(int slots) {
+		if (slots <= active.slots) {
+			return;
+		}
+		int newSlots = Math.max(slots, active.slots * 2);
+		long[] grown = new long[newSlots * NUM_OUTCOMES];
+		System.arraycopy(totals, 0, grown, 0, totals.length);
+		totals = grown;
+		inactive = new Recorder(newSlots);
+		fold(swapRecorders(new Recorder(newSlots)));
+	}
+
+	/**
+	 * Makes the spare recorder active, waits until no order is still
+	 * recording into the old one and returns it.  The given recorder
+	 * becomes the new spare.
+	 */
+	private Recorder swapRecorders(Recorder spare) {
+		Recorder drained = active;
+		active = inactive;
+		inactive = spare;
+		boolean nextPhaseIsEven = startEpoch.get() < 0;
+		long initial = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+		if (nextPhaseIsEven) {
+			evenEndEpoch.set(initial);
+		} else {
+			oddEndEpoch.set(initial);
+		}
+		long startAtFlip = startEpoch.getAndSet(initial);
+		AtomicLong endEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+		while (endEpoch.get() != startAtFlip) {
+			Thread.yield();
+		}
+		return drained;
+	}
+
+	/**
+	 * Adds a drained recorder to the totals.
+	 */
+	private void fold(Recorder drained) {
+		for (int slot = 0; slot < drained.slots; slot++) {
+			for (int outcome = 0; outcome < NUM_OUTCOMES; outcome++) {
+				totals[slot * NUM_OUTCOMES + outcome] += drained.counts.get(drained.index(slot, outcome));
+			}
+		}
+		orderLatency.add(drained.orderLatency);
+		inventoryLatency.add(drained.inventoryLatency);
+	}
+
+	private static LatencyHistogram copyOf(LatencyHistogram histogram) {
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.add(histogram);
+		return copy;
+	}
+
+	/**
+	 * One set of striped counters and histograms.  Each stripe holds a
+	 * counter per recipe slot and outcome; threads pick a stripe by id.
+	 */
+	private static final class Recorder {
+		final int slots;
+		final int stripeMask;
+		final int stripeLength;
+		final AtomicLongArray counts;
+		final LatencyHistogram orderLatency = new LatencyHistogram();
+		final LatencyHistogram inventoryLatency = new LatencyHistogram();
+
+		Recorder(int slots) {
+			int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+			this.slots = slots;
+			this.stripeMask = stripes - 1;
+			this.stripeLength = (slots * NUM_OUTCOMES + LINE_LONGS - 1) / LINE_LONGS * LINE_LONGS + LINE_LONGS;
+			this.counts = new AtomicLongArray(stripes * stripeLength);
+		}
+
+		/** Counter for the calling thread's stripe */
+		int index(int slot, int outcome) {
+			int stripe = (int) Thread.currentThread().getId() & stripeMask;
+			return stripe * stripeLength + slot * NUM_OUTCOMES + outcome;
+		}
+	}
+
+	/**
+	 * Counts and latencies of every order recorded before the
+	 * snapshot was taken.
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final LatencyHistogram orderLatency;
+		private final LatencyHistogram inventoryLatency;
+
+		private Snapshot(long[] counts, LatencyHistogram orderLatency, LatencyHistogram inventoryLatency) {
+			this.counts = counts;
+			this.orderLatency = orderLatency;
+			this.inventoryLatency = inventoryLatency;
+		}
+
+		/**
+		 * Returns the number of orders for the recipe in the given slot
+		 * that ended with the given outcome.
+		 * @param recipeSlot
+		 * @param outcome
+		 * @return long
+		 */
+		public long getCount(int recipeSlot, Outcome outcome) {
+			int index = recipeSlot * NUM_OUTCOMES + outcome.ordinal();
+			return recipeSlot >= 0 && index < counts.length ? counts[index] : 0;
+		}
+
+		/**
+		 * Returns the number of orders, over all recipes, that ended
+		 * with the given outcome.
+		 * @param outcome
+		 * @return long
+		 */
+		public long getTotal(Outcome outcome) {
+			long total = 0;
+			for (int i = outcome.ordinal(); i < counts.length; i += NUM_OUTCOMES) {
+				total += counts[i];
+			}
+			return total;
+		}
+
+		/**
+		 * Returns the latency of whole orders.
+		 * @return LatencyHistogram
+		 */
+		public LatencyHistogram getOrderLatency() {
+			return orderLatency;
+		}
+
+		/**
+		 * Returns the time orders spent taking ingredients from the
+		 * inventory, which is where concurrent orders contend.
+		 * @return LatencyHistogram
+		 */
+		public LatencyHistogram getInventoryLatency() {
+			return inventoryLatency;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Request and response codes of the coffee maker network protocol.
+ *
+ * Every message is a frame: an int byte count followed by that many
+ * bytes.  A request frame starts with one of the request codes below;
+ * a response frame starts with OK or ERROR.  An ERROR response holds
+ * the error message as text.  All numbers are big-endian, text is a
+ * short byte count and UTF-8, and recipes are encoded as by the
+ * journal.
+ * <pre>
+ * MAKE_COFFEE     int slot, int paid        -&gt; int change
+ * ADD_RECIPE      recipe                    -&gt; byte added
+ * EDIT_RECIPE     int slot, recipe          -&gt; old name, or short -1
+ * DELETE_RECIPE   int slot                  -&gt; old name, or short -1
+ * ADD_INVENTORY   int count, int units...   -&gt; nothing
+ * CHECK_INVENTORY                           -&gt; int count, int units...
+ * GET_RECIPES                               -&gt; int count, recipe...
+ * </pre>
+ */
+public final class CoffeeMakerProtocol {
+	/** Largest frame either side may send, not counting its length */
+	public static final int MAX_FRAME_BYTES = 64 << 10;
+
+	/** Request codes */
+	public static final byte MAKE_COFFEE = 1;
+	public static final byte ADD_RECIPE = 2;
+	public static final byte EDIT_RECIPE = 3;
+	public static final byte DELETE_RECIPE = 4;
+	public static final byte ADD_INVENTORY = 5;
+	public static final byte CHECK_INVENTORY = 6;
+	public static final byte GET_RECIPES = 7;
+
+	/** Response codes */
+	public static final byte OK = 0;
+	public static final byte ERROR = 1;
+
+	private CoffeeMakerProtocol() {
+	}
+}
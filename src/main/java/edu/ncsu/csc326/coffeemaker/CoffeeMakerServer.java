@@ -0,0 +1,513 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Non-blocking network front end for one coffee maker.
+ *
+ * One thread accepts connections and hands them round robin to a few
+ * worker threads, each of which serves its connections from a single
+ * selector.  Requests and responses are length-prefixed frames (see
+ * CoffeeMakerProtocol).  A client may send many requests without
+ * waiting; each connection's responses come back in request order.
+ *
+ * The workers only move bytes.  Requests run on a separate pool, so a
+ * sale that waits on the inventory or the journal does not hold up
+ * the other connections of its worker.  Each connection hands the
+ * pool one batch of whole requests at a time and is not read again
+ * until their responses are back, which keeps its responses in order.
+ *
+ * A connection whose responses are not being read stops being read
+ * itself once HIGH_WATER_BYTES of responses are waiting, and is read
+ * again when they drain below LOW_WATER_BYTES, so a slow client
+ * cannot make the server buffer without bound.
+ */
+public class CoffeeMakerServer implements Closeable {
+	/** Pending response bytes at which a connection stops being read */
+	static final int HIGH_WATER_BYTES = 64 << 10;
+	/** Pending response bytes at which reading resumes */
+	static final int LOW_WATER_BYTES = 16 << 10;
+	/** Starting size of each connection's buffers */
+	private static final int INITIAL_BUFFER_BYTES = 512;
+	/** Threads running requests for each worker */
+	private static final int REQUEST_THREADS_PER_WORKER = 4;
+
+	private final CoffeeMaker coffeeMaker;
+	private final ServerSocketChannel serverChannel;
+	private final Worker[] workers;
+	private final Thread acceptor;
+	private final ExecutorService requestRunner;
+	private volatile boolean running = true;
+
+	/**
+	 * Starts serving the coffee maker on the given address.
+	 * @param coffeeMaker
+	 * @param address port 0 picks a free port
+	 * @param numWorkers threads serving connections
+	 * @throws IOException
+	 */
+	public CoffeeMakerServer(CoffeeMaker coffeeMaker, InetSocketAddress address, int numWorkers) throws IOException {
+		if (numWorkers <= 0) {
+			throw new IllegalArgumentException("There must be at least one worker");
+		}
+		this.coffeeMaker = coffeeMaker;
+		this.serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address, 1024);
+		AtomicInteger requestThreads = new AtomicInteger();
+		this.requestRunner = Executors.newFixedThreadPool(numWorkers * REQUEST_THREADS_PER_WORKER,
+				task -> newThread(task, "coffee-maker-request-" + requestThreads.getAndIncrement()));
+		this.workers = new Worker[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Worker(Selector.open());
+			startThread(workers[i], "coffee-maker-worker-" + i);
+		}
+		this.acceptor = startThread(this::accept, "coffee-maker-acceptor");
+	}
+
+	/**
+	 * Starts serving the coffee maker on the given address with one
+	 * worker per core, up to four.
+	 * @param coffeeMaker
+	 * @param address
+	 * @throws IOException
+	 */
+	public CoffeeMakerServer(CoffeeMaker coffeeMaker, InetSocketAddress address) throws IOException {
+		this(coffeeMaker, address, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Returns the address the server is listening on.
+	 * @return InetSocketAddress
+	 * @throws IOException
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Stops accepting, closes every connection and stops the threads.
+	 * Requests already running finish, but their responses are not sent.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverChannel.close();
+		for (Worker worker : workers) {
+			worker.selector.wakeup();
+		}
+		try {
+			acceptor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		requestRunner.shutdown();
+	}
+
+	private static Thread startThread(Runnable task, String name) {
+		Thread thread = newThread(task, name);
+		thread.start();
+		return thread;
+	}
+
+	private static Thread newThread(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private void accept() {
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				workers[next].add(channel);
+				next = (next + 1) % workers.length;
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				// The connection failed before it was handed over; keep accepting.
+			}
+		}
+	}
+
+	/**
+	 * A thread serving its connections from one selector.
+	 */
+	private final class Worker implements Runnable {
+		final Selector selector;
+		final Queue<SocketChannel> added = new ConcurrentLinkedQueue<SocketChannel>();
+		/** Connections whose requests have run and whose responses are ready */
+		final Queue<Connection> finished = new ConcurrentLinkedQueue<Connection>();
+
+		Worker(Selector selector) {
+			this.selector = selector;
+		}
+
+		void add(SocketChannel channel) {
+			added.add(channel);
+			selector.wakeup();
+		}
+
+		void finish(Connection connection) {
+			finished.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+					SocketChannel channel;
+					while ((channel = added.poll()) != null) {
+						Connection connection = new Connection(this, channel);
+						connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+					}
+					Connection connection;
+					while ((connection = finished.poll()) != null) {
+						try {
+							connection.finish();
+						} catch (IOException e) {
+							connection.close();
+						}
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						connection = (Connection) key.attachment();
+						try {
+							connection.ready();
+						} catch (IOException e) {
+							connection.close();
+						}
+					}
+				}
+			} catch (IOException e) {
+				// The selector itself failed; fall through and close everything.
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					closeQuietly(key.channel());
+				}
+				SocketChannel channel;
+				while ((channel = added.poll()) != null) {
+					closeQuietly(channel);
+				}
+				closeQuietly(selector);
+			}
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// Nothing more can be done with it.
+		}
+	}
+
+	/**
+	 * Buffers and request handling of one client connection.
+	 *
+	 * The in and out buffers belong to the worker.  The requests and
+	 * responses buffers belong to whichever thread is running the
+	 * connection's batch, and to the worker again once it is finished.
+	 */
+	private final class Connection {
+		final Worker worker;
+		final SocketChannel channel;
+		SelectionKey key;
+		/** Bytes received and not yet handled, in write mode */
+		ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+		/** Responses not yet sent, in write mode */
+		ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+		/** Whole requests handed to the request pool, in read mode */
+		ByteBuffer requests = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+		/** Responses to the requests, in write mode */
+		ByteBuffer responses = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+		/** True while a batch of requests is out on the request pool */
+		boolean busy;
+		/** True from reaching the high water mark until draining below the low one */
+		boolean paused;
+
+		Connection(Worker worker, SocketChannel channel) {
+			this.worker = worker;
+			this.channel = channel;
+		}
+
+		void ready() throws IOException {
+			if (!key.isValid()) {
+				// Closed when its batch came back earlier in this pass.
+				return;
+			}
+			if (key.isWritable()) {
+				send();
+			}
+			if (key.isReadable()) {
+				if (channel.read(in) < 0) {
+					throw new ClosedChannelException();
+				}
+			}
+			update();
+		}
+
+		/** Takes back the responses of a finished batch. */
+		void finish() throws IOException {
+			busy = false;
+			if (!key.isValid()) {
+				return;
+			}
+			if (out.remaining() < responses.position()) {
+				out = grow(out, out.position() + responses.position());
+			}
+			responses.flip();
+			out.put(responses);
+			update();
+		}
+
+		void close() {
+			key.cancel();
+			closeQuietly(channel);
+		}
+
+		private void update() throws IOException {
+			if (!busy) {
+				submitRequests();
+			}
+			send();
+			if (out.position() >= HIGH_WATER_BYTES) {
+				paused = true;
+			} else if (out.position() < LOW_WATER_BYTES) {
+				paused = false;
+			}
+			int ops = out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+			if (!busy && !paused) {
+				ops |= SelectionKey.OP_READ;
+			}
+			key.interestOps(ops);
+		}
+
+		/**
+		 * Hands every whole request received to the request pool, unless
+		 * the responses waiting to be sent have reached the high water
+		 * mark.
+		 */
+		private void submitRequests() throws IOException {
+			int needed = 0;
+			in.flip();
+			int first = in.position();
+			int end = first;
+			while (out.position() < HIGH_WATER_BYTES && in.limit() - end >= 4) {
+				int length = in.getInt(end);
+				if (length < 1 || length > CoffeeMakerProtocol.MAX_FRAME_BYTES) {
+					throw new IOException("Bad frame length " + length);
+				}
+				if (in.limit() - end < 4 + length) {
+					needed = 4 + length;
+					break;
+				}
+				end += 4 + length;
+			}
+			if (end > first) {
+				if (requests.capacity() < end - first) {
+					requests = ByteBuffer.allocate(Math.max(end - first, requests.capacity() * 2));
+				}
+				int limit = in.limit();
+				in.limit(end);
+				requests.clear();
+				requests.put(in);
+				requests.flip();
+				in.limit(limit);
+				try {
+					requestRunner.execute(this::runRequests);
+				} catch (RejectedExecutionException e) {
+					throw new ClosedChannelException();
+				}
+				busy = true;
+			}
+			in.compact();
+			if (in.capacity() < needed) {
+				in = grow(in, needed);
+			}
+		}
+
+		/** Runs on the request pool; answers the batch and hands it back. */
+		private void runRequests() {
+			try {
+				responses.clear();
+				while (requests.hasRemaining()) {
+					int length = requests.getInt();
+					int end = requests.position() + length;
+					ByteBuffer request = requests.duplicate();
+					request.limit(end);
+					handle(request);
+					requests.position(end);
+				}
+			} finally {
+				worker.finish(this);
+			}
+		}
+
+		/** Writes as much of the pending responses as the socket takes. */
+		private void send() throws IOException {
+			if (out.position() > 0) {
+				out.flip();
+				channel.write(out);
+				out.compact();
+			}
+		}
+
+		private void handle(ByteBuffer request) {
+			int start = responses.position();
+			ensureRoom(5);
+			responses.position(start + 5);
+			byte status = CoffeeMakerProtocol.OK;
+			try {
+				respond(request.get(), request);
+				if (responses.position() - start - 4 > CoffeeMakerProtocol.MAX_FRAME_BYTES) {
+					status = error(start, "Response is larger than " + CoffeeMakerProtocol.MAX_FRAME_BYTES + " bytes");
+				}
+			} catch (BufferUnderflowException e) {
+				status = error(start, "Malformed request");
+			} catch (InventoryException e) {
+				status = error(start, e.getMessage());
+			} catch (RuntimeException e) {
+				// A bad request must not take the connection and the rest of its batch down.
+				status = error(start, e.getMessage());
+			}
+			responses.putInt(start, responses.position() - start - 4);
+			responses.put(start + 4, status);
+		}
+
+		private byte error(int start, String message) {
+			responses.position(start + 5);
+			String text = message == null ? "" : message;
+			ensureRoom(WireFormat.stringBytes(text));
+			WireFormat.putString(responses, text);
+			return CoffeeMakerProtocol.ERROR;
+		}
+
+		private void respond(byte op, ByteBuffer request) throws InventoryException {
+			switch (op) {
+			case CoffeeMakerProtocol.MAKE_COFFEE: {
+				int slot = slot(request.getInt());
+				int paid = request.getInt();
+				ensureRoom(4);
+				responses.putInt(coffeeMaker.makeCoffee(slot, paid));
+				break;
+			}
+			case CoffeeMakerProtocol.ADD_RECIPE: {
+				Recipe recipe = WireFormat.getRecipe(request);
+				if (recipe == null) {
+					throw new IllegalArgumentException("Missing recipe");
+				}
+				ensureRoom(1);
+				responses.put((byte) (coffeeMaker.addRecipe(recipe) ? 1 : 0));
+				break;
+			}
+			case CoffeeMakerProtocol.EDIT_RECIPE: {
+				int slot = slot(request.getInt());
+				Recipe recipe = WireFormat.getRecipe(request);
+				if (recipe == null) {
+					throw new IllegalArgumentException("Missing recipe");
+				}
+				putName(coffeeMaker.editRecipe(slot, recipe));
+				break;
+			}
+			case CoffeeMakerProtocol.DELETE_RECIPE:
+				putName(coffeeMaker.deleteRecipe(slot(request.getInt())));
+				break;
+			case CoffeeMakerProtocol.ADD_INVENTORY: {
+				int count = request.getInt();
+				if (count < 0 || count > request.remaining() / 4) {
+					throw new BufferUnderflowException();
+				}
+				if (count > IngredientCatalog.size()) {
+					throw new InventoryException("There are only " + IngredientCatalog.size() + " ingredients");
+				}
+				int[] delivery = new int[count];
+				for (int i = 0; i < count; i++) {
+					delivery[i] = request.getInt();
+				}
+				coffeeMaker.restock(delivery);
+				break;
+			}
+			case CoffeeMakerProtocol.CHECK_INVENTORY:
+				ensureRoom(4 + 4 * IngredientCatalog.size());
+				coffeeMaker.checkInventory(responses);
+				break;
+			case CoffeeMakerProtocol.GET_RECIPES: {
+				Recipe[] recipes = coffeeMaker.getRecipes();
+				int bytes = 4;
+				for (Recipe recipe : recipes) {
+					bytes += WireFormat.recipeBytes(recipe);
+				}
+				ensureRoom(bytes);
+				responses.putInt(recipes.length);
+				for (Recipe recipe : recipes) {
+					WireFormat.putRecipe(responses, recipe);
+				}
+				break;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown request " + op);
+			}
+			if (request.hasRemaining()) {
+				throw new IllegalArgumentException("Unexpected bytes after request");
+			}
+		}
+
+		private int slot(int slot) {
+			if (slot < 0 || slot >= coffeeMaker.getRecipes().length) {
+				throw new IllegalArgumentException("No recipe slot " + slot);
+			}
+			return slot;
+		}
+
+		/** Writes a recipe name, or a negative length for none. */
+		private void putName(String name) {
+			if (name == null) {
+				ensureRoom(2);
+				responses.putShort((short) -1);
+			} else {
+				ensureRoom(WireFormat.stringBytes(name));
+				WireFormat.putString(responses, name);
+			}
+		}
+
+		private void ensureRoom(int bytes) {
+			if (responses.remaining() < bytes) {
+				responses = grow(responses, responses.position() + bytes);
+			}
+		}
+	}
+
+	/** Returns a buffer of at least the given capacity with the same contents. */
+	private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer grown = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+}
@@ -0,0 +1,521 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Streams supplier delivery manifests into the inventories of a fleet.
+ *
+ * A manifest is CSV with one row per machine and ingredient:
+ * <pre>
+ * machine,ingredient,units
+ * 0,Coffee,40
+ * 0,Milk,25
+ * </pre>
+ * The header line is optional and the ingredient is a catalog name
+ * or id.  The file is read through a channel one chunk at a time.
+ * Each chunk is cut into slices at line ends, the slices are parsed
+ * straight from the buffer on a fork/join pool, and the valid rows
+ * are then added up per machine and applied with one restock each.
+ * Bad rows are reported and skipped; they never stop the import.
+ */
+public class DeliveryImporter {
+	/** Default bytes read per chunk */
+	public static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+	/** Smallest slice worth handing to another thread */
+	private static final int MIN_SLICE_BYTES = 64 << 10;
+	/** Most bad rows kept in a report; the rest are only counted */
+	private static final int MAX_REPORTED_ROWS = 1000;
+
+	private final CoffeeMakerFleet fleet;
+	private final int chunkBytes;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates an importer that reads 1 MB chunks and parses them on
+	 * the common fork/join pool.
+	 * @param fleet
+	 */
+	public DeliveryImporter(CoffeeMakerFleet fleet) {
+		this(fleet, DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an importer.
+	 * @param fleet machines the deliveries are for
+	 * @param chunkBytes bytes read at a time; also the longest row
+	 * @param pool threads that parse the slices of a chunk
+	 */
+	public DeliveryImporter(CoffeeMakerFleet fleet, int chunkBytes, ForkJoinPool pool) {
+		if (chunkBytes <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.fleet = fleet;
+		this.chunkBytes = chunkBytes;
+		this.pool = pool;
+	}
+
+	/**
+	 * Imports the manifest in the given file.
+	 * @param file
+	 * @return Report
+	 * @throws IOException
+	 */
+	public Report importFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return importFrom(channel);
+		}
+	}
+
+	/**
+	 * Imports the manifest read from the given channel, up to its end.
+	 * @param channel
+	 * @return Report
+	 * @throws IOException
+	 */
+	public Report importFrom(ReadableByteChannel channel) throws IOException {
+		Report report = new Report();
+		Run run = new Run(report);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(chunkBytes);
+		long line = 1;
+		boolean skipping = false;
+		boolean eof = false;
+		while (!eof) {
+			eof = channel.read(buffer) < 0;
+			buffer.flip();
+			if (skipping) {
+				// Drop the rest of a row that did not fit in a chunk.
+				int newline = indexOf(buffer, (byte) '\n', 0, buffer.limit());
+				if (newline < 0) {
+					buffer.clear();
+					continue;
+				}
+				buffer.position(newline + 1);
+				line++;
+				skipping = false;
+			}
+			int end = eof ? buffer.limit() : lastIndexOf(buffer, (byte) '\n', buffer.position(), buffer.limit()) + 1;
+			if (end <= buffer.position()) {
+				if (buffer.limit() == buffer.capacity()) {
+					report.addBadRow(line, "Row is longer than " + chunkBytes + " bytes");
+					skipping = true;
+					buffer.clear();
+				} else {
+					buffer.compact();
+				}
+				continue;
+			}
+			line = run.process(buffer, buffer.position(), end, line);
+			buffer.position(end);
+			buffer.compact();
+		}
+		return report;
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * State of one import: the parsed slices, reused for every chunk,
+	 * and the deliveries being added up per machine.
+	 */
+	private final class Run {
+		final Report report;
+		final Slice[] slices;
+		/** Lower-case UTF-8 name of each ingredient, by id */
+		final byte[][] names;
+		/** Delivery being added up for each machine, by machine id */
+		int[][] pending = new int[0][];
+		/** Whether each machine is in touched */
+		boolean[] marked = new boolean[0];
+		/** Machines with a pending delivery */
+		int[] touched = new int[16];
+		int numTouched;
+
+		Run(Report report) {
+			this.report = report;
+			this.slices = new Slice[Math.max(1, pool.getParallelism())];
+			for (int i = 0; i < slices.length; i++) {
+				slices[i] = new Slice();
+			}
+			this.names = new byte[IngredientCatalog.size()][];
+			for (int id = 0; id < names.length; id++) {
+				names[id] = IngredientCatalog.nameOf(id).toLowerCase().getBytes(StandardCharsets.UTF_8);
+			}
+		}
+
+		/**
+		 * Parses and applies the whole rows in [start, end), the first
+		 * of which is the given line.  Returns the line after them.
+		 */
+		long process(ByteBuffer buffer, int start, int end, long firstLine) {
+			int machines = fleet.size();
+			int numSlices = Math.max(1, Math.min(slices.length, (end - start) / MIN_SLICE_BYTES));
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[numSlices - 1];
+			int sliceStart = start;
+			for (int i = 0; i < numSlices; i++) {
+				int sliceEnd = end;
+				if (i < numSlices - 1) {
+					int cut = indexOf(buffer, (byte) '\n', Math.max(sliceStart, start + (int) ((long) (end - start) * (i + 1) / numSlices)), end);
+					sliceEnd = cut < 0 ? end : cut + 1;
+				}
+				Slice slice = slices[i];
+				slice.reset(buffer, sliceStart, sliceEnd, machines, firstLine == 1 && i == 0);
+				if (i < numSlices - 1) {
+					tasks[i] = pool.submit(slice);
+				}
+				sliceStart = sliceEnd;
+			}
+			slices[numSlices - 1].run();
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+			long line = firstLine;
+			for (int i = 0; i < numSlices; i++) {
+				Slice slice = slices[i];
+				for (int bad = 0; bad < slice.numBad; bad++) {
+					report.addBadRow(line + slice.badLines[bad], slice.badReasons[bad]);
+				}
+				for (int row = 0; row < slice.rows; row++) {
+					addRow(slice.machines[row], slice.ingredients[row], slice.units[row]);
+				}
+				report.rowsApplied += slice.rows;
+				line += slice.lines;
+			}
+			flush();
+			return line;
+		}
+
+		private void addRow(int machine, int ingredient, int units) {
+			if (machine >= pending.length) {
+				pending = Arrays.copyOf(pending, Math.max(machine + 1, pending.length * 2));
+				marked = Arrays.copyOf(marked, pending.length);
+			}
+			int[] delivery = pending[machine];
+			if (delivery == null) {
+				delivery = new int[names.length];
+				pending[machine] = delivery;
+			}
+			if (!marked[machine]) {
+				if (numTouched == touched.length) {
+					touched = Arrays.copyOf(touched, numTouched * 2);
+				}
+				touched[numTouched++] = machine;
+				marked[machine] = true;
+			}
+			if (delivery[ingredient] > Integer.MAX_VALUE - units) {
+				restock(delivery, machine);
+			}
+			delivery[ingredient] += units;
+		}
+
+		/** Applies every delivery added up so far. */
+		private void flush() {
+			for (int i = 0; i < numTouched; i++) {
+				int machine = touched[i];
+				restock(pending[machine], machine);
+				marked[machine] = false;
+			}
+			numTouched = 0;
+		}
+
+		private void restock(int[] delivery, int machine) {
+			try {
+				fleet.getMachine(machine).restock(delivery);
+			} catch (InventoryException e) {
+				// Every amount was checked while parsing.
+				throw new IllegalStateException(e);
+			}
+			Arrays.fill(delivery, 0);
+		}
+
+		/**
+		 * Rows of one slice of a chunk, parsed into parallel arrays.
+		 * Line numbers of bad rows are relative to the slice.
+		 */
+		final class Slice implements Runnable {
+			ByteBuffer buffer;
+			int start;
+			int end;
+			int numMachines;
+			boolean mayHaveHeader;
+
+			int rows;
+			int lines;
+			int[] machines = new int[256];
+			int[] ingredients = new int[256];
+			int[] units = new int[256];
+			int numBad;
+			int[] badLines = new int[16];
+			String[] badReasons = new String[16];
+
+			void reset(ByteBuffer buffer, int start, int end, int numMachines, boolean mayHaveHeader) {
+				this.buffer = buffer;
+				this.start = start;
+				this.end = end;
+				this.numMachines = numMachines;
+				this.mayHaveHeader = mayHaveHeader;
+				rows = 0;
+				lines = 0;
+				numBad = 0;
+			}
+
+			@Override
+			public void run() {
+				int lineStart = start;
+				while (lineStart < end) {
+					int newline = indexOf(buffer, (byte) '\n', lineStart, end);
+					int lineEnd = newline < 0 ? end : newline;
+					if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+						lineEnd--;
+					}
+					parseRow(lineStart, lineEnd);
+					lines++;
+					lineStart = newline < 0 ? end : newline + 1;
+				}
+			}
+
+			private void parseRow(int from, int to) {
+				from = skipBlanks(from, to);
+				if (from == to) {
+					return;
+				}
+				if (lines == 0 && mayHaveHeader && !isDigit(buffer.get(from))) {
+					return;
+				}
+				int comma1 = indexOf(buffer, (byte) ',', from, to);
+				int comma2 = comma1 < 0 ? -1 : indexOf(buffer, (byte) ',', comma1 + 1, to);
+				if (comma2 < 0 || indexOf(buffer, (byte) ',', comma2 + 1, to) >= 0) {
+					bad("Expected machine,ingredient,units");
+					return;
+				}
+				int machine = parseNumber(from, comma1);
+				if (machine < 0 || machine >= numMachines) {
+					bad("Unknown machine " + text(from, comma1));
+					return;
+				}
+				int ingredient = resolveIngredient(comma1 + 1, comma2);
+				if (ingredient < 0) {
+					bad("Unknown ingredient " + text(comma1 + 1, comma2));
+					return;
+				}
+				int amount = parseNumber(comma2 + 1, to);
+				if (amount < 0) {
+					bad("Units of " + IngredientCatalog.nameOf(ingredient).toLowerCase() + " must be a positive integer");
+					return;
+				}
+				if (rows == machines.length) {
+					machines = Arrays.copyOf(machines, rows * 2);
+					ingredients = Arrays.copyOf(ingredients, rows * 2);
+					units = Arrays.copyOf(units, rows * 2);
+				}
+				machines[rows] = machine;
+				ingredients[rows] = ingredient;
+				units[rows] = amount;
+				rows++;
+			}
+
+			/**
+			 * Returns the non-negative int in [from, to), ignoring blanks
+			 * around it, or -1 if there is none.
+			 */
+			private int parseNumber(int from, int to) {
+				from = skipBlanks(from, to);
+				to = trimBlanks(from, to);
+				if (from == to) {
+					return -1;
+				}
+				int value = 0;
+				for (int i = from; i < to; i++) {
+					byte b = buffer.get(i);
+					if (!isDigit(b) || value > (Integer.MAX_VALUE - (b - '0')) / 10) {
+						return -1;
+					}
+					value = value * 10 + (b - '0');
+				}
+				return value;
+			}
+
+			/**
+			 * Returns the id of the ingredient named or numbered in
+			 * [from, to), or -1 if there is no such ingredient.
+			 */
+			private int resolveIngredient(int from, int to) {
+				from = skipBlanks(from, to);
+				to = trimBlanks(from, to);
+				if (from < to && isDigit(buffer.get(from))) {
+					int id = parseNumber(from, to);
+					return id < names.length ? id : -1;
+				}
+				for (int id = 0; id < names.length; id++) {
+					byte[] name = names[id];
+					if (name.length == to - from && matches(name, from)) {
+						return id;
+					}
+				}
+				return -1;
+			}
+
+			private boolean matches(byte[] name, int from) {
+				for (int i = 0; i < name.length; i++) {
+					byte b = buffer.get(from + i);
+					if (b >= 'A' && b <= 'Z') {
+						b += 'a' - 'A';
+					}
+					if (b != name[i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			private int skipBlanks(int from, int to) {
+				while (from < to && isBlank(buffer.get(from))) {
+					from++;
+				}
+				return from;
+			}
+
+			private int trimBlanks(int from, int to) {
+				while (to > from && isBlank(buffer.get(to - 1))) {
+					to--;
+				}
+				return to;
+			}
+
+			private String text(int from, int to) {
+				byte[] bytes = new byte[to - from];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = buffer.get(from + i);
+				}
+				return new String(bytes, StandardCharsets.UTF_8).trim();
+			}
+
+			private void bad(String reason) {
+				if (numBad == badLines.length) {
+					badLines = Arrays.copyOf(badLines, numBad * 2);
+					badReasons = Arrays.copyOf(badReasons, numBad * 2);
+				}
+				badLines[numBad] = lines;
+				badReasons[numBad] = reason;
+				numBad++;
+			}
+		}
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	/**
+	 * Outcome of an import.
+	 */
+	public static final class Report {
+		private long rowsApplied;
+		private long badRowCount;
+		private final List<BadRow> badRows = new ArrayList<BadRow>();
+
+		private Report() {
+		}
+
+		private void addBadRow(long line, String reason) {
+			badRowCount++;
+			if (badRows.size() < MAX_REPORTED_ROWS) {
+				badRows.add(new BadRow(line, reason));
+			}
+		}
+
+		/**
+		 * Returns the number of rows added to an inventory.
+		 * @return long
+		 */
+		public long getRowsApplied() {
+			return rowsApplied;
+		}
+
+		/**
+		 * Returns the number of rows that were skipped as invalid.
+		 * @return long
+		 */
+		public long getBadRowCount() {
+			return badRowCount;
+		}
+
+		/**
+		 * Returns the first bad rows, in file order.
+		 * @return List
+		 */
+		public List<BadRow> getBadRows() {
+			return Collections.unmodifiableList(badRows);
+		}
+	}
+
+	/**
+	 * A row that was skipped, and why.
+	 */
+	public static final class BadRow {
+		private final long line;
+		private final String reason;
+
+		private BadRow(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		/**
+		 * Returns the line of the row, counting from 1.
+		 * @return long
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		/**
+		 * Returns why the row was skipped.
+		 * @return String
+		 */
+		public String getReason() {
+			return reason;
+		}
+
+		/**
+		 * Returns the line and reason.
+		 * @return String
+		 */
+		public String toString() {
+			return "Line " + line + ": " + reason;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ingredients coffee makers know about.
+ *
+ * Every ingredient has a dense integer id, which is its position in
+ * the amount vectors of recipes and inventories.  Coffee, milk, sugar
+ * and chocolate are always ids 0 to 3; further ingredients are added
+ * at run time with register and are never removed.
+ */
+public final class IngredientCatalog {
+	/** Ids of the built-in ingredients */
+	public static final int COFFEE = 0;
+	public static final int MILK = 1;
+	public static final int SUGAR = 2;
+	public static final int CHOCOLATE = 3;
+	/** Number of built-in ingredients */
+	public static final int NUM_BUILT_IN = 4;
+
+	/** Name of each ingredient, by id; replaced, never changed in place */
+	private static volatile String[] names = {"Coffee", "Milk", "Sugar", "Chocolate"};
+	/** Id of each ingredient, by lower-case name */
+	private static final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+	static {
+		for (int id = 0; id < names.length; id++) {
+			ids.put(names[id].toLowerCase(), id);
+		}
+	}
+
+	private IngredientCatalog() {
+	}
+
+	/**
+	 * Returns the id of the ingredient with the given name, adding it
+	 * to the catalog if it is new.  Names are not case sensitive.
+	 * @param name
+	 * @return int
+	 */
+	public static synchronized int register(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			throw new IllegalArgumentException("Ingredient name must not be empty");
+		}
+		String key = name.trim().toLowerCase();
+		Integer id = ids.get(key);
+		if (id != null) {
+			return id;
+		}
+		String[] current = names;
+		String[] next = Arrays.copyOf(current, current.length + 1);
+		next[current.length] = name.trim();
+		ids.put(key, current.length);
+		names = next;
+		return current.length;
+	}
+
+	/**
+	 * Returns the id of the ingredient with the given name, or -1 if
+	 * there is no such ingredient.
+	 * @param name
+	 * @return int
+	 */
+	public static synchronized int idOf(String name) {
+		Integer id = name == null ? null : ids.get(name.trim().toLowerCase());
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the name of the ingredient with the given id.
+	 * @param id
+	 * @return String
+	 */
+	public static String nameOf(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns true if an ingredient has the given id.
+	 */
+	static boolean isRegistered(int id) {
+		return id >= 0 && id < names.length;
+	}
+
+	/**
+	 * Returns the name of the ingredient with the given id, or a name
+	 * made from the id if there is no such ingredient, for messages
+	 * about bad input.
+	 */
+	static String describe(int id) {
+		String[] current = names;
+		return id >= 0 && id < current.length ? current[id] : "Ingredient " + id;
+	}
+
+	/**
+	 * Returns the number of ingredients in the catalog.
+	 * @return int
+	 */
+	public static int size() {
+		return names.length;
+	}
+}
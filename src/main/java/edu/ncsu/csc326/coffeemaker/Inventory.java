@@ -13,6 +13,11 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 
 /**
@@ -22,10 +27,25 @@ import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
  */
 public class Inventory {
     
-    private static int coffee;
-    private static int milk;
-    private static int sugar;
-    private static int chocolate;
+    /** Positions of the built-in ingredients in the stock vector */
+    private static final int COFFEE = IngredientCatalog.COFFEE;
+    private static final int MILK = IngredientCatalog.MILK;
+    private static final int SUGAR = IngredientCatalog.SUGAR;
+    private static final int CHOCOLATE = IngredientCatalog.CHOCOLATE;
+    private static final int NUM_INGREDIENTS = IngredientCatalog.NUM_BUILT_IN;
+    
+    /** 
+     * Current stock of this machine, indexed by ingredient id.  The 
+     * counters are published together as one immutable vector, so a 
+     * sale takes all of its ingredients or none.  The vector covers 
+     * the built-in ingredients and grows when another ingredient is 
+     * first stocked.
+     */
+    private final StockCell stock = new StockCell();
+    /** Listeners told about every change of the stock */
+    private volatile InventoryListener[] listeners = new InventoryListener[0];
+    /** Stock levels watched for StockThresholdListeners */
+    private volatile Threshold[] thresholds = new Threshold[0];
     
     /**
      * Creates a coffee maker inventory object and
@@ -44,7 +64,7 @@ public class Inventory {
      * @return int
      */
     public int getChocolate() {
-        return chocolate;
+        return getAmount(CHOCOLATE);
     }
     
     /**
@@ -52,9 +72,9 @@ public class Inventory {
      * to the specified amount.
      * @param chocolate
      */
-    public synchronized void setChocolate(int chocolate) {
+    public void setChocolate(int chocolate) {
     	if(chocolate >= 0) {
-    		Inventory.chocolate = chocolate;
+    		set(CHOCOLATE, chocolate);
     	}
         
     }
@@ -65,18 +85,18 @@ public class Inventory {
      * @param chocolate
      * @throws InventoryException
      */
-    public synchronized void addChocolate(String chocolate) throws InventoryException {
-    	int amtChocolate = 0;
-    	try {
-    		amtChocolate = Integer.parseInt(chocolate);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of chocolate must be a positive integer");
-    	}
-		if (amtChocolate >= 0) {
-			Inventory.chocolate += amtChocolate;
-		} else {
-			throw new InventoryException("Units of chocolate must be a positive integer");
-		}
+    public void addChocolate(String chocolate) throws InventoryException {
+    	addChocolate(parseUnits(CHOCOLATE, chocolate));
+    }
+    
+    /**
+     * Add the number of chocolate units in the inventory 
+     * to the current amount of chocolate units.
+     * @param chocolate
+     * @throws InventoryException
+     */
+    public void addChocolate(int chocolate) throws InventoryException {
+    	addAmount(CHOCOLATE, chocolate);
     }
     
     /**
@@ -85,7 +105,7 @@ public class Inventory {
      * @return int
      */
     public int getCoffee() {
-        return coffee;
+        return getAmount(COFFEE);
     }
     
     /**
@@ -93,9 +113,9 @@ public class Inventory {
      * to the specified amount.
      * @param coffee
      */
-    public synchronized void setCoffee(int coffee) {
+    public void setCoffee(int coffee) {
     	if(coffee >= 0) {
-    		Inventory.coffee = coffee;
+    		set(COFFEE, coffee);
     	}
     }
     
@@ -105,18 +125,18 @@ public class Inventory {
      * @param coffee
      * @throws InventoryException
      */
-    public synchronized void addCoffee(String coffee) throws InventoryException {
-    	int amtCoffee = 0;
-    	try {
-    		amtCoffee = Integer.parseInt(coffee);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of coffee must be a positive integer");
-    	}
-		if (amtCoffee >= 0) {
-			Inventory.coffee += amtCoffee;
-		} else {
-			throw new InventoryException("Units of coffee must be a positive integer");
-		}
+    public void addCoffee(String coffee) throws InventoryException {
+    	addCoffee(parseUnits(COFFEE, coffee));
+    }
+    
+    /**
+     * Add the number of coffee units in the inventory 
+     * to the current amount of coffee units.
+     * @param coffee
+     * @throws InventoryException
+     */
+    public void addCoffee(int coffee) throws InventoryException {
+    	addAmount(COFFEE, coffee);
     }
     
     /**
@@ -125,7 +145,7 @@ public class Inventory {
      * @return int
      */
     public int getMilk() {
-        return milk;
+        return getAmount(MILK);
     }
     
     /**
@@ -133,9 +153,9 @@ public class Inventory {
      * to the specified amount.
      * @param milk
      */
-    public synchronized void setMilk(int milk) {
+    public void setMilk(int milk) {
     	if(milk >= 0) {
-    		Inventory.milk = milk;
+    		set(MILK, milk);
     	}
     }
     
@@ -145,18 +165,18 @@ public class Inventory {
      * @param milk
      * @throws InventoryException
      */
-    public synchronized void addMilk(String milk) throws InventoryException {
-    	int amtMilk = 0;
-    	try {
-    		amtMilk = Integer.parseInt(milk);
-    	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of milk must be a positive integer");
-    	}
-		if (amtMilk >= 0) {
-			Inventory.milk += amtMilk;
-		} else {
-			throw new InventoryException("Units of milk must be a positive integer");
-		}
+    public void addMilk(String milk) throws InventoryException {
+    	addMilk(parseUnits(MILK, milk));
+    }
+    
+    /**
+     * Add the number of milk units in the inventory 
+     * to the current amount of milk units.
+     * @param milk
+     * @throws InventoryException
+     */
+    public void addMilk(int milk) throws InventoryException {
+    	addAmount(MILK, milk);
     }
     
     /**
@@ -165,7 +185,7 @@ public class Inventory {
      * @return int
      */
     public int getSugar() {
-        return sugar;
+        return getAmount(SUGAR);
     }
     
     /**
@@ -173,9 +193,9 @@ public class Inventory {
      * to the specified amount.
      * @param sugar
      */
-    public synchronized void setSugar(int sugar) {
+    public void setSugar(int sugar) {
     	if(sugar >= 0) {
-    		Inventory.sugar = sugar;
+    		set(SUGAR, sugar);
     	}
     }
     
@@ -185,18 +205,138 @@ public class Inventory {
      * @param sugar
      * @throws InventoryException
      */
-    public synchronized void addSugar(String sugar) throws InventoryException {
-    	int amtSugar = 0;
+    public void addSugar(String sugar) throws InventoryException {
+    	addSugar(parseUnits(SUGAR, sugar));
+    }
+    
+    /**
+     * Add the number of sugar units in the inventory 
+     * to the current amount of sugar units.
+     * @param sugar
+     * @throws InventoryException
+     */
+    public void addSugar(int sugar) throws InventoryException {
+    	addAmount(SUGAR, sugar);
+    }
+    
+    /**
+     * Returns the current number of units of the ingredient
+     * with the given catalog id.
+     * @param ingredient
+     * @return int
+     */
+    public int getAmount(int ingredient) {
+    	int[] units = stock.get();
+    	return ingredient < units.length ? units[ingredient] : 0;
+    }
+    
+    /**
+     * Sets the number of units of the ingredient with the given
+     * catalog id to the specified amount.  Negative units and ids
+     * not in the catalog are ignored.
+     * @param ingredient
+     * @param units
+     */
+    public void setAmount(int ingredient, int units) {
+    	if(units >= 0 && IngredientCatalog.isRegistered(ingredient)) {
+    		set(ingredient, units);
+    	}
+    }
+    
+    /**
+     * Add the number of units of the ingredient with the given
+     * catalog id to the current amount.
+     * @param ingredient
+     * @param units
+     * @throws InventoryException
+     */
+    public void addAmount(int ingredient, String units) throws InventoryException {
+    	addAmount(ingredient, parseUnits(ingredient, units));
+    }
+    
+    /**
+     * Add the number of units of the ingredient with the given
+     * catalog id to the current amount.
+     * @param ingredient
+     * @param units
+     * @throws InventoryException
+     */
+    public void addAmount(int ingredient, int units) throws InventoryException {
+    	if (!IngredientCatalog.isRegistered(ingredient)) {
+    		throw unknownIngredient(ingredient);
+    	}
+    	if (units < 0) {
+    		throw unitsException(ingredient);
+    	}
+    	add(ingredient, units);
+    }
+    
+    /**
+     * Adds a whole delivery to the inventory in one step.  The
+     * delivery holds the units of each ingredient, indexed by catalog
+     * id.  Either every amount is added or, if any is negative or for
+     * an ingredient not in the catalog, none.
+     * @param delivery
+     * @throws InventoryException
+     */
+    public void restock(int[] delivery) throws InventoryException {
+    	checkDelivery(delivery);
+    	int length = 0;
+    	for (int i = 0; i < delivery.length; i++) {
+    		if (delivery[i] > 0) {
+    			length = i + 1;
+    		}
+    	}
+    	int[] current;
+    	int[] next;
+    	do {
+    		current = stock.get();
+    		next = Arrays.copyOf(current, Math.max(current.length, length));
+    		for (int i = 0; i < length; i++) {
+    			next[i] += delivery[i];
+    		}
+    	} while (!swap(current, next));
+    }
+    
+    /**
+     * Parses units of an ingredient typed in by a user.
+     * @param ingredient
+     * @param units
+     * @return int
+     * @throws InventoryException
+     */
+    static int parseUnits(int ingredient, String units) throws InventoryException {
     	try {
-    		amtSugar = Integer.parseInt(sugar);
+    		return Integer.parseInt(units);
     	} catch (NumberFormatException e) {
-    		throw new InventoryException("Units of sugar must be a positive integer");
+    		throw unitsException(ingredient);
     	}
-		if (amtSugar <= 0) {
-			Inventory.sugar += amtSugar;
-		} else {
-			throw new InventoryException("Units of sugar must be a positive integer");
-		}
+    }
+    
+    /**
+     * Refuses a delivery with a negative amount, or any amount for an
+     * ingredient not in the catalog.
+     * @param delivery
+     * @throws InventoryException
+     */
+    static void checkDelivery(int[] delivery) throws InventoryException {
+    	for (int i = 0; i < delivery.length; i++) {
+    		if (delivery[i] != 0 && !IngredientCatalog.isRegistered(i)) {
+    			throw unknownIngredient(i);
+    		}
+    		if (delivery[i] < 0) {
+    			throw unitsException(i);
+    		}
+    	}
+    }
+    
+    static InventoryException unitsException(int ingredient) {
+    	return new InventoryException("Units of " + IngredientCatalog.describe(ingredient).toLowerCase()
+    			+ " must be a positive integer");
+    }
+    
+    static InventoryException unknownIngredient(int ingredient) {
+    	return new InventoryException("There is no ingredient " + ingredient);
     }
     
     /**
@@ -205,39 +345,436 @@ public class Inventory {
      * @param r
      * @return boolean
      */
-    protected synchronized boolean enoughIngredients(Recipe r) {
-        boolean isEnough = true;
-        if(Inventory.coffee < r.getAmtCoffee()) {
-            isEnough = false;
-        }
-        if(Inventory.milk < r.getAmtMilk()) {
-            isEnough = false;
-        }
-        if(Inventory.sugar < r.getAmtSugar()) {
-            isEnough = false;
-        }
-        if(Inventory.chocolate < r.getAmtChocolate()) {
-            isEnough = false;
-        }
-        return isEnough;
+    protected boolean enoughIngredients(Recipe r) {
+        return enoughIngredients(stock.get(), r.amounts());
     }
     
     /**
      * Removes the ingredients used to make the specified 
-     * recipe.  Assumes that the user has checked that there
-     * are enough ingredients to make 
+     * recipe.  The check and the removal happen as one atomic
+     * step, so no other sale can take the same units in between.
+     * @param r
+     * @return true if the ingredients were removed
+     */
+    public boolean useIngredients(Recipe r) {
+    	int[] need = r.amounts();
+    	int[] current;
+    	int[] next;
+    	do {
+    		current = stock.get();
+    		if (!enoughIngredients(current, need)) {
+    			return false;
+    		}
+    		next = current.clone();
+    		subtract(next, need);
+    	} while (!swap(current, next));
+    	return true;
+    }
+    
+    /**
+     * Removes the ingredients for up to the given number of servings
+     * of the specified recipe in one atomic step, making as many as
+     * the stock allows.
+     * @param r
+     * @param servings
+     * @return the number of servings whose ingredients were removed
+     */
+    public int useIngredients(Recipe r, int servings) {
+    	int[] need = r.amounts();
+    	int[] current;
+    	int[] next;
+    	int made;
+    	do {
+    		current = stock.get();
+    		made = servings(current, need, servings);
+    		if (made <= 0) {
+    			return 0;
+    		}
+    		next = current.clone();
+    		// Past the stock vector the recipe needs nothing, or none could be made.
+    		int common = Math.min(next.length, need.length);
+    		for (int i = 0; i < common; i++) {
+    			next[i] -= need[i] * made;
+    		}
+    	} while (!swap(current, next));
+    	return made;
+    }
+    
+    /**
+     * Holds back the ingredients for the specified recipe until the
+     * purchase is committed or aborted.  Held ingredients are not
+     * available to other sales.  A reservation that is neither
+     * committed nor aborted within the timeout is released by the
+     * shared reservation wheel.
+     * @param r
+     * @param timeoutMillis
+     * @return the reservation, or null if there are not enough ingredients
+     */
+    public Reservation reserve(Recipe r, long timeoutMillis) {
+    	return reserve(r, timeoutMillis, ReservationWheel.shared());
+    }
+    
+    /**
+     * Holds back the ingredients for the specified recipe, releasing
+     * them through the given wheel if the reservation times out.
      * @param r
+     * @param timeoutMillis
+     * @param wheel
+     * @return the reservation, or null if there are not enough ingredients
+     */
+    public Reservation reserve(Recipe r, long timeoutMillis, ReservationWheel wheel) {
+    	if (!useIngredients(r)) {
+    		return null;
+    	}
+    	Reservation reservation = new Reservation(this, r, System.currentTimeMillis() + timeoutMillis);
+    	wheel.schedule(reservation);
+    	return reservation;
+    }
+    
+    /**
+     * Keeps the ingredients held by the reservation as used.
+     * @param reservation
+     * @return true if the reservation was committed, false if it 
+     * had already been aborted or had expired
+     */
+    public boolean commit(Reservation reservation) {
+    	checkOwner(reservation);
+    	return reservation.settle(Reservation.COMMITTED);
+    }
+    
+    /**
+     * Puts the ingredients held by the reservation back into
+     * the inventory.
+     * @param reservation
+     * @return true if the ingredients were put back, false if the
+     * reservation had already been settled
+     */
+    public boolean abort(Reservation reservation) {
+    	checkOwner(reservation);
+    	if (!reservation.settle(Reservation.RELEASED)) {
+    		return false;
+    	}
+    	int[] held = reservation.getRecipe().amounts();
+    	int[] current;
+    	int[] next;
+    	do {
+    		current = stock.get();
+    		// The units held came out of this vector, which never shrinks.
+    		next = current.clone();
+    		int common = Math.min(next.length, held.length);
+    		for (int i = 0; i < common; i++) {
+    			next[i] += held[i];
+    		}
+    	} while (!swap(current, next));
+    	return true;
+    }
+    
+    /**
+     * Refuses reservations made on another inventory.
+     * @param reservation
+     */
+    private void checkOwner(Reservation reservation) {
+    	if (reservation.getInventory() != this) {
+    		throw new IllegalArgumentException("Reservation belongs to another inventory");
+    	}
+    }
+    
+    /**
+     * Removes the ingredients for as many of the given recipes as
+     * the inventory can make, in array order, as one atomic step.
+     * A null entry is skipped.  On return, made[i] is true if the
+     * ingredients for recipes[i] were removed.
+     * @param recipes
+     * @param made
+     * @return the number of recipes made
+     */
+    public int useIngredients(Recipe[] recipes, boolean[] made) {
+    	int[] current;
+    	int[] next;
+    	int count;
+    	do {
+    		current = stock.get();
+    		next = current.clone();
+    		count = 0;
+    		for (int i = 0; i < recipes.length; i++) {
+    			Recipe r = recipes[i];
+    			made[i] = r != null && enoughIngredients(next, r.amounts());
+    			if (made[i]) {
+    				subtract(next, r.amounts());
+    				count++;
+    			}
+    		}
+    		if (count == 0) {
+    			return 0;
+    		}
+    	} while (!swap(current, next));
+    	return count;
+    }
+    
+    /**
+     * Returns true if the given stock vector holds at least the
+     * needed units of every ingredient.  Amounts are never negative,
+     * so a shortfall shows up as the sign bit of some difference; the
+     * loop ORs them together without branching, which lets the JIT
+     * vectorize it.
+     * @param units
+     * @param need
+     * @return boolean
+     */
+    private static boolean enoughIngredients(int[] units, int[] need) {
+    	int common = Math.min(units.length, need.length);
+    	int shortfall = 0;
+    	for (int i = 0; i < common; i++) {
+    		shortfall |= units[i] - need[i];
+    	}
+    	for (int i = common; i < need.length; i++) {
+    		shortfall |= -need[i];
+    	}
+    	return shortfall >= 0;
+    }
+    
+    /**
+     * Returns how many servings, up to the given limit, a stock
+     * vector holds the units for.
+     * @param units
+     * @param need
+     * @param limit
+     * @return int
+     */
+    private static int servings(int[] units, int[] need, int limit) {
+    	int servings = limit;
+    	for (int i = 0; i < need.length; i++) {
+    		if (need[i] > 0) {
+    			servings = Math.min(servings, i < units.length ? units[i] / need[i] : 0);
+    		}
+    	}
+    	return servings;
+    }
+    
+    /**
+     * Takes the needed units out of a stock vector that holds them.
+     * The recipe may name ingredients past the end of the vector, but
+     * only with no units, since the vector holds what it needs.
+     * @param units
+     * @param need
+     */
+    private static void subtract(int[] units, int[] need) {
+    	int common = Math.min(units.length, need.length);
+    	for (int i = 0; i < common; i++) {
+    		units[i] -= need[i];
+    	}
+    }
+    
+    /**
+     * Registers a listener to be told about every change of the stock.
+     * @param listener
+     */
+    public synchronized void addListener(InventoryListener listener) {
+    	InventoryListener[] current = listeners;
+    	InventoryListener[] next = Arrays.copyOf(current, current.length + 1);
+    	next[current.length] = listener;
+    	listeners = next;
+    }
+    
+    /**
+     * Stops telling the given listener about changes of the stock.
+     * @param listener
+     */
+    public synchronized void removeListener(InventoryListener listener) {
+    	InventoryListener[] current = listeners;
+    	for (int i = 0; i < current.length; i++) {
+    		if (current[i] == listener) {
+    			InventoryListener[] next = new InventoryListener[current.length - 1];
+    			System.arraycopy(current, 0, next, 0, i);
+    			System.arraycopy(current, i + 1, next, i, next.length - i);
+    			listeners = next;
+    			return;
+    		}
+    	}
+    }
+    
+    /**
+     * Registers a listener to be told, on the shared dispatcher, when
+     * the units of an ingredient fall below the threshold or climb
+     * back to it.
+     * @see #addThresholdListener(int, int, StockThresholdListener, StockAlertDispatcher)
+     */
+    public void addThresholdListener(int ingredient, int threshold, StockThresholdListener listener) {
+    	addThresholdListener(ingredient, threshold, listener, StockAlertDispatcher.shared());
+    }
+    
+    /**
+     * Registers a listener to be told when the units of an ingredient
+     * fall below the threshold or climb back to it.  The change that
+     * crosses the threshold only queues an alert; the listener is
+     * called later by the dispatcher.  If the stock is already below
+     * the threshold, a low alert is queued at once.
+     * @param ingredient IngredientCatalog id
+     * @param threshold
+     * @param listener
+     * @param dispatcher
+     */
+    public synchronized void addThresholdListener(int ingredient, int threshold, StockThresholdListener listener,
+    		StockAlertDispatcher dispatcher) {
+    	Threshold[] current = thresholds;
+    	Threshold[] next = Arrays.copyOf(current, current.length + 1);
+    	next[current.length] = new Threshold(ingredient, threshold, listener, dispatcher);
+    	thresholds = next;
+    	int units = getAmount(ingredient);
+    	if (units < threshold) {
+    		dispatcher.submit(new StockAlert(this, ingredient, threshold, units, listener));
+    	}
+    }
+    
+    /**
+     * Stops telling the given listener about any threshold.  Alerts
+     * already queued are still delivered.
+     * @param listener
+     */
+    public synchronized void removeThresholdListener(StockThresholdListener listener) {
+    	Threshold[] current = thresholds;
+    	Threshold[] next = new Threshold[current.length];
+    	int kept = 0;
+    	for (Threshold threshold : current) {
+    		if (threshold.listener != listener) {
+    			next[kept++] = threshold;
+    		}
+    	}
+    	thresholds = Arrays.copyOf(next, kept);
+    }
+    
+    /**
+     * Copies every counter, as of one moment, into the given holder.
+     * Takes no lock and allocates only if the holder is too small; a
+     * holder that is still current is left as it is.
+     * @param into
+     * @return the holder
+     */
+    public InventorySnapshot snapshot(InventorySnapshot into) {
+    	int[] units = stock.get();
+    	if (!into.isCopyOf(units)) {
+    		into.copyFrom(units);
+    	}
+    	return into;
+    }
+    
+    /**
+     * Returns true if nothing has changed the inventory since the
+     * given holder was filled from it.  Readers can keep using a
+     * holder for as long as it is current and only copy again after
+     * a write.
+     * @param snapshot
+     * @return boolean
+     */
+    public boolean isCurrent(InventorySnapshot snapshot) {
+    	return snapshot.isCopyOf(stock.get());
+    }
+    
+    /**
+     * Copies every counter, as of one moment, into the given array,
+     * indexed by ingredient id.  Counters that do not fit are left out.
+     * @param into
+     * @return the number of ingredients stocked, which may be more
+     * than the array holds
      */
-    public synchronized boolean useIngredients(Recipe r) {
-    	if (enoughIngredients(r)) {
-	    	Inventory.coffee += r.getAmtCoffee();
-	    	Inventory.milk -= r.getAmtMilk();
-	    	Inventory.sugar -= r.getAmtSugar();
-	    	Inventory.chocolate -= r.getAmtChocolate();
-	    	return true;
-    	} else {
+    public int snapshot(int[] into) {
+    	int[] units = stock.get();
+    	System.arraycopy(units, 0, into, 0, Math.min(units.length, into.length));
+    	return units.length;
+    }
+    
+    /**
+     * Writes every counter, as of one moment, to the buffer as the
+     * number of ingredients followed by the units of each, as ints in
+     * the buffer's byte order.  Nothing is written if the buffer does
+     * not have room for all of it.
+     * @param out
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public int snapshot(ByteBuffer out) {
+    	int[] units = stock.get();
+    	int bytes = 4 + 4 * units.length;
+    	if (out.remaining() < bytes) {
+    		throw new BufferOverflowException();
+    	}
+    	out.putInt(units.length);
+    	for (int i = 0; i < units.length; i++) {
+    		out.putInt(units[i]);
+    	}
+    	return bytes;
+    }
+    
+    /**
+     * Returns the current stock vector, which must not be modified.
+     * @return units of each ingredient
+     */
+    int[] units() {
+    	return stock.get();
+    }
+    
+    /**
+     * Replaces the whole stock, as when recovering saved state.
+     * @param units units of each ingredient
+     */
+    void restore(int[] units) {
+    	int[] current;
+    	int[] next = Arrays.copyOf(units, Math.max(units.length, NUM_INGREDIENTS));
+    	do {
+    		current = stock.get();
+    	} while (!swap(current, next));
+    }
+    
+    /**
+     * Publishes a new stock vector if the stock is still the expected 
+     * one, and tells the listeners about the change.
+     * @param current
+     * @param next
+     * @return true if the new vector was published
+     */
+    private boolean swap(int[] current, int[] next) {
+    	if (!stock.compareAndSet(current, next)) {
     		return false;
     	}
+    	InventoryListener[] toNotify = listeners;
+    	for (int i = 0; i < toNotify.length; i++) {
+    		toNotify[i].inventoryChanged(this, current, next);
+    	}
+    	Threshold[] watched = thresholds;
+    	for (int i = 0; i < watched.length; i++) {
+    		watched[i].check(this, current, next);
+    	}
+    	return true;
+    }
+    
+    /**
+     * Replaces the units of one ingredient.
+     * @param ingredient
+     * @param units
+     */
+    private void set(int ingredient, int units) {
+    	int[] current;
+    	int[] next;
+    	do {
+    		current = stock.get();
+    		next = Arrays.copyOf(current, Math.max(current.length, ingredient + 1));
+    		next[ingredient] = units;
+    	} while (!swap(current, next));
+    }
+    
+    /**
+     * Adds units of one ingredient to the current amount.
+     * @param ingredient
+     * @param units
+     */
+    private void add(int ingredient, int units) {
+    	int[] current;
+    	int[] next;
+    	do {
+    		current = stock.get();
+    		next = Arrays.copyOf(current, Math.max(current.length, ingredient + 1));
+    		next[ingredient] += units;
+    	} while (!swap(current, next));
     }
     
     /**
@@ -246,19 +783,76 @@ public class Inventory {
      * @return String
      */
     public String toString() {
+    	int[] units = stock.get();
     	StringBuffer buf = new StringBuffer();
-    	buf.append("Coffee: ");
-    	buf.append(getCoffee());
-    	buf.append("\n");
-    	buf.append("Milk: ");
-    	buf.append(getMilk());
-    	buf.append("\n");
-    	buf.append("Sugar: ");
-    	buf.append(getSugar());
-    	buf.append("\n");
-    	buf.append("Chocolate: ");
-    	buf.append(getChocolate());
-    	buf.append("\n");
+    	for (int i = 0; i < units.length; i++) {
+    		buf.append(IngredientCatalog.nameOf(i));
+    		buf.append(": ");
+    		buf.append(units[i]);
+    		buf.append("\n");
+    	}
     	return buf.toString();
     }
+    
+    /**
+     * A stock level watched for one listener.
+     */
+    private static final class Threshold {
+    	final int ingredient;
+    	final int level;
+    	final StockThresholdListener listener;
+    	final StockAlertDispatcher dispatcher;
+    	
+    	Threshold(int ingredient, int level, StockThresholdListener listener, StockAlertDispatcher dispatcher) {
+    		this.ingredient = ingredient;
+    		this.level = level;
+    		this.listener = listener;
+    		this.dispatcher = dispatcher;
+    	}
+    	
+    	/**
+    	 * Queues an alert if the change crossed the level either way.
+    	 */
+    	void check(Inventory inventory, int[] before, int[] after) {
+    		int was = ingredient < before.length ? before[ingredient] : 0;
+    		int now = ingredient < after.length ? after[ingredient] : 0;
+    		if ((was < level) != (now < level)) {
+    			dispatcher.submit(new StockAlert(inventory, ingredient, level, now, listener));
+    		}
+    	}
+    }
+    
+    /**
+     * Left padding that keeps the stock reference off the cache
+     * line of whatever was allocated before it.
+     */
+    private static class StockCellLhs {
+    	long p01, p02, p03, p04, p05, p06, p07;
+    }
+    
+    /**
+     * Holds the current stock vector and swaps it with compare-and-set.
+     */
+    private static class StockCellValue extends StockCellLhs {
+    	private static final AtomicReferenceFieldUpdater<StockCellValue, int[]> UPDATER =
+    			AtomicReferenceFieldUpdater.newUpdater(StockCellValue.class, int[].class, "value");
+    	
+    	volatile int[] value = new int[NUM_INGREDIENTS];
+    	
+    	int[] get() {
+    		return value;
+    	}
+    	
+    	boolean compareAndSet(int[] expect, int[] update) {
+    		return UPDATER.compareAndSet(this, expect, update);
+    	}
+    }
+    
+    /**
+     * Stock cell with padding on both sides so that sales hammering
+     * it do not false-share with neighbouring objects.
+     */
+    private static final class StockCell extends StockCellValue {
+    	long p11, p12, p13, p14, p15, p16, p17;
+    }
 }
@@ -0,0 +1,21 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Told about every change of an inventory's stock.
+ *
+ * Listeners are called on the thread that made the change, right
+ * after it was published, and must not modify the arrays they are
+ * given.  Each change moves the stock from exactly the before vector
+ * to exactly the after vector, so the changes seen by a listener add
+ * up to the current stock even when they are reported out of order.
+ */
+public interface InventoryListener {
+
+	/**
+	 * Called after the stock changed.
+	 * @param inventory the inventory that changed
+	 * @param before units of each ingredient before the change
+	 * @param after units of each ingredient after the change
+	 */
+	void inventoryChanged(Inventory inventory, int[] before, int[] after);
+}
@@ -0,0 +1,89 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Reusable holder for a copy of an inventory's counters.
+ *
+ * Pass the same holder to Inventory.snapshot on every poll; it only
+ * allocates when the inventory has started stocking an ingredient
+ * the holder has not seen before.
+ *
+ * The holder also remembers which published stock vector it copied.
+ * Every change to an inventory publishes a new vector, so that
+ * reference works as the stamp of an optimistic read: the holder is
+ * still current exactly when the inventory publishes the same vector.
+ */
+public class InventorySnapshot {
+	private int[] units = new int[IngredientCatalog.NUM_BUILT_IN];
+	private int length;
+	/** Stock vector the counters were copied from */
+	private int[] source;
+
+	/**
+	 * Returns true if the counters were copied from the given vector.
+	 */
+	boolean isCopyOf(int[] stock) {
+		return source == stock;
+	}
+
+	/**
+	 * Copies the given stock vector, growing the holder if needed.
+	 */
+	void copyFrom(int[] stock) {
+		if (stock.length > units.length) {
+			units = new int[stock.length];
+		}
+		System.arraycopy(stock, 0, units, 0, stock.length);
+		length = stock.length;
+		source = stock;
+	}
+
+	/**
+	 * Returns the units of the ingredient with the given catalog id.
+	 * @param ingredient
+	 * @return int
+	 */
+	public int getAmount(int ingredient) {
+		return ingredient < length ? units[ingredient] : 0;
+	}
+
+	/**
+	 * Returns the number of ingredients copied; every higher id has
+	 * no units.
+	 * @return int
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the units of coffee.
+	 * @return int
+	 */
+	public int getCoffee() {
+		return getAmount(IngredientCatalog.COFFEE);
+	}
+
+	/**
+	 * Returns the units of milk.
+	 * @return int
+	 */
+	public int getMilk() {
+		return getAmount(IngredientCatalog.MILK);
+	}
+
+	/**
+	 * Returns the units of sugar.
+	 * @return int
+	 */
+	public int getSugar() {
+		return getAmount(IngredientCatalog.SUGAR);
+	}
+
+	/**
+	 * Returns the units of chocolate.
+	 * @return int
+	 */
+	public int getChocolate() {
+		return getAmount(IngredientCatalog.CHOCOLATE);
+	}
+}
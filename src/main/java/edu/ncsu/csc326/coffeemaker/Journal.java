@@ -0,0 +1,618 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of one coffee maker's inventory and recipe book.
+ *
+ * Every stock change is appended as the difference it made, and every
+ * recipe change as the new contents of its slot, to a memory-mapped
+ * segment file, by the thread that made the change.  A record in the
+ * mapped file survives the process crashing; to survive the machine
+ * losing power it must also be forced to disk.  A background flusher
+ * forces whatever was appended every few milliseconds, so the changes
+ * made in that time share one fsync and no order waits for one.  Call
+ * sync to wait until everything so far is on disk.
+ *
+ * Records are appended just after the inventory publishes a change,
+ * so the journal is written behind the stock, not ahead of it.  It
+ * keeps its own copy of the state, updated before anything is
+ * written, and a failure to write a record is kept from the order
+ * that made the change: the journal retries with a new segment, at
+ * the next change or from the flusher, backing off while the retries
+ * keep failing, and the checkpoint it starts with includes the missed
+ * records.
+ *
+ * Each segment starts with a checkpoint of the whole state.  When a
+ * segment fills up, or checkpoint is called, a new segment is started
+ * and the old one deleted, so recovery reads one checkpoint and at
+ * most one segment of changes however many sales came before.
+ */
+public class Journal implements Closeable {
+	/** Marks a journal segment file */
+	private static final int MAGIC = 0x434d4a4c;
+	/** Version of the record format */
+	private static final int FORMAT = 1;
+	/** Bytes of length and checksum before each record */
+	private static final int RECORD_HEADER_BYTES = 8;
+	/** Default size of a segment file */
+	public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+	/** Milliseconds between forces of the appended records */
+	static final long SYNC_MILLIS = 2;
+	/** Milliseconds before the first and the latest retry of a failed segment */
+	static final long RETRY_MIN_MILLIS = 1;
+	static final long RETRY_MAX_MILLIS = 1000;
+
+	private static final Logger LOG = Logger.getLogger(Journal.class.getName());
+
+	/** Record types */
+	private static final byte STOCK_DELTA = 1;
+	private static final byte RECIPE_SLOT = 2;
+	private static final byte CHECKPOINT = 3;
+
+	private static final String PREFIX = "journal-";
+	private static final String SUFFIX = ".log";
+	/** Added to segments that could not be recovered */
+	private static final String UNREADABLE_SUFFIX = ".unreadable";
+
+	private final Path directory;
+	private final int segmentBytes;
+	private final Inventory inventory;
+	private final RecipeBook recipeBook;
+	private final CRC32 crc = new CRC32();
+
+	/** Generation of the current segment */
+	private long generation;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	/** Journal position of the first byte of the current segment */
+	private long segmentBase;
+
+	/** State as of the last appended record, used for checkpoints */
+	private int[] stock;
+	private Recipe[] recipes;
+	private int[] recipeIds;
+	private int nextId;
+
+	/** Journal position up to which records have been appended */
+	private volatile long appended;
+	/** Journal position up to which records are on disk */
+	private volatile long durable;
+	/** Held by the thread forcing the segment to disk */
+	private final Object commitLock = new Object();
+	/** Set when records are missing from the segment until a new one is started */
+	private boolean behind;
+	/** Why the last record could not be written, or null once one has been */
+	private volatile RuntimeException failure;
+	/** System.nanoTime before which a new segment is not tried again */
+	private long retryAt;
+	/** Nanoseconds to wait after the next failure to start a segment */
+	private long retryDelay;
+	/** Runs of the background flusher */
+	private ScheduledFuture<?> flusher;
+
+	private final InventoryListener inventoryListener = (inv, before, after) -> appendStockDelta(before, after);
+	private final RecipeBookListener recipeBookListener = (snapshot, slot) -> appendRecipeSlot(snapshot, slot);
+
+	private Journal(Path directory, int segmentBytes, RecipeBook recipeBook, Inventory inventory) {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.recipeBook = recipeBook;
+		this.inventory = inventory;
+	}
+
+	/**
+	 * Opens the journal in the given directory with the default
+	 * segment size.
+	 * @see #open(Path, RecipeBook, Inventory, int)
+	 */
+	public static Journal open(Path directory, RecipeBook recipeBook, Inventory inventory) throws IOException {
+		return open(directory, recipeBook, inventory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * Opens the journal in the given directory and starts recording
+	 * every change of the recipe book and inventory.  If the directory
+	 * holds a journal, the book and inventory are first restored to the
+	 * state it recorded; otherwise their current state becomes the first
+	 * checkpoint.  Open the journal before the coffee maker takes orders.
+	 * @param directory
+	 * @param recipeBook
+	 * @param inventory
+	 * @param segmentBytes size of each segment file
+	 * @return Journal
+	 * @throws IOException if the journal cannot be read or created
+	 */
+	public static Journal open(Path directory, RecipeBook recipeBook, Inventory inventory, int segmentBytes)
+			throws IOException {
+		Files.createDirectories(directory);
+		Journal journal = new Journal(directory, segmentBytes, recipeBook, inventory);
+		boolean recovered;
+		synchronized (journal) {
+			recovered = journal.recover();
+			if (!recovered) {
+				journal.captureState();
+				journal.startSegment(1);
+			}
+		}
+		if (recovered) {
+			inventory.restore(journal.stock);
+			recipeBook.restore(journal.recipes, journal.recipeIds, journal.nextId);
+		}
+		inventory.addListener(journal.inventoryListener);
+		recipeBook.addListener(journal.recipeBookListener);
+		journal.flusher = SharedFlusher.INSTANCE.scheduleWithFixedDelay(journal::flush,
+				SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+		return journal;
+	}
+
+	/**
+	 * Starts a new segment with a checkpoint of the current state and
+	 * deletes the old one.
+	 * @throws IOException if the new segment cannot be written
+	 */
+	public synchronized void checkpoint() throws IOException {
+		startSegment(generation + 1);
+	}
+
+	/**
+	 * Waits until every record appended so far is on disk.
+	 */
+	public void sync() {
+		sync(appended);
+	}
+
+	/**
+	 * Returns why the last change could not be written, or null if the
+	 * journal has caught up since.
+	 * @return RuntimeException
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Stops recording and closes the segment file.
+	 * @throws IOException if the segment cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		flusher.cancel(false);
+		inventory.removeListener(inventoryListener);
+		recipeBook.removeListener(recipeBookListener);
+		sync();
+		synchronized (this) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Waits until the journal is on disk up to the given position.  The
+	 * first waiter forces everything appended so far; the others find
+	 * their records already covered when it is done.
+	 */
+	private void sync(long position) {
+		if (durable >= position) {
+			return;
+		}
+		synchronized (commitLock) {
+			if (durable >= position) {
+				return;
+			}
+			long target;
+			MappedByteBuffer toForce;
+			synchronized (this) {
+				target = appended;
+				toForce = buffer;
+			}
+			toForce.force();
+			durable = Math.max(durable, target);
+		}
+	}
+
+	/**
+	 * Retries a failed segment when due and forces the appended
+	 * records to disk for the background flusher.
+	 */
+	private void flush() {
+		try {
+			retryIfDue();
+			sync(appended);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Journal could not be forced to disk", e);
+		}
+	}
+
+	/**
+	 * Adds the difference between two stock vectors to the tracked
+	 * state and appends it.
+	 */
+	private synchronized void appendStockDelta(int[] before, int[] after) {
+		int length = Math.max(before.length, after.length);
+		if (stock.length < length) {
+			stock = Arrays.copyOf(stock, length);
+		}
+		for (int i = 0; i < length; i++) {
+			stock[i] += delta(before, after, i);
+		}
+		if (!ensureRoom(4 + 4 * length)) {
+			return;
+		}
+		int start = beginRecord(STOCK_DELTA);
+		buffer.putInt(length);
+		for (int i = 0; i < length; i++) {
+			buffer.putInt(delta(before, after, i));
+		}
+		endRecord(start);
+	}
+
+	private static int delta(int[] before, int[] after, int i) {
+		return (i < after.length ? after[i] : 0) - (i < before.length ? before[i] : 0);
+	}
+
+	/**
+	 * Sets one recipe slot of the tracked state and appends its new
+	 * contents.
+	 */
+	private synchronized void appendRecipeSlot(RecipeBook.Snapshot snapshot, int slot) {
+		Recipe recipe = snapshot.recipes()[slot];
+		int id = snapshot.getRecipeIdAt(slot);
+		setSlot(slot, recipe, id);
+		int bytes;
+		try {
+			bytes = WireFormat.recipeBytes(recipe);
+		} catch (IllegalArgumentException e) {
+			// A name too long to write; no segment can hold this state until it is replaced.
+			fail("Journal cannot write recipe slot " + slot, e);
+			return;
+		}
+		if (!ensureRoom(8 + bytes)) {
+			return;
+		}
+		int start = beginRecord(RECIPE_SLOT);
+		buffer.putInt(slot);
+		buffer.putInt(id);
+		WireFormat.putRecipe(buffer, recipe);
+		endRecord(start);
+	}
+
+	/**
+	 * Starts a new segment if the current one cannot hold a record
+	 * with the given payload, or is missing records.  The tracked state
+	 * already has the change, so the new segment's checkpoint covers it.
+	 * A failure is logged and kept rather than thrown, since the change
+	 * has already been made, and the next change tries again.
+	 * @return true if the record still has to be appended
+	 */
+	private boolean ensureRoom(int payloadBytes) {
+		if (!behind && buffer.remaining() >= RECORD_HEADER_BYTES + 1 + payloadBytes) {
+			return true;
+		}
+		if (!behind || System.nanoTime() - retryAt >= 0) {
+			startNextSegment();
+		}
+		return false;
+	}
+
+	/**
+	 * Starts a new segment for the flusher once the journal has been
+	 * behind for the retry delay, so it catches up without waiting for
+	 * another change.
+	 */
+	private synchronized void retryIfDue() {
+		if (behind && channel.isOpen() && System.nanoTime() - retryAt >= 0) {
+			startNextSegment();
+		}
+	}
+
+	private void startNextSegment() {
+		try {
+			startSegment(generation + 1);
+		} catch (IOException | RuntimeException e) {
+			fail("Journal could not start a new segment", e);
+		}
+	}
+
+	/**
+	 * Marks the journal as missing records until a new segment starts,
+	 * and keeps the failure for getFailure.  Only the failure that puts
+	 * the journal behind is logged as a warning; while it stays behind
+	 * the retries are logged at FINE and the delay before the next one
+	 * doubles.
+	 */
+	private void fail(String message, Exception e) {
+		if (behind) {
+			retryDelay = Math.min(retryDelay * 2, TimeUnit.MILLISECONDS.toNanos(RETRY_MAX_MILLIS));
+			LOG.log(Level.FINE, message, e);
+		} else {
+			behind = true;
+			retryDelay = TimeUnit.MILLISECONDS.toNanos(RETRY_MIN_MILLIS);
+			LOG.log(Level.WARNING, message, e);
+		}
+		retryAt = System.nanoTime() + retryDelay;
+		failure = e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+	}
+
+	private int beginRecord(byte type) {
+		int start = buffer.position();
+		buffer.position(start + RECORD_HEADER_BYTES);
+		buffer.put(type);
+		return start;
+	}
+
+	/**
+	 * Fills in the length and checksum of the record started at the
+	 * given offset.
+	 */
+	private long endRecord(int start) {
+		int end = buffer.position();
+		ByteBuffer payload = buffer.duplicate();
+		payload.position(start + RECORD_HEADER_BYTES);
+		payload.limit(end);
+		crc.reset();
+		crc.update(payload);
+		buffer.putInt(start + 4, (int) crc.getValue());
+		buffer.putInt(start, end - start - RECORD_HEADER_BYTES);
+		appended = segmentBase + end;
+		return appended;
+	}
+
+	/**
+	 * Writes a segment starting with a checkpoint of the tracked state,
+	 * forces it, switches to it and deletes the segment before it.  If
+	 * the new segment cannot be written, the journal stays on the old
+	 * one and the new file is removed.
+	 */
+	private void startSegment(long newGeneration) throws IOException {
+		if (buffer != null) {
+			buffer.force();
+		}
+		Path file = segmentFile(newGeneration);
+		FileChannel newChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileChannel oldChannel = channel;
+		MappedByteBuffer oldBuffer = buffer;
+		long oldGeneration = generation;
+		long oldBase = segmentBase;
+		long oldAppended = appended;
+		try {
+			MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+			newBuffer.putInt(MAGIC);
+			newBuffer.putInt(FORMAT);
+			channel = newChannel;
+			buffer = newBuffer;
+			generation = newGeneration;
+			segmentBase = oldAppended;
+			writeCheckpoint();
+			buffer.force();
+		} catch (IOException | RuntimeException e) {
+			channel = oldChannel;
+			buffer = oldBuffer;
+			generation = oldGeneration;
+			segmentBase = oldBase;
+			appended = oldAppended;
+			newChannel.close();
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		durable = appended;
+		behind = false;
+		failure = null;
+
+		if (oldChannel != null) {
+			oldChannel.close();
+			Files.deleteIfExists(segmentFile(oldGeneration));
+		}
+	}
+
+	private void writeCheckpoint() {
+		int bytes = 4 + 4 * stock.length + 8;
+		for (int slot = 0; slot < recipes.length; slot++) {
+			bytes += 5 + WireFormat.recipeBytes(recipes[slot]);
+		}
+		if (buffer.remaining() < RECORD_HEADER_BYTES + 1 + bytes) {
+			throw new IllegalStateException("Journal checkpoint does not fit in a segment");
+		}
+		int start = beginRecord(CHECKPOINT);
+		buffer.putInt(stock.length);
+		for (int units : stock) {
+			buffer.putInt(units);
+		}
+		buffer.putInt(nextId);
+		buffer.putInt(recipes.length);
+		for (int slot = 0; slot < recipes.length; slot++) {
+			buffer.putInt(recipeIds[slot]);
+			WireFormat.putRecipe(buffer, recipes[slot]);
+		}
+		endRecord(start);
+	}
+
+	/**
+	 * Takes the state to checkpoint from the inventory and recipe book.
+	 */
+	private void captureState() {
+		stock = inventory.units().clone();
+		RecipeBook.Snapshot snapshot = recipeBook.snapshot();
+		recipes = snapshot.recipes().clone();
+		recipeIds = new int[recipes.length];
+		for (int slot = 0; slot < recipes.length; slot++) {
+			recipeIds[slot] = snapshot.getRecipeIdAt(slot);
+		}
+		nextId = recipeBook.getNextId();
+	}
+
+	private void setSlot(int slot, Recipe recipe, int id) {
+		if (slot >= recipes.length) {
+			int oldLength = recipes.length;
+			recipes = Arrays.copyOf(recipes, Math.max(slot + 1, oldLength * 2));
+			recipeIds = Arrays.copyOf(recipeIds, recipes.length);
+			Arrays.fill(recipeIds, oldLength, recipeIds.length, -1);
+		}
+		recipes[slot] = recipe;
+		recipeIds[slot] = id;
+		nextId = Math.max(nextId, id + 1);
+	}
+
+	/**
+	 * Loads the newest readable segment: its checkpoint and then every
+	 * intact record after it.  Older segments are deleted, and newer
+	 * ones, which could not be read, are renamed out of the way of the
+	 * segments still to come.
+	 * @return false if there is no journal to recover
+	 */
+	private boolean recover() throws IOException {
+		List<Long> generations = listGenerations();
+		for (int i = generations.size() - 1; i >= 0; i--) {
+			long candidate = generations.get(i);
+			FileChannel candidateChannel = FileChannel.open(segmentFile(candidate),
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			MappedByteBuffer candidateBuffer = candidateChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+			if (readSegment(candidateBuffer)) {
+				channel = candidateChannel;
+				buffer = candidateBuffer;
+				generation = candidate;
+				segmentBase = 0;
+				appended = buffer.position();
+				durable = appended;
+				for (long older : generations) {
+					if (older < candidate) {
+						Files.deleteIfExists(segmentFile(older));
+					}
+				}
+				return true;
+			}
+			candidateChannel.close();
+			setAside(candidate);
+		}
+		return false;
+	}
+
+	private void setAside(long segmentGeneration) throws IOException {
+		Path file = segmentFile(segmentGeneration);
+		Path unreadable = file.resolveSibling(file.getFileName() + UNREADABLE_SUFFIX);
+		Files.move(file, unreadable, StandardCopyOption.REPLACE_EXISTING);
+		LOG.log(Level.WARNING, "Journal segment " + file + " cannot be read; moved to " + unreadable);
+	}
+
+	/**
+	 * Replays one segment into the tracked state and leaves the buffer
+	 * positioned after its last intact record, with the rest zeroed.
+	 * @return false if the segment has no intact checkpoint
+	 */
+	private boolean readSegment(ByteBuffer segment) {
+		if (segment.getInt() != MAGIC || segment.getInt() != FORMAT) {
+			return false;
+		}
+		boolean checkpointed = false;
+		while (segment.remaining() >= RECORD_HEADER_BYTES + 1) {
+			int start = segment.position();
+			int length = segment.getInt();
+			int checksum = segment.getInt();
+			if (length <= 0 || length > segment.remaining()) {
+				segment.position(start);
+				break;
+			}
+			ByteBuffer payload = segment.slice();
+			payload.limit(length);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				segment.position(start);
+				break;
+			}
+			byte type = payload.get();
+			if (type == CHECKPOINT) {
+				readCheckpoint(payload);
+				checkpointed = true;
+			} else if (!checkpointed) {
+				return false;
+			} else if (type == STOCK_DELTA) {
+				int count = payload.getInt();
+				if (stock.length < count) {
+					stock = Arrays.copyOf(stock, count);
+				}
+				for (int i = 0; i < count; i++) {
+					stock[i] += payload.getInt();
+				}
+			} else if (type == RECIPE_SLOT) {
+				int slot = payload.getInt();
+				int id = payload.getInt();
+				setSlot(slot, WireFormat.getRecipe(payload), id);
+			}
+			segment.position(start + RECORD_HEADER_BYTES + length);
+		}
+		if (checkpointed) {
+			// Clear whatever a crash left after the last intact record.
+			ByteBuffer tail = segment.duplicate();
+			byte[] zeros = new byte[Math.min(64 << 10, tail.remaining())];
+			while (tail.hasRemaining()) {
+				tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+			}
+		}
+		return checkpointed;
+	}
+
+	private void readCheckpoint(ByteBuffer payload) {
+		stock = new int[payload.getInt()];
+		for (int i = 0; i < stock.length; i++) {
+			stock[i] = payload.getInt();
+		}
+		nextId = payload.getInt();
+		recipes = new Recipe[payload.getInt()];
+		recipeIds = new int[recipes.length];
+		for (int slot = 0; slot < recipes.length; slot++) {
+			recipeIds[slot] = payload.getInt();
+			recipes[slot] = WireFormat.getRecipe(payload);
+		}
+	}
+
+	private Path segmentFile(long segmentGeneration) {
+		return directory.resolve(String.format("%s%016d%s", PREFIX, segmentGeneration, SUFFIX));
+	}
+
+	/** Holder for the lazily started flusher thread */
+	private static final class SharedFlusher {
+		static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "journal-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private List<Long> listGenerations() throws IOException {
+		List<Long> generations = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					generations.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not a segment this journal wrote.
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+}
@@ -0,0 +1,128 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of latencies in nanoseconds.
+ *
+ * Buckets are log-linear: every power of two is split into eight
+ * equal sub-buckets, so a reported value is within 12.5% of the
+ * recorded one.  Recording is one atomic increment and never
+ * allocates.
+ */
+public class LatencyHistogram {
+	/** Sub-buckets per power of two, as a power of two */
+	private static final int SUB_BUCKET_BITS = 3;
+	/** Sub-buckets per power of two */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Number of buckets needed to cover every non-negative long */
+	private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/** Count of recorded values in each bucket */
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+	/**
+	 * Records one value.  Negative values are recorded as zero.
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(bucketOf(Math.max(0, nanos)));
+	}
+
+	/**
+	 * Adds every count of the other histogram to this one.
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long count = other.counts.get(i);
+			if (count != 0) {
+				counts.getAndAdd(i, count);
+			}
+		}
+	}
+
+	/**
+	 * Takes every count of the other histogram away from this one,
+	 * which must already contain them; for example to get what was
+	 * recorded between two copies of a histogram.
+	 * @param other
+	 */
+	void subtract(LatencyHistogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long count = other.counts.get(i);
+			if (count != 0) {
+				counts.getAndAdd(i, -count);
+			}
+		}
+	}
+
+	/**
+	 * Sets every count back to zero.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return long
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given
+	 * percentile of the recorded values, or 0 if nothing was recorded.
+	 * @param percentile between 0 and 100
+	 * @return long
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return highestValueIn(i);
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the bucket holding the given non-negative value.
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the largest value that falls in the given bucket.
+	 */
+	static long highestValueIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return lowest + width - 1;
+	}
+}
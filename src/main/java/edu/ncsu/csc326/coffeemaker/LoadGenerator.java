@@ -0,0 +1,421 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Drives one coffee maker with synthetic demand and reports how it
+ * copes.
+ *
+ * Order threads each buy a fixed number of beverages, picking recipes
+ * by weight and paying the price plus a random tip or, at the
+ * underpay rate, too little.  Every so many orders a thread restocks
+ * the machine, and poller threads read the inventory the whole time.
+ * Each order thread draws from its own generator seeded from the
+ * run's seed, so the same settings always produce the same order
+ * streams.  Throughput, latency and outcomes are sampled from the
+ * coffee maker's metrics once per interval.
+ */
+public class LoadGenerator {
+
+	/**
+	 * What a run does.  The defaults are a small, mixed load.
+	 */
+	public static class Settings {
+		private long seed = 326;
+		private int orderThreads = 4;
+		private int ordersPerThread = 100000;
+		private double[] recipeMix;
+		private double underpayRate = 0.05;
+		private int maxOverpay = 50;
+		private int restockEvery = 10;
+		private int[] restock = {25, 20, 12, 18};
+		private int pollerThreads = 1;
+		private long intervalMillis = 1000;
+
+		/**
+		 * Sets the seed all order streams are derived from.
+		 * @param seed
+		 */
+		public void setSeed(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Sets the number of threads placing orders.
+		 * @param orderThreads
+		 */
+		public void setOrderThreads(int orderThreads) {
+			this.orderThreads = orderThreads;
+		}
+
+		/**
+		 * Sets the number of orders each order thread places.
+		 * @param ordersPerThread
+		 */
+		public void setOrdersPerThread(int ordersPerThread) {
+			this.ordersPerThread = ordersPerThread;
+		}
+
+		/**
+		 * Sets the relative demand for the recipe in each slot.  By
+		 * default every recipe present at the start is equally likely.
+		 * @param recipeMix
+		 */
+		public void setRecipeMix(double... recipeMix) {
+			this.recipeMix = recipeMix.clone();
+		}
+
+		/**
+		 * Sets how often an order pays less than the price, from 0 to 1.
+		 * @param underpayRate
+		 */
+		public void setUnderpayRate(double underpayRate) {
+			this.underpayRate = underpayRate;
+		}
+
+		/**
+		 * Sets the largest amount an order pays above the price.
+		 * @param maxOverpay
+		 */
+		public void setMaxOverpay(int maxOverpay) {
+			this.maxOverpay = maxOverpay;
+		}
+
+		/**
+		 * Sets the restock cadence: each order thread restocks after
+		 * this many of its orders, with the given delivery indexed by
+		 * IngredientCatalog id.  0 never restocks.
+		 * @param restockEvery
+		 * @param delivery
+		 */
+		public void setRestock(int restockEvery, int... delivery) {
+			this.restockEvery = restockEvery;
+			this.restock = delivery.clone();
+		}
+
+		/**
+		 * Sets the number of threads polling the inventory.
+		 * @param pollerThreads
+		 */
+		public void setPollerThreads(int pollerThreads) {
+			this.pollerThreads = pollerThreads;
+		}
+
+		/**
+		 * Sets how often the report takes a sample.
+		 * @param intervalMillis
+		 */
+		public void setIntervalMillis(long intervalMillis) {
+			this.intervalMillis = intervalMillis;
+		}
+	}
+
+	private final CoffeeMaker coffeeMaker;
+	private final Settings settings;
+
+	/**
+	 * Creates a generator for a coffee maker that already has its
+	 * recipes.
+	 * @param coffeeMaker
+	 * @param settings
+	 */
+	public LoadGenerator(CoffeeMaker coffeeMaker, Settings settings) {
+		this.coffeeMaker = coffeeMaker;
+		this.settings = settings;
+	}
+
+	/**
+	 * Runs the load to completion and returns what happened.
+	 * @return Report
+	 * @throws InterruptedException
+	 */
+	public Report run() throws InterruptedException {
+		Recipe[] recipes = coffeeMaker.getRecipes();
+		double[] cumulative = cumulativeMix(recipes);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicLong polls = new AtomicLong();
+		CountDownLatch ordersDone = new CountDownLatch(settings.orderThreads);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < settings.orderThreads; i++) {
+			long threadSeed = settings.seed * 31 + i;
+			threads.add(new Thread(() -> {
+				try {
+					placeOrders(new Random(threadSeed), recipes, cumulative);
+				} finally {
+					ordersDone.countDown();
+				}
+			}, "load-orders-" + i));
+		}
+		for (int i = 0; i < settings.pollerThreads; i++) {
+			threads.add(new Thread(() -> poll(done, polls), "load-poller-" + i));
+		}
+
+		Report report = new Report();
+		CoffeeMakerMetrics.Snapshot previous = coffeeMaker.getMetrics().snapshot();
+		CoffeeMakerMetrics.Snapshot first = previous;
+		long start = System.nanoTime();
+		long last = start;
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		boolean finished = false;
+		while (!finished) {
+			finished = ordersDone.await(settings.intervalMillis, TimeUnit.MILLISECONDS);
+			long now = System.nanoTime();
+			CoffeeMakerMetrics.Snapshot current = coffeeMaker.getMetrics().snapshot();
+			report.intervals.add(new Interval(now - start, now - last, previous, current));
+			previous = current;
+			last = now;
+		}
+		done.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		report.total = new Interval(last - start, last - start, first, previous);
+		report.polls = polls.get();
+		return report;
+	}
+
+	private double[] cumulativeMix(Recipe[] recipes) {
+		double[] cumulative = new double[recipes.length];
+		double sum = 0;
+		for (int slot = 0; slot < recipes.length; slot++) {
+			double weight;
+			if (settings.recipeMix == null) {
+				weight = recipes[slot] != null && !"".equals(recipes[slot].getName()) ? 1 : 0;
+			} else {
+				weight = slot < settings.recipeMix.length ? settings.recipeMix[slot] : 0;
+			}
+			sum += weight;
+			cumulative[slot] = sum;
+		}
+		if (sum <= 0) {
+			throw new IllegalStateException("There is no recipe to order");
+		}
+		for (int slot = 0; slot < cumulative.length; slot++) {
+			cumulative[slot] /= sum;
+		}
+		return cumulative;
+	}
+
+	private void placeOrders(Random random, Recipe[] recipes, double[] cumulative) {
+		for (int order = 1; order <= settings.ordersPerThread; order++) {
+			int slot = pick(cumulative, random.nextDouble());
+			int price = recipes[slot] == null ? 0 : recipes[slot].getPrice();
+			int paid;
+			if (price > 0 && random.nextDouble() < settings.underpayRate) {
+				paid = random.nextInt(price);
+			} else {
+				paid = price + random.nextInt(settings.maxOverpay + 1);
+			}
+			coffeeMaker.makeCoffee(slot, paid);
+			if (settings.restockEvery > 0 && order % settings.restockEvery == 0) {
+				try {
+					coffeeMaker.restock(settings.restock);
+				} catch (InventoryException e) {
+					throw new IllegalArgumentException(e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	private static int pick(double[] cumulative, double point) {
+		for (int slot = 0; slot < cumulative.length - 1; slot++) {
+			if (point < cumulative[slot]) {
+				return slot;
+			}
+		}
+		return cumulative.length - 1;
+	}
+
+	private void poll(AtomicBoolean done, AtomicLong polls) {
+		InventorySnapshot holder = new InventorySnapshot();
+		long count = 0;
+		while (!done.get()) {
+			coffeeMaker.checkInventory(holder);
+			count++;
+		}
+		polls.addAndGet(count);
+	}
+
+	/**
+	 * Orders, outcomes and latency over one stretch of a run.
+	 */
+	public static final class Interval {
+		private final long elapsedNanos;
+		private final long lengthNanos;
+		private final long[] outcomes = new long[Outcome.values().length];
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		private Interval(long elapsedNanos, long lengthNanos,
+				CoffeeMakerMetrics.Snapshot before, CoffeeMakerMetrics.Snapshot after) {
+			this.elapsedNanos = elapsedNanos;
+			this.lengthNanos = lengthNanos;
+			for (Outcome outcome : Outcome.values()) {
+				outcomes[outcome.ordinal()] = after.getTotal(outcome) - before.getTotal(outcome);
+			}
+			latency.add(after.getOrderLatency());
+			latency.subtract(before.getOrderLatency());
+		}
+
+		/**
+		 * Returns the time from the start of the run to the end of
+		 * this interval.
+		 * @return long
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * Returns the number of orders placed.
+		 * @return long
+		 */
+		public long getOrders() {
+			long orders = 0;
+			for (long count : outcomes) {
+				orders += count;
+			}
+			return orders;
+		}
+
+		/**
+		 * Returns the number of orders that ended with the given outcome.
+		 * @param outcome
+		 * @return long
+		 */
+		public long getCount(Outcome outcome) {
+			return outcomes[outcome.ordinal()];
+		}
+
+		/**
+		 * Returns orders per second.
+		 * @return double
+		 */
+		public double getThroughput() {
+			return lengthNanos == 0 ? 0 : getOrders() * 1e9 / lengthNanos;
+		}
+
+		/**
+		 * Returns the fraction of orders that were sold.
+		 * @return double
+		 */
+		public double getFillRate() {
+			long orders = getOrders();
+			return orders == 0 ? 0 : (double) getCount(Outcome.SOLD) / orders;
+		}
+
+		/**
+		 * Returns the order latency.
+		 * @return LatencyHistogram
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Returns one line of the report.
+		 * @return String
+		 */
+		public String toString() {
+			return String.format("%8.1fs %10d %12.0f %6.1f%% %9d %9d %9d %10d %10d %10d",
+					elapsedNanos / 1e9, getOrders(), getThroughput(), getFillRate() * 100,
+					getCount(Outcome.NOT_ENOUGH_MONEY), getCount(Outcome.NOT_ENOUGH_INGREDIENTS),
+					getCount(Outcome.NO_RECIPE), latency.getValueAtPercentile(50),
+					latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9));
+		}
+	}
+
+	/**
+	 * Samples taken during a run and its totals.
+	 */
+	public static final class Report {
+		private final List<Interval> intervals = new ArrayList<Interval>();
+		private Interval total;
+		private long polls;
+
+		private Report() {
+		}
+
+		/**
+		 * Returns one sample per interval, in order.
+		 * @return List
+		 */
+		public List<Interval> getIntervals() {
+			return Collections.unmodifiableList(intervals);
+		}
+
+		/**
+		 * Returns the whole run as one interval.
+		 * @return Interval
+		 */
+		public Interval getTotal() {
+			return total;
+		}
+
+		/**
+		 * Returns the number of inventory polls made.
+		 * @return long
+		 */
+		public long getPolls() {
+			return polls;
+		}
+
+		/**
+		 * Returns the report as a table, one line per interval and one
+		 * for the whole run.  Latencies are in nanoseconds.
+		 * @return String
+		 */
+		public String toString() {
+			StringBuilder buf = new StringBuilder();
+			buf.append(String.format("%9s %10s %12s %7s %9s %9s %9s %10s %10s %10s%n", "time", "orders",
+					"orders/s", "filled", "low-pay", "no-stock", "no-recipe", "p50", "p99", "p99.9"));
+			for (Interval interval : intervals) {
+				buf.append(interval).append(String.format("%n"));
+			}
+			buf.append(total).append(String.format("  total%n"));
+			buf.append("Inventory polls: ").append(polls).append(String.format("%n"));
+			return buf.toString();
+		}
+	}
+
+	/**
+	 * Runs a load against a coffee maker with the four default menu
+	 * recipes and prints the report.  Arguments are seed, order
+	 * threads and orders per thread, all optional.
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Settings settings = new Settings();
+		if (args.length > 0) {
+			settings.setSeed(Long.parseLong(args[0]));
+		}
+		if (args.length > 1) {
+			settings.setOrderThreads(Integer.parseInt(args[1]));
+		}
+		if (args.length > 2) {
+			settings.setOrdersPerThread(Integer.parseInt(args[2]));
+		}
+		CoffeeMaker coffeeMaker = new CoffeeMaker();
+		coffeeMaker.addRecipe(menuRecipe("Coffee", 50, 3, 1, 1, 0));
+		coffeeMaker.addRecipe(menuRecipe("Mocha", 75, 3, 1, 1, 2));
+		coffeeMaker.addRecipe(menuRecipe("Latte", 100, 3, 3, 1, 0));
+		coffeeMaker.addRecipe(menuRecipe("Hot Chocolate", 65, 0, 2, 1, 4));
+		System.out.print(new LoadGenerator(coffeeMaker, settings).run());
+	}
+
+	private static Recipe menuRecipe(String name, int price, int coffee, int milk, int sugar, int chocolate) {
+		return new Recipe(name, price, new int[] {coffee, milk, sugar, chocolate});
+	}
+}
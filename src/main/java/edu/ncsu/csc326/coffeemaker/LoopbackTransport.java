@@ -0,0 +1,71 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transport between replicas in one process, for tests and
+ * simulations.  Messages are delivered at once on the sending
+ * thread.  A node can be taken offline, after which messages to or
+ * from it are dropped until it comes back.
+ */
+public class LoopbackTransport implements ReplicationTransport {
+	private final Map<Integer, ReplicationEndpoint> endpoints = new ConcurrentHashMap<Integer, ReplicationEndpoint>();
+	private final Set<Integer> offline = ConcurrentHashMap.newKeySet();
+	/** Messages delivered and bytes in them, for tests that measure traffic */
+	private long messages;
+	private long bytes;
+
+	@Override
+	public void register(int node, ReplicationEndpoint endpoint) {
+		endpoints.put(node, endpoint);
+	}
+
+	@Override
+	public boolean send(int from, int to, ByteBuffer message) {
+		ReplicationEndpoint endpoint = endpoints.get(to);
+		if (endpoint == null || offline.contains(from) || offline.contains(to)) {
+			return false;
+		}
+		synchronized (this) {
+			messages++;
+			bytes += message.remaining();
+		}
+		endpoint.receive(from, message.slice().asReadOnlyBuffer());
+		return true;
+	}
+
+	/**
+	 * Cuts a node off from every other node.
+	 * @param node
+	 */
+	public void disconnect(int node) {
+		offline.add(node);
+	}
+
+	/**
+	 * Lets a node talk to the others again.
+	 * @param node
+	 */
+	public void reconnect(int node) {
+		offline.remove(node);
+	}
+
+	/**
+	 * Returns the number of messages delivered.
+	 * @return long
+	 */
+	public synchronized long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the number of bytes in the messages delivered.
+	 * @return long
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+}
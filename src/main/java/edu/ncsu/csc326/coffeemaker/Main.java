@@ -14,8 +14,14 @@
 package edu.ncsu.csc326.coffeemaker;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
 import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
@@ -28,6 +34,8 @@ import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
  */
 public class Main {
     private static CoffeeMaker coffeeMaker;
+    /** Console input, shared by every prompt so no typed-ahead input is lost */
+    private static BufferedReader console;
 
     /**
      * Prints the main menu and handles user input for 
@@ -265,10 +273,12 @@ public class Main {
      */
     private static String inputOutput(String message) {
         System.out.println(message);
-	    BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+        if (console == null) {
+        	console = new BufferedReader(new InputStreamReader(System.in));
+        }
 	    String returnString = "";
 	    try {
-	        returnString = br.readLine();
+	        returnString = console.readLine();
 	    }
 	    catch (IOException e){
 	        System.out.println("Error reading in value");
@@ -286,26 +296,57 @@ public class Main {
     private static int recipeListSelection(String message) {
     	String userSelection = inputOutput(message);
     	int recipe = 0;
+    	int numRecipes = coffeeMaker.getRecipes().length;
         try {
         	recipe = Integer.parseInt(userSelection) - 1;
-        	if (recipe >= 0 && recipe <=2) {
+        	if (recipe >= 0 && recipe < numRecipes) {
         		//do nothing here.
         	} else {
         		recipe = -1;
         	}
         } catch (NumberFormatException e) {
-        	System.out.println("Please select a number from 1-3.");
+        	System.out.println("Please select a number from 1-" + numRecipes + ".");
         	recipe = -1;
         }
         return recipe;
     }
     
     /**
-     * Starts the coffee maker program.
+     * Runs the commands in the given file, or standard input for "-",
+     * without menus and exits with status 1 if any command failed.
+     * @param script
+     * @throws IOException
+     */
+    private static void runBatch(String script) throws IOException {
+    	BufferedReader in = "-".equals(script)
+    			? new BufferedReader(new InputStreamReader(System.in))
+    			: Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8);
+    	PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+    	long errors;
+    	try {
+    		errors = new BatchRunner(coffeeMaker, out).run(in);
+    	} finally {
+    		out.flush();
+    		in.close();
+    	}
+    	if (errors > 0) {
+    		System.exit(1);
+    	}
+    }
+    
+    /**
+     * Starts the coffee maker program.  With --batch and a file name,
+     * or - for standard input, runs a command script instead of the
+     * menu (see BatchRunner).
      * @param args
+     * @throws IOException
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 	    coffeeMaker = new CoffeeMaker();
+	    if (args.length > 0 && "--batch".equals(args[0])) {
+	    	runBatch(args.length > 1 ? args[1] : "-");
+	    	return;
+	    }
 	    System.out.println("Welcome to the CoffeeMaker!\n");
 	    mainMenu();
 	}
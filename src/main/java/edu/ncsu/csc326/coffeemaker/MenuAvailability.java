@@ -0,0 +1,236 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * How many servings of each recipe the current stock can make, and
+ * which recipes can be made at all, for menus that grey out drinks.
+ *
+ * The answers are kept up to date as the stock and the recipe book
+ * change, and published together as one immutable view, so reading
+ * them takes no lock and does no arithmetic.  A stock change only
+ * recounts the recipes that use an ingredient whose units changed; a
+ * recipe change only recounts the slots whose recipe was replaced.
+ *
+ * Updates run on the thread that made the change.  Each one works
+ * from the current stock and book rather than the change it was told
+ * about, so after the last change has been reported the view matches
+ * the inventory even when changes were reported out of order.
+ */
+public class MenuAvailability {
+	/** Servings of a recipe that uses no ingredients */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private final RecipeBook recipeBook;
+	private final Inventory inventory;
+	private final AtomicReference<View> view;
+
+	private final InventoryListener inventoryListener = (inv, before, after) -> update();
+	private final RecipeBookListener recipeBookListener = (snapshot, slot) -> update();
+
+	private MenuAvailability(RecipeBook recipeBook, Inventory inventory) {
+		this.recipeBook = recipeBook;
+		this.inventory = inventory;
+		this.view = new AtomicReference<View>(View.EMPTY);
+	}
+
+	/**
+	 * Starts keeping the availability of the recipes in the given book
+	 * against the given inventory.
+	 * @param recipeBook
+	 * @param inventory
+	 * @return MenuAvailability
+	 */
+	public static MenuAvailability attach(RecipeBook recipeBook, Inventory inventory) {
+		MenuAvailability availability = new MenuAvailability(recipeBook, inventory);
+		inventory.addListener(availability.inventoryListener);
+		recipeBook.addListener(availability.recipeBookListener);
+		availability.update();
+		return availability;
+	}
+
+	/**
+	 * Stops following the recipe book and inventory.  The last
+	 * answers stay readable but are no longer updated.
+	 */
+	public void detach() {
+		inventory.removeListener(inventoryListener);
+		recipeBook.removeListener(recipeBookListener);
+	}
+
+	/**
+	 * Returns the number of servings of the recipe in the given slot
+	 * the current stock can make, 0 for an empty slot, or UNLIMITED
+	 * for a recipe that uses no ingredients.
+	 * @param slot
+	 * @return int
+	 */
+	public int getServings(int slot) {
+		int[] servings = view.get().servings;
+		return slot < servings.length ? servings[slot] : 0;
+	}
+
+	/**
+	 * Returns true if the recipe in the given slot can be made from
+	 * the current stock.
+	 * @param slot
+	 * @return boolean
+	 */
+	public boolean isAvailable(int slot) {
+		long[] available = view.get().available;
+		int word = slot >>> 6;
+		return word < available.length && (available[word] & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Copies the availability bitset, as of one moment, into the given
+	 * array: bit (slot % 64) of word (slot / 64) is set if the recipe in
+	 * that slot can be made.  Words that do not fit are left out and
+	 * the rest of the array is cleared.
+	 * @param into
+	 * @return the number of recipe slots covered by the bitset
+	 */
+	public int getAvailable(long[] into) {
+		View current = view.get();
+		int words = Math.min(into.length, current.available.length);
+		System.arraycopy(current.available, 0, into, 0, words);
+		Arrays.fill(into, words, into.length, 0L);
+		return current.servings.length;
+	}
+
+	/**
+	 * Brings the view up to date with the current stock and recipes.
+	 */
+	private void update() {
+		while (true) {
+			View current = view.get();
+			int[] stock = inventory.units();
+			Recipe[] recipes = recipeBook.recipes();
+			if (current.stock == stock && current.recipes == recipes) {
+				return;
+			}
+			if (view.compareAndSet(current, current.advance(stock, recipes))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the servings of a recipe the given stock can make.
+	 */
+	static int servings(Recipe recipe, int[] stock) {
+		if (recipe == null || "".equals(recipe.getName())) {
+			return 0;
+		}
+		int[] need = recipe.amounts();
+		int servings = UNLIMITED;
+		for (int i = 0; i < need.length; i++) {
+			if (need[i] > 0) {
+				int units = i < stock.length ? stock[i] : 0;
+				servings = Math.min(servings, units / need[i]);
+			}
+		}
+		return servings;
+	}
+
+	/**
+	 * The answers for one stock vector and one recipe array.
+	 */
+	private static final class View {
+		static final View EMPTY = new View(new int[0], new Recipe[0], new int[0], new long[0], new int[0][]);
+
+		/** The stock and recipes the answers were worked out from */
+		final int[] stock;
+		final Recipe[] recipes;
+		/** Servings of each slot */
+		final int[] servings;
+		/** Bit set for each slot with at least one serving */
+		final long[] available;
+		/** Slots that use each ingredient, indexed by ingredient id */
+		final int[][] slotsUsing;
+
+		View(int[] stock, Recipe[] recipes, int[] servings, long[] available, int[][] slotsUsing) {
+			this.stock = stock;
+			this.recipes = recipes;
+			this.servings = servings;
+			this.available = available;
+			this.slotsUsing = slotsUsing;
+		}
+
+		/**
+		 * Returns the answers for the given stock and recipes, recounting
+		 * only what either change could have affected.
+		 */
+		View advance(int[] nextStock, Recipe[] nextRecipes) {
+			int[] nextServings = Arrays.copyOf(servings, nextRecipes.length);
+			int[][] nextSlotsUsing = slotsUsing;
+			if (nextRecipes != recipes) {
+				for (int slot = 0; slot < nextRecipes.length; slot++) {
+					if (slot >= recipes.length || nextRecipes[slot] != recipes[slot]) {
+						nextServings[slot] = servings(nextRecipes[slot], nextStock);
+					}
+				}
+				nextSlotsUsing = index(nextRecipes);
+			}
+			if (nextStock != stock) {
+				int ingredients = Math.max(stock.length, nextStock.length);
+				for (int i = 0; i < ingredients && i < nextSlotsUsing.length; i++) {
+					int before = i < stock.length ? stock[i] : 0;
+					int after = i < nextStock.length ? nextStock[i] : 0;
+					if (before != after) {
+						for (int slot : nextSlotsUsing[i]) {
+							nextServings[slot] = servings(nextRecipes[slot], nextStock);
+						}
+					}
+				}
+			}
+			long[] nextAvailable = new long[(nextServings.length + 63) >>> 6];
+			for (int slot = 0; slot < nextServings.length; slot++) {
+				if (nextServings[slot] > 0) {
+					nextAvailable[slot >>> 6] |= 1L << slot;
+				}
+			}
+			return new View(nextStock, nextRecipes, nextServings, nextAvailable, nextSlotsUsing);
+		}
+
+		/**
+		 * Returns the slots that use each ingredient.
+		 */
+		private static int[][] index(Recipe[] recipes) {
+			int ingredients = 0;
+			for (Recipe recipe : recipes) {
+				if (recipe != null) {
+					ingredients = Math.max(ingredients, recipe.amounts().length);
+				}
+			}
+			int[] counts = new int[ingredients];
+			for (Recipe recipe : recipes) {
+				if (recipe != null) {
+					int[] need = recipe.amounts();
+					for (int i = 0; i < need.length; i++) {
+						if (need[i] > 0) {
+							counts[i]++;
+						}
+					}
+				}
+			}
+			int[][] slotsUsing = new int[ingredients][];
+			for (int i = 0; i < ingredients; i++) {
+				slotsUsing[i] = new int[counts[i]];
+				counts[i] = 0;
+			}
+			for (int slot = 0; slot < recipes.length; slot++) {
+				if (recipes[slot] != null) {
+					int[] need = recipes[slot].amounts();
+					for (int i = 0; i < need.length; i++) {
+						if (need[i] > 0) {
+							slotsUsing[i][counts[i]++] = slot;
+						}
+					}
+				}
+			}
+			return slotsUsing;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Combines concurrent orders for the same recipe into one inventory
+ * update.
+ *
+ * Each recipe slot has a lane.  An order pushes itself onto its
+ * lane's lock-free list and then either waits for its result or, if
+ * no other thread is doing so, becomes the combiner: it takes the
+ * whole list, removes the ingredients for all of those servings with
+ * one multiplied decrement, and hands each order its result.  Under a
+ * rush of identical orders the inventory sees one compare-and-set
+ * per batch instead of one per order, and orders stop retrying
+ * against each other.
+ */
+public class OrderCombiner {
+	/** Times a combiner goes back for orders that arrived while it worked */
+	private static final int MAX_PASSES = 4;
+
+	private final Inventory inventory;
+	/** Lane of each recipe slot; grows as slots are used */
+	private volatile Lane[] lanes = new Lane[0];
+
+	/**
+	 * Creates a combiner in front of the given inventory.
+	 * @param inventory
+	 */
+	public OrderCombiner(Inventory inventory) {
+		this.inventory = inventory;
+	}
+
+	/**
+	 * Removes the ingredients of one serving of the recipe in the
+	 * given slot, together with any other orders for that slot
+	 * arriving at the same time.
+	 * @param slot
+	 * @param r the recipe in that slot
+	 * @return true if the ingredients were removed
+	 * @throws RuntimeException thrown by the inventory update that
+	 * covered this order, such as a listener's failure
+	 */
+	public boolean useIngredients(int slot, Recipe r) {
+		Lane lane = lane(slot);
+		Order order = new Order(r);
+		lane.push(order);
+		while (order.state == Order.PENDING) {
+			if (lane.combining.compareAndSet(false, true)) {
+				try {
+					for (int pass = 0; pass < MAX_PASSES && lane.pending.get() != null; pass++) {
+						combine(lane.pending.getAndSet(null));
+					}
+				} finally {
+					lane.combining.set(false);
+				}
+			} else {
+				Thread.yield();
+			}
+		}
+		if (order.state == Order.FAILED) {
+			if (order.failure instanceof Error) {
+				throw (Error) order.failure;
+			}
+			throw (RuntimeException) order.failure;
+		}
+		return order.state == Order.MADE;
+	}
+
+	/**
+	 * Fills a list of orders, one recipe at a time.  Orders that were
+	 * placed against an older version of the recipe form their own
+	 * group.  If a group's update throws, each of its orders is failed
+	 * with the exception, to be rethrown by the thread that placed it,
+	 * and the other groups are still filled.
+	 */
+	private void combine(Order list) {
+		while (list != null) {
+			Recipe recipe = list.recipe;
+			int count = 0;
+			Order others = null;
+			Order same = null;
+			for (Order o = list; o != null; ) {
+				Order next = o.next;
+				if (o.recipe == recipe) {
+					o.next = same;
+					same = o;
+					count++;
+				} else {
+					o.next = others;
+					others = o;
+				}
+				o = next;
+			}
+			int made;
+			try {
+				made = inventory.useIngredients(recipe, count);
+			} catch (RuntimeException | Error e) {
+				for (Order o = same; o != null; ) {
+					Order next = o.next;
+					o.failure = e;
+					o.state = Order.FAILED;
+					o = next;
+				}
+				list = others;
+				continue;
+			}
+			// Regrouping reversed the newest-first list, so the earliest orders get the servings.
+			for (Order o = same; o != null; ) {
+				Order next = o.next;
+				o.state = made-- > 0 ? Order.MADE : Order.REFUSED;
+				o = next;
+			}
+			list = others;
+		}
+	}
+
+	private Lane lane(int slot) {
+		Lane[] current = lanes;
+		if (slot < current.length && current[slot] != null) {
+			return current[slot];
+		}
+		synchronized (this) {
+			current = lanes;
+			if (slot >= current.length) {
+				Lane[] grown = new Lane[Math.max(slot + 1, current.length * 2)];
+				System.arraycopy(current, 0, grown, 0, current.length);
+				current = grown;
+			} else if (current[slot] == null) {
+				current = current.clone();
+			} else {
+				return current[slot];
+			}
+			current[slot] = new Lane();
+			lanes = current;
+			return current[slot];
+		}
+	}
+
+	/**
+	 * Orders waiting for one recipe slot.
+	 */
+	private static final class Lane {
+		/** Orders not yet taken by a combiner, newest first */
+		final AtomicReference<Order> pending = new AtomicReference<Order>();
+		/** Held by the thread combining this lane's orders */
+		final AtomicBoolean combining = new AtomicBoolean();
+
+		void push(Order order) {
+			Order head;
+			do {
+				head = pending.get();
+				order.next = head;
+			} while (!pending.compareAndSet(head, order));
+		}
+	}
+
+	/**
+	 * One order and, once it has been combined, its result.
+	 */
+	private static final class Order {
+		static final int PENDING = 0;
+		static final int MADE = 1;
+		static final int REFUSED = 2;
+		static final int FAILED = 3;
+
+		final Recipe recipe;
+		Order next;
+		/** Why the order failed; written before the state is */
+		Throwable failure;
+		volatile int state;
+
+		Order(Recipe recipe) {
+			this.recipe = recipe;
+		}
+	}
+}
@@ -13,6 +13,8 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.util.Arrays;
+
 import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
 
 /**
@@ -21,10 +23,10 @@ import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
 public class Recipe {
     private String name;
     private int price;
-    private int amtCoffee;
-    private int amtMilk;
-    private int amtSugar;
-    private int amtChocolate;
+    /** Units of each ingredient, indexed by IngredientCatalog id */
+    private int[] amounts;
+    /** True once a recipe book shares the recipe with its readers */
+    private boolean frozen;
     
     /**
      * Creates a default recipe for the coffee maker.
@@ -32,100 +34,171 @@ public class Recipe {
     public Recipe() {
     	this.name = "";
     	this.price = 0;
-    	this.amtCoffee = 0;
-    	this.amtMilk = 0;
-    	this.amtSugar = 0;
-    	this.amtChocolate = 0;
+    	this.amounts = new int[IngredientCatalog.NUM_BUILT_IN];
+    }
+    
+    /**
+     * Creates a recipe from already validated amounts.
+     */
+    Recipe(String name, int price, int[] amounts) {
+    	this.name = name;
+    	this.price = price;
+    	this.amounts = Arrays.copyOf(amounts, Math.max(amounts.length, IngredientCatalog.NUM_BUILT_IN));
+    }
+    
+    /**
+     * Creates a copy of the given recipe, which can be changed even if
+     * the original belongs to a recipe book.
+     * @param other
+     */
+    public Recipe(Recipe other) {
+    	this.name = other.name;
+    	this.price = other.price;
+    	this.amounts = other.amounts.clone();
     }
     
     /**
 	 * @return   Returns the amtChocolate.
 	 */
     public int getAmtChocolate() {
-		return amtChocolate;
+		return getAmount(IngredientCatalog.CHOCOLATE);
 	}
     /**
 	 * @param amtChocolate   The amtChocolate to set.
 	 */
     public void setAmtChocolate(String chocolate) throws RecipeException {
-    	int amtChocolate = 0;
-    	try {
-    		amtChocolate = Integer.parseInt(chocolate);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of chocolate must be a positive integer");
-    	}
-		if (amtChocolate >= 0) {
-			this.amtChocolate = amtChocolate;
-		} else {
-			throw new RecipeException("Units of chocolate must be a positive integer");
-		}
+    	setAmount(IngredientCatalog.CHOCOLATE, chocolate);
+	}
+    /**
+	 * @param chocolate   The amtChocolate to set.
+	 */
+    public void setAmtChocolate(int chocolate) throws RecipeException {
+    	setAmount(IngredientCatalog.CHOCOLATE, chocolate);
 	}
     /**
 	 * @return   Returns the amtCoffee.
 	 */
     public int getAmtCoffee() {
-		return amtCoffee;
+		return getAmount(IngredientCatalog.COFFEE);
 	}
     /**
 	 * @param amtCoffee   The amtCoffee to set.
 	 */
     public void setAmtCoffee(String coffee) throws RecipeException {
-    	int amtCoffee = 0;
-    	try {
-    		amtCoffee = Integer.parseInt(coffee);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of coffee must be a positive integer");
-    	}
-		if (amtCoffee >= 0) {
-			this.amtCoffee = amtCoffee;
-		} else {
-			throw new RecipeException("Units of coffee must be a positive integer");
-		}
+    	setAmount(IngredientCatalog.COFFEE, coffee);
+	}
+    /**
+	 * @param coffee   The amtCoffee to set.
+	 */
+    public void setAmtCoffee(int coffee) throws RecipeException {
+    	setAmount(IngredientCatalog.COFFEE, coffee);
 	}
     /**
 	 * @return   Returns the amtMilk.
 	 */
     public int getAmtMilk() {
-		return amtMilk;
+		return getAmount(IngredientCatalog.MILK);
 	}
     /**
 	 * @param amtMilk   The amtMilk to set.
 	 */
     public void setAmtMilk(String milk) throws RecipeException{
-    	int amtMilk = 0;
-    	try {
-    		amtMilk = Integer.parseInt(milk);
-    	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of milk must be a positive integer");
-    	}
-		if (amtMilk >= 0) {
-			this.amtMilk = amtMilk;
-		} else {
-			throw new RecipeException("Units of milk must be a positive integer");
-		}
+    	setAmount(IngredientCatalog.MILK, milk);
+	}
+    /**
+	 * @param milk   The amtMilk to set.
+	 */
+    public void setAmtMilk(int milk) throws RecipeException {
+    	setAmount(IngredientCatalog.MILK, milk);
 	}
     /**
 	 * @return   Returns the amtSugar.
 	 */
     public int getAmtSugar() {
-		return amtSugar;
+		return getAmount(IngredientCatalog.SUGAR);
 	}
     /**
 	 * @param amtSugar   The amtSugar to set.
 	 */
     public void setAmtSugar(String sugar) throws RecipeException {
-    	int amtSugar = 0;
+    	setAmount(IngredientCatalog.SUGAR, sugar);
+	}
+    /**
+	 * @param sugar   The amtSugar to set.
+	 */
+    public void setAmtSugar(int sugar) throws RecipeException {
+    	setAmount(IngredientCatalog.SUGAR, sugar);
+	}
+    /**
+     * Returns the units of the ingredient with the given catalog id.
+     * @param ingredient
+     * @return int
+     */
+    public int getAmount(int ingredient) {
+    	return ingredient < amounts.length ? amounts[ingredient] : 0;
+    }
+    /**
+     * Sets the units of the ingredient with the given catalog id.
+     * @param ingredient
+     * @param amount
+     * @throws RecipeException
+     */
+    public void setAmount(int ingredient, String amount) throws RecipeException {
+    	int units = 0;
     	try {
-    		amtSugar = Integer.parseInt(sugar);
+    		units = Integer.parseInt(amount);
     	} catch (NumberFormatException e) {
-    		throw new RecipeException("Units of sugar must be a positive integer");
+    		throw unitsException(ingredient);
     	}
-		if (amtSugar >= 0) {
-			this.amtSugar = amtSugar;
-		} else {
-			throw new RecipeException("Units of sugar must be a positive integer");
+    	setAmount(ingredient, units);
+    }
+    /**
+     * Sets the units of the ingredient with the given catalog id.
+     * @param ingredient
+     * @param amount
+     * @throws RecipeException if the amount is negative or there is no such ingredient
+     */
+    public void setAmount(int ingredient, int amount) throws RecipeException {
+		checkNotFrozen();
+		if (!IngredientCatalog.isRegistered(ingredient)) {
+			throw new RecipeException("There is no ingredient " + ingredient);
 		}
-	}
+		if (amount < 0) {
+			throw unitsException(ingredient);
+		}
+		if (ingredient >= amounts.length) {
+			amounts = Arrays.copyOf(amounts, ingredient + 1);
+		}
+		amounts[ingredient] = amount;
+    }
+    
+    /**
+     * Makes the recipe refuse every change, before a recipe book
+     * publishes it.
+     * @return this recipe
+     */
+    Recipe freeze() {
+    	frozen = true;
+    	return this;
+    }
+    
+    private void checkNotFrozen() {
+    	if (frozen) {
+    		throw new UnsupportedOperationException("Recipe " + name + " belongs to a recipe book; change a copy");
+    	}
+    }
+    
+    private static RecipeException unitsException(int ingredient) {
+    	return new RecipeException("Units of " + IngredientCatalog.describe(ingredient).toLowerCase()
+    			+ " must be a positive integer");
+    }
+    /**
+     * Returns the amount vector itself, for the inventory's checks.
+     * It must not be modified.
+     */
+    int[] amounts() {
+    	return amounts;
+    }
     /**
 	 * @return   Returns the name.
 	 */
@@ -136,6 +209,7 @@ public class Recipe {
 	 * @param name   The name to set.
 	 */
     public void setName(String name) {
+    	checkNotFrozen();
     	if(name != null) {
     		this.name = name;
     	}
@@ -156,12 +230,19 @@ public class Recipe {
     	} catch (NumberFormatException e) {
     		throw new RecipeException("Price must be a positive integer");
     	}
-		if (amtPrice >= 0) {
-			this.price = amtPrice;
+    	setPrice(amtPrice);
+	}
+    /**
+	 * @param price   The price to set.
+	 */
+    public void setPrice(int price) throws RecipeException {
+		checkNotFrozen();
+		if (price >= 0) {
+			this.price = price;
 		} else {
 			throw new RecipeException("Price must be a positive integer");
 		}
-	} 
+	}
     
     /**
      * Returns the name of the recipe.
@@ -13,52 +13,159 @@
  */
 package edu.ncsu.csc326.coffeemaker;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The recipes of a coffee maker.
+ *
+ * The book is published as an immutable, versioned Snapshot.  Readers 
+ * such as makeCoffee take the current snapshot with one volatile read 
+ * and never wait; add, edit and delete build a new snapshot and swap it 
+ * in, so a reader sees each change completely or not at all.
+ */
 public class RecipeBook {
 	
-	/** Array of recipes in coffee maker*/
-	private Recipe [] recipeArray;
-	/** Number of recipes in coffee maker */
+	/** Initial number of recipe slots in coffee maker */
 	private final int NUM_RECIPES = 4; 
+	/** The current recipes; replaced, never changed in place */
+	private volatile Snapshot snapshot;
+	/** Slots freed by deleteRecipe, reused before new slots */
+	private int [] freeSlots;
+	/** Number of entries in freeSlots */
+	private int numFreeSlots;
+	/** Number of slots that have ever held a recipe */
+	private int usedSlots;
+	/** Id given to the next recipe added */
+	private int nextId;
+	/** Listeners told about every change of the book */
+	private RecipeBookListener [] listeners = new RecipeBookListener[0];
 	
 	/**
 	 * Default constructor for a RecipeBook.
 	 */
 	public RecipeBook() {
-		recipeArray = new Recipe[NUM_RECIPES];
+		int[] recipeIds = new int[NUM_RECIPES];
+		Arrays.fill(recipeIds, -1);
+		snapshot = new Snapshot(0, new Recipe[NUM_RECIPES], recipeIds, 
+				new HashMap<String, Integer>(), new HashMap<Integer, Integer>());
+		freeSlots = new int[NUM_RECIPES];
 	}
 	
 	/**
-	 * Returns the recipe array.
-	 * @param r
+	 * Returns the current snapshot of the book.
+	 * @return Snapshot
+	 */
+	public Snapshot snapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * Returns a copy of the recipe array of the current snapshot.
+	 * Slots are in the order recipes were added; the array grows as
+	 * more recipes are added.  The recipes belong to the book and
+	 * refuse changes; edit a copy and pass it to editRecipe.
 	 * @return Recipe[]
 	 */
 	public Recipe[] getRecipes() {
-		return recipeArray;
+		return snapshot.recipes.clone();
 	}
 	
-	public boolean addRecipe(Recipe r) {
-		//Assume recipe doesn't exist in the array until 
-		//find out otherwise
-		boolean exists = false;
-		//Check that recipe doesn't already exist in array
-		for (int i = 0; i < recipeArray.length; i++ ) {
-			if (r.equals(recipeArray[i])) {
-				exists = true;
-			}
+	/**
+	 * Returns the recipe array of the current snapshot itself, which
+	 * must not be modified.
+	 */
+	Recipe[] recipes() {
+		return snapshot.recipes;
+	}
+	
+	/**
+	 * Returns the recipe with the given name, or null if there
+	 * is no such recipe.
+	 * @param name
+	 * @return Recipe
+	 */
+	public Recipe getRecipe(String name) {
+		return snapshot.getRecipe(name);
+	}
+	
+	/**
+	 * Returns the recipe with the given stable id, or null if 
+	 * there is no such recipe.
+	 * @param id
+	 * @return Recipe
+	 */
+	public Recipe getRecipeById(int id) {
+		return snapshot.getRecipeById(id);
+	}
+	
+	/**
+	 * Returns the stable id of the recipe with the given name, 
+	 * or -1 if there is no such recipe.  The id is kept across
+	 * edits and never handed out again once the recipe is deleted.
+	 * @param name
+	 * @return int
+	 */
+	public int getRecipeId(String name) {
+		return snapshot.getRecipeId(name);
+	}
+	
+	/**
+	 * Returns the number of recipes in the book.
+	 * @return int
+	 */
+	public int size() {
+		return snapshot.size();
+	}
+	
+	/**
+	 * Returns the version of the book, which goes up by one with
+	 * every change.
+	 * @return long
+	 */
+	public long getVersion() {
+		return snapshot.version;
+	}
+	
+	/**
+	 * Returns true if the recipe is added, and false if a
+	 * recipe with the same name already exists.  The book keeps
+	 * its own copy of the recipe.
+	 * @param r
+	 * @return boolean
+	 */
+	public synchronized boolean addRecipe(Recipe r) {
+		Snapshot current = snapshot;
+		if (current.slotsByName.containsKey(r.getName())) {
+			return false;
 		}
-		//Assume recipe cannot be added until find an empty
-		//spot
-		boolean added = false;
-		//Check for first empty spot in array
-		if (!exists) {
-			for (int i = 0; i < recipeArray.length && !added; i++) {
-				if (recipeArray[i] == null) {
-					recipeArray[i] = r;
-					added = true;
-				}
+		Recipe[] recipes = current.recipes;
+		int[] recipeIds = current.recipeIds;
+		int slot;
+		if (numFreeSlots > 0) {
+			slot = freeSlots[--numFreeSlots];
+		} else {
+			if (usedSlots == recipes.length) {
+				int capacity = recipes.length * 2;
+				freeSlots = Arrays.copyOf(freeSlots, capacity);
+				recipeIds = Arrays.copyOf(recipeIds, capacity);
+				Arrays.fill(recipeIds, recipes.length, capacity, -1);
+				recipes = Arrays.copyOf(recipes, capacity);
 			}
+			slot = usedSlots++;
 		}
-		return added;
+		recipes = recipes == current.recipes ? recipes.clone() : recipes;
+		recipeIds = recipeIds == current.recipeIds ? recipeIds.clone() : recipeIds;
+		Map<String, Integer> slotsByName = new HashMap<String, Integer>(current.slotsByName);
+		Map<Integer, Integer> slotsById = new HashMap<Integer, Integer>(current.slotsById);
+		int id = nextId++;
+		recipes[slot] = new Recipe(r).freeze();
+		recipeIds[slot] = id;
+		slotsByName.put(r.getName(), slot);
+		slotsById.put(id, slot);
+		publish(new Snapshot(current.version + 1, recipes, recipeIds, slotsByName, slotsById), slot);
+		return true;
 	}
 
 	/**
@@ -67,10 +174,25 @@ public class RecipeBook {
 	 * @param recipeToDelete
 	 * @return String
 	 */
-	public String deleteRecipe(int recipeToDelete) {
-		if (recipeArray[recipeToDelete] != null) {
-			String recipeName = recipeArray[recipeToDelete].getName();
-			recipeArray[recipeToDelete] = new Recipe();
+	public synchronized String deleteRecipe(int recipeToDelete) {
+		Snapshot current = snapshot;
+		if (current.recipes[recipeToDelete] != null) {
+			String recipeName = current.recipes[recipeToDelete].getName();
+			Recipe[] recipes = current.recipes.clone();
+			int[] recipeIds = current.recipeIds;
+			Map<String, Integer> slotsByName = current.slotsByName;
+			Map<Integer, Integer> slotsById = current.slotsById;
+			if (recipeIds[recipeToDelete] >= 0) {
+				slotsByName = new HashMap<String, Integer>(slotsByName);
+				slotsById = new HashMap<Integer, Integer>(slotsById);
+				slotsByName.remove(recipeName);
+				slotsById.remove(recipeIds[recipeToDelete]);
+				recipeIds = recipeIds.clone();
+				recipeIds[recipeToDelete] = -1;
+				freeSlots[numFreeSlots++] = recipeToDelete;
+			}
+			recipes[recipeToDelete] = new Recipe().freeze();
+			publish(new Snapshot(current.version + 1, recipes, recipeIds, slotsByName, slotsById), recipeToDelete);
 			return recipeName;
 		} else {
 			return null;
@@ -79,20 +201,291 @@ public class RecipeBook {
 	
 	/**
 	 * Returns the name of the recipe edited at the position specified
-	 * and null if the recipe does not exist.
+	 * and null if the recipe does not exist.  A new recipe without a 
+	 * name keeps the old name; a new name that belongs to another 
+	 * recipe is refused.
 	 * @param recipeToEdit
 	 * @param newRecipe
 	 * @return String
 	 */
-	public String editRecipe(int recipeToEdit, Recipe newRecipe) {
-		if (recipeArray[recipeToEdit] != null) {
-			String recipeName = recipeArray[recipeToEdit].getName();
-			newRecipe.setName("");
-			recipeArray[recipeToEdit] = newRecipe;
+	public synchronized String editRecipe(int recipeToEdit, Recipe newRecipe) {
+		Snapshot current = snapshot;
+		if (current.recipes[recipeToEdit] != null && current.recipeIds[recipeToEdit] >= 0) {
+			String recipeName = current.recipes[recipeToEdit].getName();
+			Recipe edited = new Recipe(newRecipe);
+			if ("".equals(edited.getName())) {
+				edited.setName(recipeName);
+			}
+			String newName = edited.getName();
+			Map<String, Integer> slotsByName = current.slotsByName;
+			if (!newName.equals(recipeName)) {
+				if (slotsByName.containsKey(newName)) {
+					return null;
+				}
+				slotsByName = new HashMap<String, Integer>(slotsByName);
+				slotsByName.remove(recipeName);
+				slotsByName.put(newName, recipeToEdit);
+			}
+			Recipe[] recipes = current.recipes.clone();
+			recipes[recipeToEdit] = edited.freeze();
+			publish(new Snapshot(current.version + 1, recipes, current.recipeIds, 
+					slotsByName, current.slotsById), recipeToEdit);
 			return recipeName;
 		} else {
 			return null;
 		}
 	}
+	
+	/**
+	 * Registers a listener to be told about every change of the book.
+	 * @param listener
+	 */
+	public synchronized void addListener(RecipeBookListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+	
+	/**
+	 * Stops telling the given listener about changes of the book.
+	 * @param listener
+	 */
+	public synchronized void removeListener(RecipeBookListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				RecipeBookListener[] next = new RecipeBookListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, next, 0, i);
+				System.arraycopy(listeners, i + 1, next, i, next.length - i);
+				listeners = next;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the id the next added recipe will get.
+	 * @return int
+	 */
+	synchronized int getNextId() {
+		return nextId;
+	}
+	
+	/**
+	 * Replaces the whole book, as when recovering saved state.  Slot i
+	 * gets recipes[i] with stable id recipeIds[i]; an id of -1 marks a
+	 * deleted slot.  New recipes get ids from nextId on.
+	 * @param recipes
+	 * @param recipeIds
+	 * @param nextId
+	 */
+	synchronized void restore(Recipe[] recipes, int[] recipeIds, int nextId) {
+		restore(recipes, recipeIds, nextId, snapshot.version + 1);
+	}
+	
+	/**
+	 * Replaces the whole book, as restore does, and gives it the
+	 * given version, as when a follower takes a leader's snapshot.
+	 * @param recipes
+	 * @param recipeIds
+	 * @param nextId
+	 * @param version
+	 */
+	synchronized void restore(Recipe[] recipes, int[] recipeIds, int nextId, long version) {
+		int capacity = NUM_RECIPES;
+		while (capacity < recipes.length) {
+			capacity *= 2;
+		}
+		Recipe[] slots = Arrays.copyOf(recipes, capacity);
+		int[] ids = Arrays.copyOf(recipeIds, capacity);
+		Arrays.fill(ids, recipes.length, capacity, -1);
+		Map<String, Integer> slotsByName = new HashMap<String, Integer>();
+		Map<Integer, Integer> slotsById = new HashMap<Integer, Integer>();
+		freeSlots = new int[capacity];
+		numFreeSlots = 0;
+		usedSlots = 0;
+		this.nextId = nextId;
+		for (int slot = 0; slot < recipes.length; slot++) {
+			if (slots[slot] == null) {
+				continue;
+			}
+			slots[slot] = new Recipe(slots[slot]).freeze();
+			usedSlots = slot + 1;
+			if (ids[slot] >= 0) {
+				slotsByName.put(slots[slot].getName(), slot);
+				slotsById.put(ids[slot], slot);
+				this.nextId = Math.max(this.nextId, ids[slot] + 1);
+			} else {
+				freeSlots[numFreeSlots++] = slot;
+			}
+		}
+		snapshot = new Snapshot(version, slots, ids, slotsByName, slotsById);
+		for (int slot = 0; slot < recipes.length; slot++) {
+			fireChanged(slot);
+		}
+	}
+	
+	/**
+	 * Sets one slot to what a leader's book holds at the given
+	 * version: recipe with stable id, or an id of -1 for a deleted
+	 * slot.  Used by followers, which make no changes of their own.
+	 * @param version
+	 * @param slot
+	 * @param recipe
+	 * @param id
+	 */
+	synchronized void replicate(long version, int slot, Recipe recipe, int id) {
+		Snapshot current = snapshot;
+		Recipe[] recipes = current.recipes;
+		int[] recipeIds = current.recipeIds;
+		if (slot >= recipes.length) {
+			int capacity = recipes.length;
+			while (capacity <= slot) {
+				capacity *= 2;
+			}
+			freeSlots = Arrays.copyOf(freeSlots, capacity);
+			recipeIds = Arrays.copyOf(recipeIds, capacity);
+			Arrays.fill(recipeIds, recipes.length, capacity, -1);
+			recipes = Arrays.copyOf(recipes, capacity);
+		} else {
+			recipes = recipes.clone();
+			recipeIds = recipeIds.clone();
+		}
+		Map<String, Integer> slotsByName = new HashMap<String, Integer>(current.slotsByName);
+		Map<Integer, Integer> slotsById = new HashMap<Integer, Integer>(current.slotsById);
+		if (recipeIds[slot] >= 0) {
+			slotsByName.remove(recipes[slot].getName());
+			slotsById.remove(recipeIds[slot]);
+		}
+		recipes[slot] = recipe == null ? null : new Recipe(recipe).freeze();
+		recipeIds[slot] = id;
+		int free = -1;
+		for (int i = 0; i < numFreeSlots; i++) {
+			if (freeSlots[i] == slot) {
+				free = i;
+			}
+		}
+		if (id >= 0) {
+			slotsByName.put(recipe.getName(), slot);
+			slotsById.put(id, slot);
+			nextId = Math.max(nextId, id + 1);
+			if (free >= 0) {
+				freeSlots[free] = freeSlots[--numFreeSlots];
+			}
+		} else if (recipe != null && free < 0) {
+			freeSlots[numFreeSlots++] = slot;
+		}
+		usedSlots = Math.max(usedSlots, slot + 1);
+		publish(new Snapshot(version, recipes, recipeIds, slotsByName, slotsById), slot);
+	}
+	
+	/**
+	 * Makes the given snapshot current and tells the listeners which
+	 * slot changed.
+	 */
+	private void publish(Snapshot next, int slot) {
+		snapshot = next;
+		fireChanged(slot);
+	}
+	
+	private void fireChanged(int slot) {
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].recipeChanged(snapshot, slot);
+		}
+	}
+	
+	/**
+	 * An immutable view of the recipe book at one version.
+	 */
+	public static final class Snapshot {
+		/** Version of the book this snapshot was taken at */
+		private final long version;
+		/** Array of recipes in coffee maker */
+		private final Recipe [] recipes;
+		/** Stable id of the recipe in each slot, or -1 if the slot is not in use */
+		private final int [] recipeIds;
+		/** Slot of each recipe, by name */
+		private final Map<String, Integer> slotsByName;
+		/** Slot of each recipe, by stable id */
+		private final Map<Integer, Integer> slotsById;
+		
+		private Snapshot(long version, Recipe[] recipes, int[] recipeIds, 
+				Map<String, Integer> slotsByName, Map<Integer, Integer> slotsById) {
+			this.version = version;
+			this.recipes = recipes;
+			this.recipeIds = recipeIds;
+			this.slotsByName = slotsByName;
+			this.slotsById = slotsById;
+		}
+		
+		/**
+		 * Returns the version of the book this snapshot was taken at.
+		 * @return long
+		 */
+		public long getVersion() {
+			return version;
+		}
+		
+		/**
+		 * Returns a copy of the recipe array.  The recipes belong to the
+		 * book and refuse changes.
+		 * @return Recipe[]
+		 */
+		public Recipe[] getRecipes() {
+			return recipes.clone();
+		}
+		
+		/**
+		 * Returns the recipe array itself, which must not be modified.
+		 */
+		Recipe[] recipes() {
+			return recipes;
+		}
+		
+		/**
+		 * Returns the recipe with the given name, or null.
+		 * @param name
+		 * @return Recipe
+		 */
+		public Recipe getRecipe(String name) {
+			Integer slot = slotsByName.get(name);
+			return slot == null ? null : recipes[slot];
+		}
+		
+		/**
+		 * Returns the recipe with the given stable id, or null.
+		 * @param id
+		 * @return Recipe
+		 */
+		public Recipe getRecipeById(int id) {
+			Integer slot = slotsById.get(id);
+			return slot == null ? null : recipes[slot];
+		}
+		
+		/**
+		 * Returns the stable id of the recipe with the given name, or -1.
+		 * @param name
+		 * @return int
+		 */
+		public int getRecipeId(String name) {
+			Integer slot = slotsByName.get(name);
+			return slot == null ? -1 : recipeIds[slot];
+		}
+		
+		/**
+		 * Returns the stable id of the recipe in the given slot, or -1.
+		 * @param slot
+		 * @return int
+		 */
+		public int getRecipeIdAt(int slot) {
+			return recipeIds[slot];
+		}
+		
+		/**
+		 * Returns the number of recipes in the snapshot.
+		 * @return int
+		 */
+		public int size() {
+			return slotsByName.size();
+		}
+	}
 
 }
@@ -0,0 +1,157 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps a recipe book in step with a RecipeBookLeader's.
+ *
+ * The follower's book takes the leader's versions, so the version
+ * says which changes it already has.  Applying a message it already
+ * has, or an older one, changes nothing; a delta that starts after
+ * the follower's version is ignored and the next poll asks again.
+ * The follower's book should not be changed any other way.
+ */
+public class RecipeBookFollower implements ReplicationEndpoint {
+	/** Highest slot a delta may name, so a bad message cannot grow the book without bound */
+	private static final int MAX_SLOT = 1 << 20;
+
+	private final RecipeBook recipeBook;
+	private final int nodeId;
+	private final int leaderId;
+	private final ReplicationTransport transport;
+
+	private RecipeBookFollower(RecipeBook recipeBook, int nodeId, int leaderId, ReplicationTransport transport) {
+		this.recipeBook = recipeBook;
+		this.nodeId = nodeId;
+		this.leaderId = leaderId;
+		this.transport = transport;
+	}
+
+	/**
+	 * Makes the given book follow the leader on the given node and
+	 * registers with the transport.
+	 * @param recipeBook
+	 * @param nodeId
+	 * @param leaderId
+	 * @param transport
+	 * @return RecipeBookFollower
+	 */
+	public static RecipeBookFollower follow(RecipeBook recipeBook, int nodeId, int leaderId,
+			ReplicationTransport transport) {
+		RecipeBookFollower follower = new RecipeBookFollower(recipeBook, nodeId, leaderId, transport);
+		transport.register(nodeId, follower);
+		return follower;
+	}
+
+	/**
+	 * Returns the version of the leader's book this follower has.
+	 * @return long
+	 */
+	public long getVersion() {
+		return recipeBook.getVersion();
+	}
+
+	/**
+	 * Asks the leader for the changes since this follower's version.
+	 * @return true if the request was delivered
+	 */
+	public boolean poll() {
+		ByteBuffer request = ByteBuffer.allocate(1 + 10);
+		request.put(RecipeBookLeader.REQUEST);
+		WireFormat.putVarLong(request, getVersion());
+		request.flip();
+		return transport.send(nodeId, leaderId, request);
+	}
+
+	@Override
+	public void receive(int from, ByteBuffer message) {
+		if (from != leaderId) {
+			throw new IllegalArgumentException("Message from node " + from + ", which is not the leader");
+		}
+		apply(message);
+	}
+
+	/**
+	 * Applies a delta or snapshot built by a leader.
+	 * @param message
+	 * @return true if the book changed
+	 * @throws IllegalArgumentException if the message is malformed
+	 */
+	public boolean apply(ByteBuffer message) {
+		try {
+			byte type = message.get();
+			if (type == RecipeBookLeader.DELTA) {
+				return applyDelta(message);
+			} else if (type == RecipeBookLeader.SNAPSHOT) {
+				return applySnapshot(message);
+			}
+			throw new IllegalArgumentException("Unknown message type " + type);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated message");
+		}
+	}
+
+	private boolean applyDelta(ByteBuffer message) {
+		long version = WireFormat.getVarLong(message);
+		long count = WireFormat.getVarLong(message);
+		synchronized (recipeBook) {
+			long current = recipeBook.getVersion();
+			if (version > current) {
+				return false;
+			}
+			boolean changed = false;
+			for (long i = 0; i < count; i++) {
+				version += WireFormat.getVarLong(message);
+				long slot = WireFormat.getVarLong(message);
+				int id = recipeId(message);
+				Recipe recipe = WireFormat.getRecipe(message);
+				if (slot < 0 || slot > MAX_SLOT) {
+					throw new IllegalArgumentException("Bad slot " + slot);
+				}
+				if (id >= 0 && recipe == null) {
+					throw new IllegalArgumentException("Recipe id " + id + " has no recipe");
+				}
+				if (version > current) {
+					recipeBook.replicate(version, (int) slot, recipe, id);
+					changed = true;
+				}
+			}
+			return changed;
+		}
+	}
+
+	/**
+	 * Reads a recipe id sent as id + 1, so -1 for none.
+	 * @throws IllegalArgumentException if it does not fit in an int
+	 */
+	private static int recipeId(ByteBuffer message) {
+		long sent = WireFormat.getVarLong(message);
+		if (sent < 0 || sent > Integer.MAX_VALUE + 1L) {
+			throw new IllegalArgumentException("Recipe id does not fit in an int");
+		}
+		return (int) (sent - 1);
+	}
+
+	private boolean applySnapshot(ByteBuffer message) {
+		long version = WireFormat.getVarLong(message);
+		int nextId = (int) WireFormat.getVarLong(message);
+		int length = (int) WireFormat.getVarLong(message);
+		if (length < 0 || length > message.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		Recipe[] recipes = new Recipe[length];
+		int[] ids = new int[length];
+		for (int slot = 0; slot < length; slot++) {
+			ids[slot] = recipeId(message);
+			recipes[slot] = WireFormat.getRecipe(message);
+		}
+		synchronized (recipeBook) {
+			if (version <= recipeBook.getVersion()) {
+				return false;
+			}
+			recipeBook.restore(recipes, ids, nextId, version);
+			return true;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ships the changes of a recipe book to follower machines.
+ *
+ * Every change of the book has a version one higher than the last.
+ * The leader keeps the most recent changes in a fixed-size log, and
+ * answers a follower at version N with just the slots changed after
+ * N.  A follower so far behind that the log no longer reaches back to
+ * its version is sent a snapshot of the whole book instead.
+ *
+ * Messages start with a type byte; numbers are varints.
+ * <pre>
+ * REQUEST   version
+ * DELTA     base-version count (version-step slot id+1 recipe)*
+ * SNAPSHOT  version next-id slots (id+1 recipe)*
+ * </pre>
+ * Each delta entry's version is given as the step from the one
+ * before, starting from the base, and an id of -1 marks a deleted
+ * slot.
+ */
+public class RecipeBookLeader implements ReplicationEndpoint {
+	/** Message types */
+	static final byte REQUEST = 1;
+	static final byte DELTA = 2;
+	static final byte SNAPSHOT = 3;
+
+	/** Default number of changes kept for deltas */
+	public static final int DEFAULT_LOG_CAPACITY = 1024;
+
+	private final RecipeBook recipeBook;
+	private final int nodeId;
+	private final ReplicationTransport transport;
+
+	/** Ring of recent changes; entry i of the ring is change first + i */
+	private final long[] versions;
+	private final int[] slots;
+	private final int[] ids;
+	private final Recipe[] recipes;
+	private long first;
+	private long count;
+	/** Deltas can be built for followers at this version or later */
+	private long oldestBase;
+
+	/** Last version each follower is known to have */
+	private final Map<Integer, Long> followers = new ConcurrentHashMap<Integer, Long>();
+
+	private final RecipeBookListener listener = this::record;
+
+	private RecipeBookLeader(RecipeBook recipeBook, int nodeId, ReplicationTransport transport, int logCapacity) {
+		if (logCapacity <= 0) {
+			throw new IllegalArgumentException("The log must hold at least one change");
+		}
+		this.recipeBook = recipeBook;
+		this.nodeId = nodeId;
+		this.transport = transport;
+		this.versions = new long[logCapacity];
+		this.slots = new int[logCapacity];
+		this.ids = new int[logCapacity];
+		this.recipes = new Recipe[logCapacity];
+	}
+
+	/**
+	 * Starts logging the changes of the given book, with the default
+	 * log size, and registers with the transport.
+	 * @see #lead(RecipeBook, int, ReplicationTransport, int)
+	 */
+	public static RecipeBookLeader lead(RecipeBook recipeBook, int nodeId, ReplicationTransport transport) {
+		return lead(recipeBook, nodeId, transport, DEFAULT_LOG_CAPACITY);
+	}
+
+	/**
+	 * Starts logging the changes of the given book and registers with
+	 * the transport to answer followers.
+	 * @param recipeBook
+	 * @param nodeId
+	 * @param transport
+	 * @param logCapacity changes kept for deltas
+	 * @return RecipeBookLeader
+	 */
+	public static RecipeBookLeader lead(RecipeBook recipeBook, int nodeId, ReplicationTransport transport,
+			int logCapacity) {
+		RecipeBookLeader leader = new RecipeBookLeader(recipeBook, nodeId, transport, logCapacity);
+		synchronized (recipeBook) {
+			leader.oldestBase = recipeBook.getVersion();
+			recipeBook.addListener(leader.listener);
+		}
+		transport.register(nodeId, leader);
+		return leader;
+	}
+
+	/**
+	 * Stops logging changes of the book.
+	 */
+	public void close() {
+		recipeBook.removeListener(listener);
+	}
+
+	/**
+	 * Returns the message that brings a follower at the given version
+	 * up to date: a delta if the log reaches back that far, otherwise
+	 * a snapshot.
+	 * @param version
+	 * @return ByteBuffer ready to be read
+	 */
+	public ByteBuffer changesSince(long version) {
+		return changesSince(version, new long[1]);
+	}
+
+	/**
+	 * Builds the message for a follower at the given version and sets
+	 * reaches[0] to the version the follower will be at after it.
+	 */
+	private ByteBuffer changesSince(long version, long[] reaches) {
+		synchronized (this) {
+			if (version >= oldestBase) {
+				return delta(version, reaches);
+			}
+		}
+		// Built outside the log's lock: the book takes its own lock first when recording.
+		return snapshot(reaches);
+	}
+
+	private ByteBuffer delta(long version, long[] reaches) {
+		int bytes = 1 + WireFormat.varLongBytes(version) + 10;
+		long start = first + count;
+		while (start > first && versions[index(start - 1)] > version) {
+			start--;
+		}
+		for (long i = start; i < first + count; i++) {
+			int at = index(i);
+			bytes += 10 + WireFormat.varLongBytes(slots[at]) + WireFormat.varLongBytes(ids[at] + 1L)
+					+ WireFormat.recipeBytes(recipes[at]);
+		}
+		ByteBuffer message = ByteBuffer.allocate(bytes);
+		message.put(DELTA);
+		WireFormat.putVarLong(message, version);
+		WireFormat.putVarLong(message, first + count - start);
+		long previous = version;
+		for (long i = start; i < first + count; i++) {
+			int at = index(i);
+			WireFormat.putVarLong(message, versions[at] - previous);
+			WireFormat.putVarLong(message, slots[at]);
+			WireFormat.putVarLong(message, ids[at] + 1L);
+			WireFormat.putRecipe(message, recipes[at]);
+			previous = versions[at];
+		}
+		reaches[0] = previous;
+		message.flip();
+		return message;
+	}
+
+	/**
+	 * Sends every follower that has asked for changes what it has not
+	 * been sent yet.
+	 * @return the number of followers reached
+	 */
+	public int push() {
+		int reached = 0;
+		long version = recipeBook.getVersion();
+		for (Map.Entry<Integer, Long> follower : followers.entrySet()) {
+			if (follower.getValue() < version && send(follower.getKey(), follower.getValue())) {
+				reached++;
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Answers a follower's request for the changes since its version.
+	 * @throws IllegalArgumentException if the message is not a request
+	 */
+	@Override
+	public void receive(int from, ByteBuffer message) {
+		long version;
+		try {
+			if (message.get() != REQUEST) {
+				throw new IllegalArgumentException("Leader only takes requests");
+			}
+			version = WireFormat.getVarLong(message);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated message from node " + from);
+		}
+		send(from, version);
+	}
+
+	private boolean send(int follower, long version) {
+		long[] reaches = new long[1];
+		ByteBuffer message = changesSince(version, reaches);
+		boolean sent = transport.send(nodeId, follower, message);
+		followers.put(follower, sent ? reaches[0] : version);
+		return sent;
+	}
+
+	private ByteBuffer snapshot(long[] reaches) {
+		RecipeBook.Snapshot snapshot = recipeBook.snapshot();
+		Recipe[] book = snapshot.recipes();
+		int bytes = 1 + 10 + 10 + 10;
+		for (int slot = 0; slot < book.length; slot++) {
+			bytes += 10 + WireFormat.recipeBytes(book[slot]);
+		}
+		ByteBuffer message = ByteBuffer.allocate(bytes);
+		message.put(SNAPSHOT);
+		WireFormat.putVarLong(message, snapshot.getVersion());
+		reaches[0] = snapshot.getVersion();
+		int nextId = 0;
+		for (int slot = 0; slot < book.length; slot++) {
+			nextId = Math.max(nextId, snapshot.getRecipeIdAt(slot) + 1);
+		}
+		WireFormat.putVarLong(message, nextId);
+		WireFormat.putVarLong(message, book.length);
+		for (int slot = 0; slot < book.length; slot++) {
+			WireFormat.putVarLong(message, snapshot.getRecipeIdAt(slot) + 1L);
+			WireFormat.putRecipe(message, book[slot]);
+		}
+		message.flip();
+		return message;
+	}
+
+	/**
+	 * Adds one change to the log, dropping the oldest if it is full.
+	 * Called by the book with its lock held, so changes arrive in order.
+	 */
+	private synchronized void record(RecipeBook.Snapshot snapshot, int slot) {
+		if (count == versions.length) {
+			// Followers at the dropped change's version still need it, so they get snapshots.
+			oldestBase = Math.max(oldestBase, versions[index(first)]);
+			first++;
+			count--;
+		}
+		int at = index(first + count);
+		versions[at] = snapshot.getVersion();
+		slots[at] = slot;
+		ids[at] = snapshot.getRecipeIdAt(slot);
+		recipes[at] = snapshot.recipes()[slot];
+		count++;
+	}
+
+	private int index(long change) {
+		return (int) (change % versions.length);
+	}
+}
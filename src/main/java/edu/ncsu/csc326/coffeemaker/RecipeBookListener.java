@@ -0,0 +1,18 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Told about every change of a recipe book.
+ *
+ * Listeners are called while the book still holds its write lock,
+ * so they see changes one at a time and in order.  They should
+ * return quickly.
+ */
+public interface RecipeBookListener {
+
+	/**
+	 * Called after one slot of the book changed.
+	 * @param snapshot the book as it is after the change
+	 * @param slot the slot that was added, edited or deleted
+	 */
+	void recipeChanged(RecipeBook.Snapshot snapshot, int slot);
+}
@@ -0,0 +1,289 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.function.LongSupplier;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * One node's copy of an inventory shared by several kiosks that
+ * draw from the same hopper and may lose touch with each other.
+ *
+ * Each ingredient is a PN-counter: every node counts the units it
+ * has restocked and the units it has sold, and the stock is the sum
+ * of all restocks less the sum of all sales.  A node only ever raises
+ * its own two counters, so it takes sales and restocks without asking
+ * anyone, and merging a peer's counters is taking the larger value of
+ * each, which can be repeated and reordered freely.
+ *
+ * sync sends each peer only the counters that changed since that
+ * peer last took a message, as varint-encoded (counter, value) pairs,
+ * and also serves as a heartbeat.  Counters learned from one peer are
+ * passed on to the others, so nodes that never meet still converge.
+ *
+ * A node sells against the stock it has heard of, so two nodes that
+ * cannot reach each other can sell the same units.  Such an oversell
+ * shows up as negative stock once their counters meet.  To bound it,
+ * a node can be given a maximum staleness: once it has not heard from
+ * some peer for longer than that, it refuses sales until it has.
+ */
+public class ReplicatedInventory implements ReplicationEndpoint {
+	/** Counter kinds, the low bit of a counter's key */
+	private static final int RESTOCKED = 0;
+	private static final int SOLD = 1;
+
+	private final int nodeId;
+	private final int numNodes;
+	/** Ingredients replicated */
+	private final int width;
+	private final ReplicationTransport transport;
+	private final LongSupplier clock;
+
+	/** Counters by key: ((node * width + ingredient) << 1) | kind */
+	private final long[] counters;
+	/** Current stock of each ingredient, as this node knows it */
+	private final long[] stock;
+	/** Counters each peer has not been sent since they last changed */
+	private final BitSet[] unsent;
+	/** When a message from each peer last arrived */
+	private final long[] lastHeard;
+	/** Milliseconds without hearing from a peer after which sales stop */
+	private volatile long maxStalenessMillis = Long.MAX_VALUE;
+
+	private ReplicatedInventory(int nodeId, int numNodes, ReplicationTransport transport, LongSupplier clock) {
+		if (nodeId < 0 || nodeId >= numNodes) {
+			throw new IllegalArgumentException("Node " + nodeId + " is not one of " + numNodes);
+		}
+		this.nodeId = nodeId;
+		this.numNodes = numNodes;
+		this.width = IngredientCatalog.size();
+		this.transport = transport;
+		this.clock = clock;
+		this.counters = new long[numNodes * width * 2];
+		this.stock = new long[width];
+		this.unsent = new BitSet[numNodes];
+		this.lastHeard = new long[numNodes];
+		long now = clock.getAsLong();
+		for (int node = 0; node < numNodes; node++) {
+			unsent[node] = new BitSet(counters.length);
+			lastHeard[node] = now;
+		}
+	}
+
+	/**
+	 * Creates the replica for one node, empty, and registers it with
+	 * the transport.  Every node of a group must be created with the
+	 * same number of nodes and the same ingredients registered.
+	 * @param nodeId
+	 * @param numNodes
+	 * @param transport
+	 * @return ReplicatedInventory
+	 */
+	public static ReplicatedInventory join(int nodeId, int numNodes, ReplicationTransport transport) {
+		return join(nodeId, numNodes, transport, System::currentTimeMillis);
+	}
+
+	static ReplicatedInventory join(int nodeId, int numNodes, ReplicationTransport transport, LongSupplier clock) {
+		ReplicatedInventory replica = new ReplicatedInventory(nodeId, numNodes, transport, clock);
+		transport.register(nodeId, replica);
+		return replica;
+	}
+
+	/**
+	 * Returns the units of an ingredient as this node knows them.
+	 * The result is negative if the group has oversold it.
+	 * @param ingredient
+	 * @return long
+	 */
+	public synchronized long getAmount(int ingredient) {
+		return ingredient < width ? stock[ingredient] : 0;
+	}
+
+	/**
+	 * Returns the units of an ingredient the group is known to have
+	 * sold beyond its stock.
+	 * @param ingredient
+	 * @return long
+	 */
+	public synchronized long getOversold(int ingredient) {
+		return ingredient < width ? Math.max(0, -stock[ingredient]) : 0;
+	}
+
+	/**
+	 * Adds a delivery, indexed by IngredientCatalog id, to this node's
+	 * restock counters.  Nothing is added if any amount is negative or
+	 * for an ingredient not in the catalog.
+	 * @param delivery
+	 * @throws InventoryException
+	 */
+	public synchronized void restock(int[] delivery) throws InventoryException {
+		Inventory.checkDelivery(delivery);
+		for (int i = width; i < delivery.length; i++) {
+			if (delivery[i] > 0) {
+				throw new IllegalArgumentException(IngredientCatalog.nameOf(i) + " is not replicated");
+			}
+		}
+		for (int i = 0; i < delivery.length; i++) {
+			if (delivery[i] > 0) {
+				raise(key(nodeId, i, RESTOCKED), delivery[i], nodeId);
+			}
+		}
+	}
+
+	/**
+	 * Takes the ingredients of one serving if the stock this node knows
+	 * of holds them and no peer has been silent for too long.
+	 * @param r
+	 * @return true if the ingredients were taken
+	 */
+	public synchronized boolean useIngredients(Recipe r) {
+		if (isStale()) {
+			return false;
+		}
+		int[] need = r.amounts();
+		for (int i = 0; i < need.length; i++) {
+			if (need[i] > 0 && (i >= width || stock[i] < need[i])) {
+				return false;
+			}
+		}
+		for (int i = 0; i < need.length; i++) {
+			if (need[i] > 0) {
+				raise(key(nodeId, i, SOLD), need[i], nodeId);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets how long this node keeps selling without hearing from every
+	 * peer.  Oversells are then limited to what the nodes sell in that
+	 * time.
+	 * @param millis
+	 */
+	public void setMaxStaleness(long millis) {
+		maxStalenessMillis = millis;
+	}
+
+	/**
+	 * Returns the milliseconds since the peer heard from least recently
+	 * was last heard from.
+	 * @return long
+	 */
+	public synchronized long getStaleness() {
+		long oldest = Long.MAX_VALUE;
+		for (int node = 0; node < numNodes; node++) {
+			if (node != nodeId) {
+				oldest = Math.min(oldest, lastHeard[node]);
+			}
+		}
+		return oldest == Long.MAX_VALUE ? 0 : clock.getAsLong() - oldest;
+	}
+
+	/**
+	 * Returns true if some peer has been silent for longer than the
+	 * maximum staleness.
+	 * @return boolean
+	 */
+	public boolean isStale() {
+		return getStaleness() > maxStalenessMillis;
+	}
+
+	/**
+	 * Sends each reachable peer the counters it has not been sent yet,
+	 * or an empty message as a heartbeat.  Counters a peer could not
+	 * be sent stay queued for it.
+	 * @return the number of peers reached
+	 */
+	public int sync() {
+		int reached = 0;
+		for (int peer = 0; peer < numNodes; peer++) {
+			if (peer == nodeId) {
+				continue;
+			}
+			BitSet sending;
+			ByteBuffer message;
+			synchronized (this) {
+				sending = unsent[peer];
+				unsent[peer] = new BitSet(counters.length);
+				message = encode(sending);
+			}
+			if (transport.send(nodeId, peer, message)) {
+				reached++;
+			} else {
+				synchronized (this) {
+					unsent[peer].or(sending);
+				}
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Merges counters sent by a peer.
+	 * @throws IllegalArgumentException if the message is malformed
+	 */
+	@Override
+	public synchronized void receive(int from, ByteBuffer message) {
+		if (from < 0 || from >= numNodes || from == nodeId) {
+			throw new IllegalArgumentException("Message from unknown node " + from);
+		}
+		try {
+			long count = WireFormat.getVarLong(message);
+			for (long i = 0; i < count; i++) {
+				long key = WireFormat.getVarLong(message);
+				long value = WireFormat.getVarLong(message);
+				if (key < 0 || key >= counters.length || value < 0) {
+					throw new IllegalArgumentException("Bad counter " + key);
+				}
+				if (value > counters[(int) key]) {
+					raise((int) key, value - counters[(int) key], from);
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated message from node " + from);
+		}
+		lastHeard[from] = clock.getAsLong();
+	}
+
+	private int key(int node, int ingredient, int kind) {
+		return ((node * width + ingredient) << 1) | kind;
+	}
+
+	/**
+	 * Raises one counter and queues it for every peer that does not
+	 * have the new value already: not the node it came from, and not
+	 * the node that owns it.
+	 */
+	private void raise(int key, long by, int source) {
+		counters[key] += by;
+		int ingredient = (key >> 1) % width;
+		stock[ingredient] += (key & 1) == SOLD ? -by : by;
+		int owner = (key >> 1) / width;
+		for (int peer = 0; peer < numNodes; peer++) {
+			if (peer != nodeId && peer != source && peer != owner) {
+				unsent[peer].set(key);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the given counters as a count followed by key and value
+	 * pairs.
+	 */
+	private ByteBuffer encode(BitSet keys) {
+		int bytes = WireFormat.varLongBytes(keys.cardinality());
+		for (int key = keys.nextSetBit(0); key >= 0; key = keys.nextSetBit(key + 1)) {
+			bytes += WireFormat.varLongBytes(key) + WireFormat.varLongBytes(counters[key]);
+		}
+		ByteBuffer message = ByteBuffer.allocate(bytes);
+		WireFormat.putVarLong(message, keys.cardinality());
+		for (int key = keys.nextSetBit(0); key >= 0; key = keys.nextSetBit(key + 1)) {
+			WireFormat.putVarLong(message, key);
+			WireFormat.putVarLong(message, counters[key]);
+		}
+		message.flip();
+		return message;
+	}
+}
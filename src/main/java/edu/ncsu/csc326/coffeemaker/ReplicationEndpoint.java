@@ -0,0 +1,17 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A replica that takes messages from its peers.
+ */
+public interface ReplicationEndpoint {
+
+	/**
+	 * Called with one message sent by a peer.  The buffer holds
+	 * exactly the message and is only valid during the call.
+	 * @param from node id of the sender
+	 * @param message
+	 */
+	void receive(int from, ByteBuffer message);
+}
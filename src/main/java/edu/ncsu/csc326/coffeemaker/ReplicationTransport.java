@@ -0,0 +1,29 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Carries replication messages between nodes, which are numbered
+ * from 0.  A transport may drop messages, for example while a node
+ * is offline; replicas resend what a peer has not acknowledged by
+ * taking the message.
+ */
+public interface ReplicationTransport {
+
+	/**
+	 * Makes the given endpoint the receiver of messages for a node.
+	 * @param node
+	 * @param endpoint
+	 */
+	void register(int node, ReplicationEndpoint endpoint);
+
+	/**
+	 * Sends a message from one node to another.  The message is the
+	 * buffer's remaining bytes, which the transport does not keep.
+	 * @param from
+	 * @param to
+	 * @param message
+	 * @return true if the message was delivered, false if it was dropped
+	 */
+	boolean send(int from, int to, ByteBuffer message);
+}
@@ -0,0 +1,84 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingredients held back from an inventory for one recipe while
+ * the purchase is being paid for.
+ *
+ * A reservation starts out pending.  It is settled exactly once,
+ * either by Inventory.commit, which keeps the ingredients taken,
+ * or by Inventory.abort or its timeout, which puts them back.
+ */
+public final class Reservation {
+	/** The reservation is holding ingredients */
+	static final int PENDING = 0;
+	/** The ingredients were used for the purchase */
+	static final int COMMITTED = 1;
+	/** The ingredients went back into the inventory */
+	static final int RELEASED = 2;
+
+	/** Inventory the ingredients were taken from */
+	private final Inventory inventory;
+	/** Recipe the ingredients are held for */
+	private final Recipe recipe;
+	/** Time, in milliseconds, after which the reservation is released */
+	private final long deadline;
+	/** One of PENDING, COMMITTED or RELEASED */
+	private final AtomicInteger state = new AtomicInteger(PENDING);
+	/** Recipe slot and stable id, if reserved through a coffee maker, or -1 */
+	int slot = -1;
+	int recipeId = -1;
+
+	Reservation(Inventory inventory, Recipe recipe, long deadline) {
+		this.inventory = inventory;
+		this.recipe = recipe;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the recipe the ingredients are held for.
+	 * @return Recipe
+	 */
+	public Recipe getRecipe() {
+		return recipe;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, after which an unconfirmed
+	 * reservation is released.
+	 * @return long
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Returns true if the reservation is still holding ingredients.
+	 * @return boolean
+	 */
+	public boolean isPending() {
+		return state.get() == PENDING;
+	}
+
+	/**
+	 * Returns true if the ingredients were used for the purchase.
+	 * @return boolean
+	 */
+	public boolean isCommitted() {
+		return state.get() == COMMITTED;
+	}
+
+	Inventory getInventory() {
+		return inventory;
+	}
+
+	/**
+	 * Moves a pending reservation to the given state.
+	 * @param settled
+	 * @return true if this call settled the reservation
+	 */
+	boolean settle(int settled) {
+		return state.compareAndSet(PENDING, settled);
+	}
+}
@@ -0,0 +1,157 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timer wheel that releases reservations nobody confirmed
+ * in time.
+ *
+ * Each bucket covers one tick and holds a lock-free list of the
+ * reservations due in that tick (or a whole number of turns of the
+ * wheel later).  Advancing the wheel only visits the buckets for the
+ * ticks that passed, so the cost of a tick does not grow with the
+ * number of reservations outstanding.
+ */
+public class ReservationWheel {
+	/** Milliseconds covered by one tick of the shared wheel */
+	private static final long SHARED_TICK_MILLIS = 10;
+	/** Number of buckets of the shared wheel */
+	private static final int SHARED_BUCKETS = 512;
+
+	private static final Logger LOG = Logger.getLogger(ReservationWheel.class.getName());
+
+	/** Milliseconds covered by one bucket */
+	private final long tickMillis;
+	/** Number of buckets minus one; the bucket count is a power of two */
+	private final int mask;
+	/** Head of the list of reservations in each bucket */
+	private final AtomicReferenceArray<Node> buckets;
+	/** Last tick whose bucket has been processed */
+	private volatile long currentTick;
+
+	/**
+	 * Creates a wheel that is advanced by calling advanceTo.
+	 * @param tickMillis milliseconds covered by one bucket
+	 * @param numBuckets number of buckets, rounded up to a power of two
+	 */
+	public ReservationWheel(long tickMillis, int numBuckets) {
+		if (tickMillis <= 0 || numBuckets <= 0) {
+			throw new IllegalArgumentException("Tick and bucket count must be positive");
+		}
+		int size = Integer.highestOneBit(numBuckets);
+		if (size < numBuckets) {
+			size <<= 1;
+		}
+		this.tickMillis = tickMillis;
+		this.mask = size - 1;
+		this.buckets = new AtomicReferenceArray<Node>(size);
+		this.currentTick = System.currentTimeMillis() / tickMillis;
+	}
+
+	/**
+	 * Returns the wheel used by inventories that are not given one.
+	 * It is advanced by a single daemon thread.
+	 * @return ReservationWheel
+	 */
+	public static ReservationWheel shared() {
+		return SharedWheel.INSTANCE;
+	}
+
+	/**
+	 * Adds a reservation to be released at its deadline unless it
+	 * is settled first.
+	 * @param reservation
+	 */
+	public void schedule(Reservation reservation) {
+		long tick = Math.max(reservation.getDeadline() / tickMillis, currentTick + 1);
+		int bucket = (int) (tick & mask);
+		Node node = new Node(reservation);
+		Node head;
+		do {
+			head = buckets.get(bucket);
+			node.next = head;
+		} while (!buckets.compareAndSet(bucket, head, node));
+	}
+
+	/**
+	 * Processes every tick up to the given time, releasing the
+	 * reservations that are due and still pending.  Only one thread
+	 * should advance a wheel.
+	 * @param nowMillis
+	 */
+	public void advanceTo(long nowMillis) {
+		long targetTick = nowMillis / tickMillis;
+		long tick = currentTick;
+		// After a long pause, one turn of the wheel visits every bucket.
+		long firstTick = Math.max(tick + 1, targetTick - mask);
+		for (long t = firstTick; t <= targetTick; t++) {
+			// Move on first, so anything put back lands in a later tick.
+			currentTick = t;
+			expire((int) (t & mask), nowMillis);
+		}
+	}
+
+	/**
+	 * Starts a daemon thread that advances this wheel once per tick.
+	 */
+	public void start() {
+		ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "reservation-wheel");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleAtFixedRate(() -> advanceTo(System.currentTimeMillis()),
+				tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Takes the whole list of one bucket, releases what is due and
+	 * puts back what belongs to a later turn of the wheel.  A release
+	 * that throws, say from an inventory listener, is logged and the
+	 * rest of the bucket is still processed; the reservation was
+	 * settled before the listeners ran, so it is not retried.
+	 */
+	private void expire(int bucket, long nowMillis) {
+		Node node = buckets.getAndSet(bucket, null);
+		while (node != null) {
+			Node next = node.next;
+			Reservation reservation = node.reservation;
+			if (reservation.isPending()) {
+				if (reservation.getDeadline() <= nowMillis) {
+					try {
+						reservation.getInventory().abort(reservation);
+					} catch (RuntimeException e) {
+						LOG.log(Level.WARNING, "Releasing an expired reservation failed", e);
+					}
+				} else {
+					schedule(reservation);
+				}
+			}
+			node = next;
+		}
+	}
+
+	/** Entry in a bucket list */
+	private static final class Node {
+		final Reservation reservation;
+		Node next;
+
+		Node(Reservation reservation) {
+			this.reservation = reservation;
+		}
+	}
+
+	/** Holder for the lazily started shared wheel */
+	private static final class SharedWheel {
+		static final ReservationWheel INSTANCE = new ReservationWheel(SHARED_TICK_MILLIS, SHARED_BUCKETS);
+
+		static {
+			INSTANCE.start();
+		}
+	}
+}
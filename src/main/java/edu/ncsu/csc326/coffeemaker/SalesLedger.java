@@ -0,0 +1,566 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+
+/**
+ * Append-only record of every order a coffee maker took, kept as
+ * columns of primitives for fast totals over millions of sales.
+ *
+ * Each thread appends to a chunk of its own, so recording an order
+ * takes no lock and never waits for another seller.  A chunk holds
+ * the time, stable recipe id, price, amount paid and outcome of each
+ * order in parallel arrays.  When it is full it is compressed: times
+ * as varint steps from the one before, the other numbers as zigzag
+ * varints, which takes most orders from 21 bytes to about 7.
+ *
+ * A chunk's columns start small and double as it fills, so a thread
+ * that records a few orders holds a few kilobytes rather than a full
+ * chunk.  A chunk whose thread has died is sealed by the next query
+ * or the next chunk started, however few orders it holds.
+ *
+ * Queries split the chunks across a fork/join pool.  Each task scans
+ * its chunks' columns into plain long counters, and the results are
+ * added up, so nothing is boxed.  A query sees every order recorded
+ * before it started and may see some recorded while it ran.
+ */
+public class SalesLedger {
+	/** Orders per chunk */
+	static final int CHUNK_ROWS = 1 << 14;
+	/** Orders a chunk being written has room for at first */
+	static final int FIRST_RAW_ROWS = 1 << 8;
+	/** Milliseconds per hour */
+	private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	/** Chunk each thread is appending to */
+	private final ThreadLocal<Chunk> writing = new ThreadLocal<Chunk>();
+	/** Every chunk, in the order they were started */
+	private volatile Chunk[] chunks = new Chunk[0];
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates an empty ledger queried on the common fork/join pool.
+	 */
+	public SalesLedger() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an empty ledger queried on the given pool.
+	 * @param pool
+	 */
+	public SalesLedger(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Appends one order.
+	 * @param timeMillis when the order was taken
+	 * @param recipeId stable id of the recipe, or -1 if there was none
+	 * @param price price of the recipe, or 0 if there was none
+	 * @param amtPaid
+	 * @param outcome
+	 */
+	public void record(long timeMillis, int recipeId, int price, int amtPaid, Outcome outcome) {
+		Chunk chunk = writing.get();
+		if (chunk == null || chunk.isFull()) {
+			if (chunk != null) {
+				chunk.seal();
+			}
+			chunk = addChunk();
+			writing.set(chunk);
+		}
+		chunk.append(timeMillis, recipeId, price, amtPaid, (byte) outcome.ordinal());
+	}
+
+	/**
+	 * Returns the number of orders recorded.
+	 * @return long
+	 */
+	public long size() {
+		long size = 0;
+		for (Chunk chunk : chunks) {
+			size += chunk.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the number of orders with each outcome, indexed by
+	 * Outcome ordinal.
+	 * @return long[]
+	 */
+	public long[] countByOutcome() {
+		long[] counts = scan(new Query() {
+			@Override
+			long[] scan(Columns columns, long[] totals) {
+				for (int i = 0; i < columns.rows; i++) {
+					totals[columns.outcomes[i]]++;
+				}
+				return totals;
+			}
+		}, OUTCOMES.length);
+		return Arrays.copyOf(counts, OUTCOMES.length);
+	}
+
+	/**
+	 * Returns the money taken and the beverages sold for each recipe in
+	 * each hour of the given period.
+	 * @param fromMillis start of the first hour
+	 * @param hours
+	 * @return Revenue
+	 */
+	public Revenue revenueByRecipeAndHour(final long fromMillis, final int hours) {
+		if (hours <= 0) {
+			throw new IllegalArgumentException("There must be at least one hour");
+		}
+		final long toMillis = fromMillis + hours * HOUR_MILLIS;
+		final int sold = Outcome.SOLD.ordinal();
+		long[] totals = scan(new Query() {
+			@Override
+			long[] scan(Columns columns, long[] totals) {
+				for (int i = 0; i < columns.rows; i++) {
+					long time = columns.times[i];
+					int recipe = columns.recipes[i];
+					if (columns.outcomes[i] != sold || recipe < 0 || time < fromMillis || time >= toMillis) {
+						continue;
+					}
+					int cell = 2 * (recipe * hours + (int) ((time - fromMillis) / HOUR_MILLIS));
+					if (cell >= totals.length) {
+						totals = Arrays.copyOf(totals, Math.max(cell + 2, totals.length * 2));
+					}
+					totals[cell] += columns.prices[i];
+					totals[cell + 1]++;
+				}
+				return totals;
+			}
+		}, 2 * hours);
+		return new Revenue(fromMillis, hours, totals);
+	}
+
+	/**
+	 * Returns the number of chunks still being written.
+	 */
+	int rawChunks() {
+		int raw = 0;
+		for (Chunk chunk : chunks) {
+			if (!chunk.isSealed()) {
+				raw++;
+			}
+		}
+		return raw;
+	}
+
+	/**
+	 * Seals the chunks whose threads have died, since nothing will be
+	 * appended to them again.
+	 */
+	private void sealAbandoned() {
+		for (Chunk chunk : chunks) {
+			if (chunk.isAbandoned()) {
+				chunk.seal();
+			}
+		}
+	}
+
+	private synchronized Chunk addChunk() {
+		sealAbandoned();
+		Chunk chunk = new Chunk(Thread.currentThread());
+		Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+		grown[chunks.length] = chunk;
+		chunks = grown;
+		return chunk;
+	}
+
+	private long[] scan(Query query, int width) {
+		sealAbandoned();
+		return pool.invoke(new ScanTask(chunks, 0, chunks.length, query, width));
+	}
+
+	/**
+	 * Money taken and beverages sold per recipe per hour.
+	 */
+	public static final class Revenue {
+		private final long fromMillis;
+		private final int hours;
+		/** Money then count, for each hour of each recipe */
+		private final long[] totals;
+
+		private Revenue(long fromMillis, int hours, long[] totals) {
+			this.fromMillis = fromMillis;
+			this.hours = hours;
+			this.totals = totals;
+		}
+
+		/**
+		 * Returns the start of the first hour.
+		 * @return long
+		 */
+		public long getFromMillis() {
+			return fromMillis;
+		}
+
+		/**
+		 * Returns the number of hours covered.
+		 * @return int
+		 */
+		public int getHours() {
+			return hours;
+		}
+
+		/**
+		 * Returns the money taken for a recipe in an hour.
+		 * @param recipeId
+		 * @param hour counted from the first hour
+		 * @return long
+		 */
+		public long getRevenue(int recipeId, int hour) {
+			int cell = 2 * (recipeId * hours + hour);
+			return cell < totals.length ? totals[cell] : 0;
+		}
+
+		/**
+		 * Returns the beverages of a recipe sold in an hour.
+		 * @param recipeId
+		 * @param hour counted from the first hour
+		 * @return long
+		 */
+		public long getSold(int recipeId, int hour) {
+			int cell = 2 * (recipeId * hours + hour) + 1;
+			return cell < totals.length ? totals[cell] : 0;
+		}
+
+		/**
+		 * Returns the money taken for a recipe over the whole period.
+		 * @param recipeId
+		 * @return long
+		 */
+		public long getRevenue(int recipeId) {
+			long revenue = 0;
+			for (int hour = 0; hour < hours; hour++) {
+				revenue += getRevenue(recipeId, hour);
+			}
+			return revenue;
+		}
+	}
+
+	/**
+	 * A scan of the columns of one chunk at a time into long totals.
+	 */
+	private abstract static class Query {
+		/**
+		 * Adds one chunk's orders to the totals.
+		 * @return the totals, grown if more room was needed
+		 */
+		abstract long[] scan(Columns columns, long[] totals);
+	}
+
+	/**
+	 * Scans a range of chunks, splitting it in two until one chunk is
+	 * left.
+	 */
+	private static final class ScanTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final Chunk[] chunks;
+		private final int from;
+		private final int to;
+		private final Query query;
+		private final int width;
+
+		ScanTask(Chunk[] chunks, int from, int to, Query query, int width) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+			this.query = query;
+			this.width = width;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (to - from <= 1) {
+				long[] totals = new long[width];
+				if (from < to) {
+					totals = query.scan(chunks[from].columns(Columns.local()), totals);
+				}
+				return totals;
+			}
+			int middle = (from + to) >>> 1;
+			ScanTask left = new ScanTask(chunks, from, middle, query, width);
+			left.fork();
+			long[] right = new ScanTask(chunks, middle, to, query, width).compute();
+			long[] sum = left.join();
+			if (sum.length < right.length) {
+				long[] swap = sum;
+				sum = right;
+				right = swap;
+			}
+			for (int i = 0; i < right.length; i++) {
+				sum[i] += right[i];
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * The orders of one chunk as plain arrays, either the chunk's own
+	 * or decoded into a thread's scratch arrays.
+	 */
+	private static final class Columns {
+		private static final ThreadLocal<Columns> SCRATCH = new ThreadLocal<Columns>();
+
+		int rows;
+		long[] times;
+		int[] recipes;
+		int[] prices;
+		int[] paid;
+		byte[] outcomes;
+
+		/** Arrays sealed chunks are decoded into, made on first use */
+		long[] decodedTimes;
+		int[] decodedRecipes;
+		int[] decodedPrices;
+		int[] decodedPaid;
+
+		static Columns local() {
+			Columns scratch = SCRATCH.get();
+			if (scratch == null) {
+				scratch = new Columns();
+				SCRATCH.set(scratch);
+			}
+			return scratch;
+		}
+	}
+
+	/**
+	 * Up to CHUNK_ROWS orders, appended by one thread.
+	 */
+	private static final class Chunk {
+		/** Thread appending to the chunk */
+		private final WeakReference<Thread> owner;
+		/** Columns while the chunk is being written, then null */
+		private volatile Raw raw = new Raw(FIRST_RAW_ROWS);
+		/** Compressed columns once the chunk is full or abandoned */
+		private volatile Sealed sealed;
+		/** Orders appended; set after each order is written */
+		private final AtomicInteger size = new AtomicInteger();
+
+		Chunk(Thread owner) {
+			this.owner = new WeakReference<Thread>(owner);
+		}
+
+		boolean isFull() {
+			return size.get() == CHUNK_ROWS;
+		}
+
+		boolean isSealed() {
+			return sealed != null;
+		}
+
+		/**
+		 * Returns true if the chunk is still being written but its
+		 * thread has died.  Seeing the thread dead also makes everything
+		 * it appended visible.
+		 */
+		boolean isAbandoned() {
+			if (sealed != null) {
+				return false;
+			}
+			Thread thread = owner.get();
+			return thread == null || !thread.isAlive();
+		}
+
+		int size() {
+			return size.get();
+		}
+
+		void append(long timeMillis, int recipeId, int price, int amtPaid, byte outcome) {
+			Raw columns = raw;
+			int row = size.get();
+			if (row == columns.times.length) {
+				// Rows before this one are copied, so readers of either columns see them.
+				columns = columns.grow();
+				raw = columns;
+			}
+			columns.times[row] = timeMillis;
+			columns.recipes[row] = recipeId;
+			columns.prices[row] = price;
+			columns.paid[row] = amtPaid;
+			columns.outcomes[row] = outcome;
+			size.lazySet(row + 1);
+		}
+
+		/**
+		 * Compresses the columns.  Called by the chunk's thread once it
+		 * is full, or by any thread once it is abandoned.
+		 */
+		synchronized void seal() {
+			if (sealed != null) {
+				return;
+			}
+			Raw columns = raw;
+			int rows = size.get();
+			sealed = new Sealed(rows, encodeSteps(columns.times, rows), encode(columns.recipes, rows),
+					encode(columns.prices, rows), encode(columns.paid, rows), Arrays.copyOf(columns.outcomes, rows));
+			raw = null;
+		}
+
+		/**
+		 * Returns the chunk's orders, decoding them into the given
+		 * scratch columns if the chunk is sealed.
+		 */
+		Columns columns(Columns scratch) {
+			int rows = size.get();
+			Raw columns = raw;
+			if (columns != null) {
+				scratch.rows = rows;
+				scratch.times = columns.times;
+				scratch.recipes = columns.recipes;
+				scratch.prices = columns.prices;
+				scratch.paid = columns.paid;
+				scratch.outcomes = columns.outcomes;
+				return scratch;
+			}
+			Sealed compressed = sealed;
+			if (scratch.decodedTimes == null) {
+				scratch.decodedTimes = new long[CHUNK_ROWS];
+				scratch.decodedRecipes = new int[CHUNK_ROWS];
+				scratch.decodedPrices = new int[CHUNK_ROWS];
+				scratch.decodedPaid = new int[CHUNK_ROWS];
+			}
+			scratch.rows = compressed.rows;
+			scratch.times = decodeSteps(compressed.times, scratch.decodedTimes);
+			scratch.recipes = decode(compressed.recipes, scratch.decodedRecipes);
+			scratch.prices = decode(compressed.prices, scratch.decodedPrices);
+			scratch.paid = decode(compressed.paid, scratch.decodedPaid);
+			scratch.outcomes = compressed.outcomes;
+			return scratch;
+		}
+	}
+
+	/**
+	 * Returns the first rows of a column of times as zigzag varint
+	 * steps from the time before, starting from 0.
+	 */
+	static byte[] encodeSteps(long[] values, int rows) {
+		byte[] out = new byte[10 * rows];
+		int at = 0;
+		long previous = 0;
+		for (int i = 0; i < rows; i++) {
+			at = putZigzag(out, at, values[i] - previous);
+			previous = values[i];
+		}
+		return Arrays.copyOf(out, at);
+	}
+
+	/**
+	 * Returns the first rows of a column as zigzag varints.
+	 */
+	static byte[] encode(int[] values, int rows) {
+		byte[] out = new byte[5 * rows];
+		int at = 0;
+		for (int i = 0; i < rows; i++) {
+			at = putZigzag(out, at, values[i]);
+		}
+		return Arrays.copyOf(out, at);
+	}
+
+	static long[] decodeSteps(byte[] in, long[] values) {
+		int row = 0;
+		long previous = 0;
+		long value = 0;
+		int shift = 0;
+		for (int at = 0; at < in.length; at++) {
+			byte b = in[at];
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+			if (b >= 0) {
+				previous += (value >>> 1) ^ -(value & 1);
+				values[row++] = previous;
+				value = 0;
+				shift = 0;
+			}
+		}
+		return values;
+	}
+
+	static int[] decode(byte[] in, int[] values) {
+		int row = 0;
+		int value = 0;
+		int shift = 0;
+		for (int at = 0; at < in.length; at++) {
+			byte b = in[at];
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+			if (b >= 0) {
+				values[row++] = (value >>> 1) ^ -(value & 1);
+				value = 0;
+				shift = 0;
+			}
+		}
+		return values;
+	}
+
+	private static int putZigzag(byte[] out, int at, long value) {
+		long bits = (value << 1) ^ (value >> 63);
+		while ((bits & ~0x7fL) != 0) {
+			out[at++] = (byte) ((bits & 0x7f) | 0x80);
+			bits >>>= 7;
+		}
+		out[at++] = (byte) bits;
+		return at;
+	}
+
+	/** Columns of a chunk being written */
+	private static final class Raw {
+		final long[] times;
+		final int[] recipes;
+		final int[] prices;
+		final int[] paid;
+		final byte[] outcomes;
+
+		Raw(int rows) {
+			this(new long[rows], new int[rows], new int[rows], new int[rows], new byte[rows]);
+		}
+
+		private Raw(long[] times, int[] recipes, int[] prices, int[] paid, byte[] outcomes) {
+			this.times = times;
+			this.recipes = recipes;
+			this.prices = prices;
+			this.paid = paid;
+			this.outcomes = outcomes;
+		}
+
+		/** Returns a copy with twice the room, up to CHUNK_ROWS. */
+		Raw grow() {
+			int rows = Math.min(CHUNK_ROWS, 2 * times.length);
+			return new Raw(Arrays.copyOf(times, rows), Arrays.copyOf(recipes, rows), Arrays.copyOf(prices, rows),
+					Arrays.copyOf(paid, rows), Arrays.copyOf(outcomes, rows));
+		}
+	}
+
+	/** Compressed columns of a full or abandoned chunk */
+	private static final class Sealed {
+		final int rows;
+		final byte[] times;
+		final byte[] recipes;
+		final byte[] prices;
+		final byte[] paid;
+		final byte[] outcomes;
+
+		Sealed(int rows, byte[] times, byte[] recipes, byte[] prices, byte[] paid, byte[] outcomes) {
+			this.rows = rows;
+			this.times = times;
+			this.recipes = recipes;
+			this.prices = prices;
+			this.paid = paid;
+			this.outcomes = outcomes;
+		}
+	}
+}
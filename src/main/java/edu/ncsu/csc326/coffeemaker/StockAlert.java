@@ -0,0 +1,83 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * One crossing of a stock threshold, queued for delivery.
+ */
+public final class StockAlert {
+	private final Inventory inventory;
+	private final int ingredient;
+	private final int threshold;
+	private final int units;
+	private final StockThresholdListener listener;
+
+	StockAlert(Inventory inventory, int ingredient, int threshold, int units, StockThresholdListener listener) {
+		this.inventory = inventory;
+		this.ingredient = ingredient;
+		this.threshold = threshold;
+		this.units = units;
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the inventory whose stock crossed the threshold.
+	 * @return Inventory
+	 */
+	public Inventory getInventory() {
+		return inventory;
+	}
+
+	/**
+	 * Returns the IngredientCatalog id of the ingredient.
+	 * @return int
+	 */
+	public int getIngredient() {
+		return ingredient;
+	}
+
+	/**
+	 * Returns the level the listener was registered for.
+	 * @return int
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Returns the units of the ingredient right after the crossing.
+	 * @return int
+	 */
+	public int getUnits() {
+		return units;
+	}
+
+	/**
+	 * Returns true if the stock fell below the threshold, and false
+	 * if it climbed back to it.
+	 * @return boolean
+	 */
+	public boolean isLow() {
+		return units < threshold;
+	}
+
+	StockThresholdListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Returns true if the stock is still on the side of the threshold
+	 * this alert reports.
+	 */
+	boolean isCurrent() {
+		return (inventory.getAmount(ingredient) < threshold) == isLow();
+	}
+
+	/**
+	 * Returns a description such as "Milk low: 2 units (threshold 5)".
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return IngredientCatalog.nameOf(ingredient) + (isLow() ? " low: " : " restocked: ") + units
+				+ " units (threshold " + threshold + ")";
+	}
+}
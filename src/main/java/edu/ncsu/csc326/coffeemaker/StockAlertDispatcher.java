@@ -0,0 +1,105 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers stock alerts to their listeners away from the threads
+ * that sell and restock.
+ *
+ * An inventory that sees a threshold crossed only puts the alert on
+ * a lock-free queue and wakes the dispatcher thread, which calls the
+ * listeners in the order the alerts were queued.  An alert is dropped
+ * if, by the time it is delivered, the stock has crossed back.  A slow
+ * or failing listener therefore holds up other alerts, but never a
+ * sale; failures are logged.
+ */
+public class StockAlertDispatcher {
+	private static final Logger LOG = Logger.getLogger(StockAlertDispatcher.class.getName());
+
+	private final Queue<StockAlert> pending = new ConcurrentLinkedQueue<StockAlert>();
+	/** Thread delivering the alerts, once started */
+	private volatile Thread thread;
+
+	/**
+	 * Returns the dispatcher used by inventories that are not given
+	 * one.  It runs on a single daemon thread.
+	 * @return StockAlertDispatcher
+	 */
+	public static StockAlertDispatcher shared() {
+		return SharedDispatcher.INSTANCE;
+	}
+
+	/**
+	 * Queues an alert and wakes the dispatcher thread.
+	 * @param alert
+	 */
+	void submit(StockAlert alert) {
+		pending.offer(alert);
+		Thread delivering = thread;
+		if (delivering != null) {
+			LockSupport.unpark(delivering);
+		}
+	}
+
+	/**
+	 * Delivers every alert queued so far, and still current, on the
+	 * calling thread.  A listener that throws is logged and does not
+	 * stop the others.  Only one thread should deliver for a
+	 * dispatcher.
+	 * @return the number of alerts delivered
+	 */
+	public int deliverPending() {
+		int delivered = 0;
+		StockAlert alert;
+		while ((alert = pending.poll()) != null) {
+			if (!alert.isCurrent()) {
+				continue;
+			}
+			try {
+				alert.getListener().thresholdCrossed(alert);
+			} catch (RuntimeException e) {
+				// One broken listener must not silence the rest.
+				LOG.log(Level.WARNING, "Stock threshold listener failed on " + alert, e);
+			}
+			delivered++;
+		}
+		return delivered;
+	}
+
+	/**
+	 * Starts a daemon thread that delivers alerts as they are queued.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		Thread delivering = new Thread(() -> {
+			while (true) {
+				try {
+					if (deliverPending() == 0) {
+						LockSupport.park(this);
+					}
+				} catch (Throwable e) {
+					// Keep delivering; the alert that failed is already off the queue.
+					LOG.log(Level.SEVERE, "Stock threshold listener failed", e);
+				}
+			}
+		}, "stock-alerts");
+		delivering.setDaemon(true);
+		thread = delivering;
+		delivering.start();
+	}
+
+	/** Holder for the lazily started shared dispatcher */
+	private static final class SharedDispatcher {
+		static final StockAlertDispatcher INSTANCE = new StockAlertDispatcher();
+
+		static {
+			INSTANCE.start();
+		}
+	}
+}
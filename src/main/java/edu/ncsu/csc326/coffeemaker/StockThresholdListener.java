@@ -0,0 +1,23 @@
+package edu.ncsu.csc326.coffeemaker;
+
+/**
+ * Told when the stock of an ingredient falls below, or climbs back
+ * to, a level it was registered for.
+ *
+ * Listeners are called on a StockAlertDispatcher thread, never on
+ * the thread that made the sale or restock, so they may take their
+ * time.  Crossings that race can be queued out of order, so the
+ * dispatcher checks the stock again before each delivery and drops
+ * an alert the stock has since moved back past.  The last alert a
+ * listener hears for a threshold therefore agrees with the stock.
+ * The units in each alert say where the stock was right after the
+ * crossing.
+ */
+public interface StockThresholdListener {
+
+	/**
+	 * Called after the stock crossed the threshold.
+	 * @param alert
+	 */
+	void thresholdCrossed(StockAlert alert);
+}
@@ -0,0 +1,195 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Takes restocks without touching the inventory, for floods of
+ * deliveries that should not slow down sales.
+ *
+ * Each thread adds its deliveries to one of several striped cells,
+ * as a LongAdder does, so restocking threads neither contend with
+ * each other nor with the sales swapping the stock vector.  The
+ * cells are folded into the inventory in one update when fold is
+ * called: by a sale that finds the stock short, by a report, or by
+ * the background reconciler.  Until then the units are on their way
+ * but cannot be sold.  A delivery folded while it is being added may
+ * arrive in two updates instead of one.
+ *
+ * Each stripe also counts the restocks being added to it, so stop can
+ * wait for them and fold them before the restocker is given up; a
+ * restock that starts after stop goes straight to the inventory.
+ */
+public class StripedRestocker {
+	/** Ints per cache line */
+	private static final int LINE_INTS = 16;
+
+	private static final Logger LOG = Logger.getLogger(StripedRestocker.class.getName());
+
+	private final Inventory inventory;
+	/** Ingredients each stripe has a counter for */
+	private final int width;
+	/** Ints from the start of one stripe to the next */
+	private final int stride;
+	/** Number of stripes minus one; the stripe count is a power of two */
+	private final int mask;
+	/** Units added and not yet folded, by stripe and ingredient, then the stripe's restocks in flight */
+	private final AtomicIntegerArray cells;
+	/** Set once stop has been called */
+	private volatile boolean stopped;
+	/** Runs of the background reconciler, if started */
+	private ScheduledFuture<?> reconciler;
+
+	/**
+	 * Creates a restocker in front of the given inventory with one
+	 * stripe per core.
+	 * @param inventory
+	 */
+	public StripedRestocker(Inventory inventory) {
+		this(inventory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a restocker in front of the given inventory.
+	 * @param inventory
+	 * @param stripes number of cells, rounded up to a power of two
+	 */
+	public StripedRestocker(Inventory inventory, int stripes) {
+		if (stripes <= 0) {
+			throw new IllegalArgumentException("There must be at least one stripe");
+		}
+		int size = Integer.highestOneBit(stripes);
+		if (size < stripes) {
+			size <<= 1;
+		}
+		this.inventory = inventory;
+		this.width = IngredientCatalog.size();
+		// Round each stripe and its in-flight count up to whole cache lines, keeping a line between stripes.
+		this.stride = (width + LINE_INTS) / LINE_INTS * LINE_INTS + LINE_INTS;
+		this.mask = size - 1;
+		this.cells = new AtomicIntegerArray(LINE_INTS + size * stride);
+	}
+
+	/**
+	 * Adds a delivery, indexed by IngredientCatalog id, to the calling
+	 * thread's cell.  Nothing is added if any amount is negative or for
+	 * an ingredient not in the catalog.  A
+	 * delivery of an ingredient registered after this restocker was
+	 * made, or made after it was stopped, goes straight to the
+	 * inventory.
+	 * @param delivery
+	 * @throws InventoryException
+	 */
+	public void restock(int[] delivery) throws InventoryException {
+		Inventory.checkDelivery(delivery);
+		for (int i = 0; i < delivery.length; i++) {
+			if (i >= width && delivery[i] > 0) {
+				inventory.restock(delivery);
+				return;
+			}
+		}
+		int base = LINE_INTS + ((int) Thread.currentThread().getId() & mask) * stride;
+		// Counted in before stopped is read, so stop either sees this restock or it sees stopped.
+		cells.getAndIncrement(base + width);
+		try {
+			if (stopped) {
+				inventory.restock(delivery);
+				return;
+			}
+			for (int i = 0; i < delivery.length; i++) {
+				if (delivery[i] > 0) {
+					cells.getAndAdd(base + i, delivery[i]);
+				}
+			}
+		} finally {
+			cells.getAndDecrement(base + width);
+		}
+	}
+
+	/**
+	 * Moves everything added so far into the inventory in one update.
+	 * @return true if there was anything to move
+	 */
+	public boolean fold() {
+		int[] delivery = null;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int base = LINE_INTS + stripe * stride;
+			for (int i = 0; i < width; i++) {
+				if (cells.get(base + i) != 0) {
+					if (delivery == null) {
+						delivery = new int[width];
+					}
+					delivery[i] += cells.getAndSet(base + i, 0);
+				}
+			}
+		}
+		if (delivery == null) {
+			return false;
+		}
+		try {
+			inventory.restock(delivery);
+		} catch (InventoryException e) {
+			throw new IllegalStateException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Starts folding on the shared reconciler thread at the given
+	 * interval.
+	 * @param periodMillis
+	 */
+	public synchronized void start(long periodMillis) {
+		if (reconciler == null) {
+			reconciler = SharedReconciler.INSTANCE.scheduleAtFixedRate(this::reconcile,
+					periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Folds for the background reconciler.  A failure is logged rather
+	 * than thrown, since a periodic task that throws is never run again.
+	 */
+	private void reconcile() {
+		try {
+			fold();
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Folding striped restocks failed", e);
+		}
+	}
+
+	/**
+	 * Stops the background folding, waits for restocks still being
+	 * added and folds what is left.  Later restocks go straight to the
+	 * inventory.
+	 */
+	public synchronized void stop() {
+		if (reconciler != null) {
+			reconciler.cancel(false);
+			reconciler = null;
+		}
+		stopped = true;
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			while (cells.get(LINE_INTS + stripe * stride + width) != 0) {
+				Thread.yield();
+			}
+		}
+		fold();
+	}
+
+	/** Holder for the lazily started reconciler thread */
+	private static final class SharedReconciler {
+		static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "restock-reconciler");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+}
@@ -0,0 +1,136 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of recipes and text shared by the journal and the
+ * network protocol.
+ *
+ * Text is an unsigned short byte count followed by UTF-8, so it holds
+ * at most MAX_STRING_BYTES.  A recipe is a
+ * present flag, its name, its price and its amount vector as a count
+ * followed by ints.  Counters sent by replication are unsigned
+ * varints: seven bits per byte, low bits first, with the top bit set
+ * on every byte but the last.
+ */
+final class WireFormat {
+	/** Longest text, in UTF-8 bytes, that fits its short byte count */
+	static final int MAX_STRING_BYTES = 0xffff;
+
+	private WireFormat() {
+	}
+
+	/** Bytes putVarLong writes for the given value */
+	static int varLongBytes(long value) {
+		int bytes = 1;
+		while ((value >>>= 7) != 0) {
+			bytes++;
+		}
+		return bytes;
+	}
+
+	static void putVarLong(ByteBuffer out, long value) {
+		while ((value & ~0x7fL) != 0) {
+			out.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	static long getVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is too long");
+	}
+
+	/**
+	 * Bytes putString writes for the given text.
+	 * @throws IllegalArgumentException if the text is too long to write
+	 */
+	static int stringBytes(String text) {
+		return 2 + utf8(text).length;
+	}
+
+	/**
+	 * Writes the given text.
+	 * @throws IllegalArgumentException if the text is too long to write
+	 */
+	static void putString(ByteBuffer out, String text) {
+		byte[] bytes = utf8(text);
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+	}
+
+	private static byte[] utf8(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_STRING_BYTES) {
+			throw new IllegalArgumentException("Text of " + bytes.length + " bytes is longer than "
+					+ MAX_STRING_BYTES);
+		}
+		return bytes;
+	}
+
+	static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xffff];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Bytes putRecipe writes for the given recipe */
+	static int recipeBytes(Recipe recipe) {
+		if (recipe == null) {
+			return 1;
+		}
+		return 1 + stringBytes(recipe.getName()) + 4 + 4 + 4 * recipe.amounts().length;
+	}
+
+	static void putRecipe(ByteBuffer out, Recipe recipe) {
+		if (recipe == null) {
+			out.put((byte) 0);
+			return;
+		}
+		out.put((byte) 1);
+		putString(out, recipe.getName());
+		out.putInt(recipe.getPrice());
+		int[] amounts = recipe.amounts();
+		out.putInt(amounts.length);
+		for (int amount : amounts) {
+			out.putInt(amount);
+		}
+	}
+
+	/**
+	 * Reads a recipe written by putRecipe.
+	 * @throws BufferUnderflowException if the recipe is cut short
+	 * @throws IllegalArgumentException if the price or an amount is negative
+	 */
+	static Recipe getRecipe(ByteBuffer in) {
+		if (in.get() == 0) {
+			return null;
+		}
+		String name = getString(in);
+		int price = in.getInt();
+		int count = in.getInt();
+		if (count < 0 || count > in.remaining() / 4) {
+			throw new BufferUnderflowException();
+		}
+		int[] amounts = new int[count];
+		int negative = price;
+		for (int i = 0; i < amounts.length; i++) {
+			amounts[i] = in.getInt();
+			negative |= amounts[i];
+		}
+		if (negative < 0) {
+			throw new IllegalArgumentException("Price and units must be positive integers");
+		}
+		return new Recipe(name, price, amounts);
+	}
+}
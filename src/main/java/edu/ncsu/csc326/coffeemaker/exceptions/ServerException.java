@@ -0,0 +1,13 @@
+package edu.ncsu.csc326.coffeemaker.exceptions;
+
+import java.io.IOException;
+
+public class ServerException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+	
+	public ServerException(String msg) {
+		super(msg);
+	}
+
+}
@@ -0,0 +1,89 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for BatchRunner class.
+ */
+public class BatchRunnerTest {
+
+	private CoffeeMaker coffeeMaker;
+	private StringWriter output;
+	private BatchRunner runner;
+
+	@Before
+	public void setUp() {
+		coffeeMaker = new CoffeeMaker();
+		output = new StringWriter();
+		runner = new BatchRunner(coffeeMaker, new PrintWriter(output));
+	}
+
+	private long run(String script) throws IOException {
+		return runner.run(new BufferedReader(new StringReader(script)));
+	}
+
+	/**
+	 * Given a script that adds a recipe, restocks and sells
+	 * Then every command is carried out and the summary counts the sales.
+	 * @throws IOException
+	 */
+	@Test
+	public void testScript() throws IOException {
+		long errors = run("# morning\n"
+				+ "add-recipe,Caffe Latte,50,3,2,0,0\n"
+				+ "add-inventory,1,0,0,0\n"
+				+ "\n"
+				+ "make-coffee,1,75\n"
+				+ "make-coffee,1,20\n"
+				+ "edit-recipe,1,60,3,2,0,0\n"
+				+ "check-inventory\n");
+
+		assertEquals(0, errors);
+		assertEquals("Caffe Latte successfully added.\n"
+				+ "Inventory successfully added\n"
+				+ "Your change is: 25\n"
+				+ "Your change is: 20\n"
+				+ "Caffe Latte successfully edited.\n"
+				+ "Coffee: 13\nMilk: 13\nSugar: 15\nChocolate: 15\n"
+				+ "Commands: 6\n"
+				+ "Errors: 0\n"
+				+ "Coffees sold: 1\n"
+				+ "Money taken: 50\n", output.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	/**
+	 * Bad lines are reported with their line number and the rest of the
+	 * script still runs.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBadLines() throws IOException {
+		long errors = run("brew,1\n"
+				+ "add-inventory,1,x,0,0\n"
+				+ "make-coffee,9,50\n"
+				+ "delete-recipe\n"
+				+ "add-recipe,Mocha,-5,1,1,1,1\n"
+				+ "add-recipe,Mocha,5,1,1,1,1\n");
+
+		assertEquals(5, errors);
+		assertEquals("Line 1: Unknown command brew\n"
+				+ "Line 2: Units of milk must be a positive integer\n"
+				+ "Line 3: Please select a number from 1-4.\n"
+				+ "Line 4: delete-recipe takes 1 arguments\n"
+				+ "Line 5: Price must be a positive integer\n"
+				+ "Mocha successfully added.\n"
+				+ "Commands: 6\n"
+				+ "Errors: 5\n"
+				+ "Coffees sold: 0\n"
+				+ "Money taken: 0\n", output.toString().replace(System.lineSeparator(), "\n"));
+	}
+}
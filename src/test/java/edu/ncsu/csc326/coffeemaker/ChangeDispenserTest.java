@@ -0,0 +1,274 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for ChangeDispenser and change paid out by CoffeeMaker.
+ */
+public class ChangeDispenserTest {
+
+	private ChangeDispenser dispenser;
+	private CoffeeMaker coffeeMaker;
+
+	@Before
+	public void setUp() throws RecipeException {
+		dispenser = new ChangeDispenser(100, 25, 10, 5);
+		coffeeMaker = new CoffeeMaker();
+		Recipe coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setAmtMilk(1);
+		coffee.setPrice(50);
+		coffeeMaker.addRecipe(coffee);
+	}
+
+	/**
+	 * Change is paid with the fewest coins the tubes allow.
+	 */
+	@Test
+	public void testFewestCoins() {
+		dispenser.addCoins(10, 10, 10);
+		int[] coins = new int[3];
+		assertTrue(dispenser.dispense(40, coins));
+		assertArrayEquals(new int[] {1, 1, 1}, coins);
+		assertTrue(dispenser.dispense(100, coins));
+		assertArrayEquals(new int[] {4, 0, 0}, coins);
+		assertArrayEquals(new int[] {5, 9, 9}, dispenser.getCoins());
+		assertTrue(dispenser.dispense(0, coins));
+		assertArrayEquals(new int[] {0, 0, 0}, coins);
+		assertFalse(dispenser.canMakeChange(3));
+		assertFalse(dispenser.canMakeChange(105));
+		assertFalse(dispenser.dispense(105, coins));
+	}
+
+	/**
+	 * When a tube runs short the change comes from smaller coins, and
+	 * amounts that cannot be made exactly are refused without taking
+	 * any coins.
+	 */
+	@Test
+	public void testLimitedTubes() {
+		dispenser.addCoins(1, 0, 3);
+		int[] coins = new int[3];
+		assertTrue(dispenser.dispense(35, coins));
+		assertArrayEquals(new int[] {1, 0, 2}, coins);
+		assertFalse(dispenser.canMakeChange(10));
+		assertFalse(dispenser.dispense(10, coins));
+		assertArrayEquals(new int[] {0, 0, 1}, dispenser.getCoins());
+		assertTrue(dispenser.canMakeChange(5));
+		dispenser.addCoins(0, 1);
+		assertTrue(dispenser.canMakeChange(15));
+	}
+
+	/**
+	 * Sales from full tubes and refills that only top them up keep the
+	 * same table.
+	 */
+	@Test
+	public void testFullTubesKeepTable() {
+		dispenser.addCoins(100, 100, 100);
+		int builds = dispenser.getBuilds();
+		for (int i = 0; i < 20; i++) {
+			assertTrue(dispenser.dispense(95, null));
+		}
+		dispenser.addCoins(20, 20, 20);
+		assertEquals(builds, dispenser.getBuilds());
+	}
+
+	/**
+	 * After any run of sales and refills, every amount is found
+	 * reachable exactly when a search over the tubes finds it, and
+	 * with as few coins.
+	 */
+	@Test
+	public void testMatchesSearch() {
+		ChangeDispenser small = new ChangeDispenser(60, 20, 12, 5, 3);
+		Random random = new Random(42);
+		for (int round = 0; round < 200; round++) {
+			if (random.nextInt(4) == 0) {
+				small.addCoins(random.nextInt(3), random.nextInt(3), random.nextInt(4), random.nextInt(4));
+			} else {
+				small.dispense(random.nextInt(61), null);
+			}
+			int[] tubes = small.getCoins();
+			for (int amount = 0; amount <= 60; amount++) {
+				int fewest = fewestCoins(small.getDenominations(), tubes, 0, amount);
+				int[] coins = new int[4];
+				ChangeDispenser copy = new ChangeDispenser(60, 20, 12, 5, 3);
+				copy.addCoins(tubes);
+				assertEquals(fewest >= 0, small.canMakeChange(amount));
+				if (fewest >= 0) {
+					assertTrue(copy.dispense(amount, coins));
+					assertEquals(fewest, coins[0] + coins[1] + coins[2] + coins[3]);
+					assertEquals(amount, coins[0] * 20 + coins[1] * 12 + coins[2] * 5 + coins[3] * 3);
+				}
+			}
+		}
+	}
+
+	private static int fewestCoins(int[] values, int[] tubes, int i, int amount) {
+		if (amount == 0) {
+			return 0;
+		}
+		if (i == values.length) {
+			return -1;
+		}
+		int best = -1;
+		for (int k = 0; k <= tubes[i] && k * values[i] <= amount; k++) {
+			int rest = fewestCoins(values, tubes, i + 1, amount - k * values[i]);
+			if (rest >= 0 && (best < 0 || rest + k < best)) {
+				best = rest + k;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Threads paying change at once never pay out more coins than were
+	 * in the tubes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentDispense() throws Exception {
+		dispenser.addCoins(40, 40, 40);
+		final int[][] paid = new int[4][3];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int[] total = paid[t];
+			threads.add(new Thread(() -> {
+				int[] coins = new int[3];
+				for (int i = 0; i < 200; i++) {
+					if (dispenser.dispense(40, coins)) {
+						for (int c = 0; c < 3; c++) {
+							total[c] += coins[c];
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int[] left = dispenser.getCoins();
+		for (int c = 0; c < 3; c++) {
+			assertEquals(40, left[c] + paid[0][c] + paid[1][c] + paid[2][c] + paid[3][c]);
+			assertTrue(left[c] >= 0);
+		}
+		assertFalse(dispenser.canMakeChange(40));
+	}
+
+	/**
+	 * A sale without exact change is refused before ingredients are
+	 * used, and change taken for a sale that fails goes back.
+	 */
+	@Test
+	public void testMakeCoffeeWithChange() {
+		coffeeMaker.setChangeDispenser(dispenser);
+		dispenser.addCoins(1, 1, 0);
+		int[] coins = new int[3];
+		assertEquals(57, coffeeMaker.makeCoffee(0, 57, coins));
+		assertArrayEquals(new int[] {0, 0, 0}, coins);
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", coffeeMaker.checkInventory());
+
+		assertEquals(35, coffeeMaker.makeCoffee(0, 85, coins));
+		assertArrayEquals(new int[] {1, 1, 0}, coins);
+		assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+		assertEquals(1, coffeeMaker.getMetrics().snapshot().getTotal(Outcome.NOT_ENOUGH_CHANGE));
+
+		dispenser.addCoins(0, 0, 4);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+		}
+		assertEquals(55, coffeeMaker.makeCoffee(0, 55, coins));
+		assertArrayEquals(new int[] {0, 0, 0}, coins);
+		assertArrayEquals(new int[] {0, 0, 4}, dispenser.getCoins());
+	}
+
+	/**
+	 * In a batch, orders without exact change are refused and the
+	 * rest are filled.
+	 */
+	@Test
+	public void testBatchWithChange() {
+		coffeeMaker.setChangeDispenser(dispenser);
+		dispenser.addCoins(0, 1, 1);
+		int[] change = coffeeMaker.makeCoffeeBatch(new int[] {0, 0, 0, 0}, new int[] {60, 60, 40, 55});
+		assertArrayEquals(new int[] {10, 60, 40, 5}, change);
+		assertArrayEquals(new int[] {0, 0, 0}, dispenser.getCoins());
+		CoffeeMakerMetrics.Snapshot snapshot = coffeeMaker.getMetrics().snapshot();
+		assertEquals(2, snapshot.getTotal(Outcome.SOLD));
+		assertEquals(1, snapshot.getTotal(Outcome.NOT_ENOUGH_CHANGE));
+		assertEquals(1, snapshot.getTotal(Outcome.NOT_ENOUGH_MONEY));
+	}
+
+	/**
+	 * An array too short for every tube is refused before any coins
+	 * or ingredients are taken, and a longer one is filled and
+	 * refunded from its first entries.
+	 */
+	@Test
+	public void testCoinsArrayLength() {
+		coffeeMaker.setChangeDispenser(dispenser);
+		dispenser.addCoins(10, 10, 10);
+		try {
+			dispenser.dispense(40, new int[2]);
+			fail("A short array should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Coins must have room for 3 tubes", e.getMessage());
+		}
+		try {
+			coffeeMaker.makeCoffee(0, 90, new int[2]);
+			fail("A short array should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Coins must have room for 3 tubes", e.getMessage());
+		}
+		assertArrayEquals(new int[] {10, 10, 10}, dispenser.getCoins());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", coffeeMaker.checkInventory());
+		assertEquals(0, coffeeMaker.getMetrics().snapshot().getTotal(Outcome.SOLD));
+
+		int[] coins = new int[4];
+		assertEquals(40, coffeeMaker.makeCoffee(0, 90, coins));
+		assertArrayEquals(new int[] {1, 1, 1, 0}, coins);
+		for (int i = 0; i < 4; i++) {
+			coffeeMaker.makeCoffee(0, 50);
+		}
+		assertEquals(90, coffeeMaker.makeCoffee(0, 90, coins));
+		assertArrayEquals(new int[] {0, 0, 0, 0}, coins);
+		assertArrayEquals(new int[] {9, 9, 9}, dispenser.getCoins());
+	}
+
+	/**
+	 * A batch with a slot that does not exist is refused before any
+	 * change is taken for its other orders.
+	 */
+	@Test
+	public void testBatchWithBadSlot() {
+		coffeeMaker.setChangeDispenser(dispenser);
+		dispenser.addCoins(2, 2, 2);
+		try {
+			coffeeMaker.makeCoffeeBatch(new int[] {0, 0, 7}, new int[] {60, 75, 50});
+			fail("A missing slot should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("No recipe slot 7", e.getMessage());
+		}
+		assertArrayEquals(new int[] {2, 2, 2}, dispenser.getCoins());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", coffeeMaker.checkInventory());
+	}
+}
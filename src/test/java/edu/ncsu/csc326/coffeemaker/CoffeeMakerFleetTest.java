@@ -0,0 +1,102 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CoffeeMakerFleet class.
+ */
+public class CoffeeMakerFleetTest {
+
+    private CoffeeMakerFleet fleet;
+    private Recipe coffee;
+
+    @Before
+    public void setUp() throws RecipeException {
+        fleet = new CoffeeMakerFleet(new RecipeBook());
+        coffee = new Recipe();
+        coffee.setName("Coffee");
+        coffee.setAmtCoffee("3");
+        coffee.setAmtMilk("1");
+        coffee.setAmtSugar("1");
+        coffee.setAmtChocolate("0");
+        coffee.setPrice("50");
+    }
+
+    /**
+     * Given a fleet with two machines sharing one menu
+     * When one machine sells a coffee
+     * Then only that machine's inventory changes.
+     */
+    @Test
+    public void testMachinesHaveIndependentInventory() {
+        int first = fleet.addMachine();
+        int second = fleet.addMachine();
+        fleet.getMachine(first).addRecipe(coffee);
+
+        assertEquals(0, fleet.makeCoffee(first, 0, 50));
+        assertEquals("Coffee: 12\nMilk: 14\nSugar: 14\nChocolate: 15\n", fleet.getMachine(first).checkInventory());
+        assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", fleet.getMachine(second).checkInventory());
+    }
+
+    /**
+     * Given a fleet that grows past its initial capacity
+     * Then every machine is still found by its id.
+     */
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        CoffeeMaker[] added = new CoffeeMaker[100];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = new CoffeeMaker();
+            assertEquals(i, fleet.addMachine(added[i]));
+        }
+        assertEquals(100, fleet.size());
+        for (int i = 0; i < added.length; i++) {
+            assertSame(added[i], fleet.getMachine(i));
+        }
+    }
+
+    /**
+     * Looking up a machine id that was never handed out fails.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testUnknownMachine() {
+        fleet.addMachine();
+        fleet.getMachine(1);
+    }
+
+    /**
+     * Given a delivery manifest for two machines
+     * Then each machine gets its own delivery.
+     *
+     * @throws InventoryException if an amount is negative.
+     */
+    @Test
+    public void testRestockManifest() throws InventoryException {
+        int first = fleet.addMachine();
+        int second = fleet.addMachine();
+        fleet.restock(new int[] {first, second}, new int[][] {{1, 0, 0, 0}, {0, 0, 0, 5}});
+
+        assertEquals("Coffee: 16\nMilk: 15\nSugar: 15\nChocolate: 15\n", fleet.getMachine(first).checkInventory());
+        assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 20\n", fleet.getMachine(second).checkInventory());
+    }
+
+    /**
+     * A manifest with a negative amount for any machine changes no machine.
+     */
+    @Test
+    public void testRestockManifestNegative() {
+        int first = fleet.addMachine();
+        int second = fleet.addMachine();
+        try {
+            fleet.restock(new int[] {first, second}, new int[][] {{1, 0, 0, 0}, {0, -1, 0, 0}});
+            fail("A negative amount should be refused");
+        } catch (InventoryException e) {
+            assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", fleet.getMachine(first).checkInventory());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CoffeeMakerMetrics and LatencyHistogram classes.
+ */
+public class CoffeeMakerMetricsTest {
+
+    private CoffeeMaker coffeeMaker;
+
+    @Before
+    public void setUp() throws RecipeException {
+        coffeeMaker = new CoffeeMaker();
+        Recipe coffee = new Recipe();
+        coffee.setName("Coffee");
+        coffee.setAmtCoffee("5");
+        coffee.setPrice("50");
+        coffeeMaker.addRecipe(coffee);
+    }
+
+    /**
+     * Given sales that succeed, are underpaid, run out of stock or pick
+     * an empty slot
+     * Then each is counted under its recipe and outcome.
+     */
+    @Test
+    public void testCountsByRecipeAndOutcome() {
+        coffeeMaker.makeCoffee(0, 50);
+        coffeeMaker.makeCoffee(0, 50);
+        coffeeMaker.makeCoffee(0, 50);
+        coffeeMaker.makeCoffee(0, 50);
+        coffeeMaker.makeCoffee(0, 10);
+        coffeeMaker.makeCoffee(1, 50);
+
+        CoffeeMakerMetrics.Snapshot snapshot = coffeeMaker.getMetrics().snapshot();
+        assertEquals(3, snapshot.getCount(0, Outcome.SOLD));
+        assertEquals(1, snapshot.getCount(0, Outcome.NOT_ENOUGH_INGREDIENTS));
+        assertEquals(1, snapshot.getCount(0, Outcome.NOT_ENOUGH_MONEY));
+        assertEquals(1, snapshot.getCount(1, Outcome.NO_RECIPE));
+        assertEquals(6, snapshot.getOrderLatency().getCount());
+        assertEquals(4, snapshot.getInventoryLatency().getCount());
+    }
+
+    /**
+     * Given orders for recipe slots beyond the initial counters
+     * Then the counters grow and keep what was already recorded.
+     */
+    @Test
+    public void testCountersGrowWithSlots() {
+        CoffeeMakerMetrics metrics = new CoffeeMakerMetrics();
+        metrics.record(0, Outcome.SOLD, 100, 10);
+        metrics.record(40, Outcome.SOLD, 100, 10);
+
+        CoffeeMakerMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getCount(0, Outcome.SOLD));
+        assertEquals(1, snapshot.getCount(40, Outcome.SOLD));
+        assertEquals(2, snapshot.getTotal(Outcome.SOLD));
+    }
+
+    /**
+     * Given threads recording while snapshots are taken
+     * Then no snapshot ever shows more sales than latencies, and the
+     * final snapshot holds every order.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting
+     */
+    @Test
+    public void testSnapshotsAreConsistent() throws InterruptedException {
+        final CoffeeMakerMetrics metrics = new CoffeeMakerMetrics();
+        Thread[] workers = new Thread[4];
+        for (int i = 0; i < workers.length; i++) {
+            final int slot = i;
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < 20000; j++) {
+                    metrics.record(slot, Outcome.SOLD, j, 0);
+                }
+            });
+            workers[i].start();
+        }
+        long previous = 0;
+        for (int i = 0; i < 50; i++) {
+            CoffeeMakerMetrics.Snapshot snapshot = metrics.snapshot();
+            long sold = snapshot.getTotal(Outcome.SOLD);
+            assertEquals(sold, snapshot.getOrderLatency().getCount());
+            assertTrue(sold >= previous);
+            previous = sold;
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(80000, metrics.snapshot().getTotal(Outcome.SOLD));
+    }
+
+    /**
+     * Percentiles are reported within one bucket of the recorded value.
+     */
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 8);
+        assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 8);
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    /**
+     * Every value falls in a bucket whose upper bound is not below it.
+     */
+    @Test
+    public void testHistogramBuckets() {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.highestValueIn(bucket) >= value);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.highestValueIn(bucket - 1) < value);
+            }
+        }
+    }
+}
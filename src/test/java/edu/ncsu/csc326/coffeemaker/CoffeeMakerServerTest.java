@@ -0,0 +1,301 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+import edu.ncsu.csc326.coffeemaker.exceptions.ServerException;
+
+/**
+ * Unit tests for CoffeeMakerServer and CoffeeMakerClient.
+ */
+public class CoffeeMakerServerTest {
+
+	private CoffeeMaker coffeeMaker;
+	private CoffeeMakerServer server;
+	private CoffeeMakerClient client;
+	private Recipe coffee;
+
+	@Before
+	public void setUp() throws IOException, RecipeException {
+		coffeeMaker = new CoffeeMaker();
+		server = new CoffeeMakerServer(coffeeMaker, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+		client = new CoffeeMakerClient(server.getAddress());
+		coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setAmtMilk(1);
+		coffee.setAmtSugar(1);
+		coffee.setPrice(50);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.close();
+		server.close();
+	}
+
+	/**
+	 * Recipes added, edited and deleted over the network change the
+	 * coffee maker's recipe book.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRecipes() throws Exception {
+		assertTrue(client.addRecipe(coffee));
+		assertFalse(client.addRecipe(coffee));
+		assertEquals("Coffee", client.getRecipes()[0].getName());
+
+		Recipe dearer = new Recipe(coffee);
+		dearer.setPrice(75);
+		assertEquals("Coffee", client.editRecipe(0, dearer));
+		assertEquals(75, coffeeMaker.getRecipes()[0].getPrice());
+
+		assertEquals("Coffee", client.deleteRecipe(0));
+		assertEquals("", client.getRecipes()[0].getName());
+		assertNull(client.deleteRecipe(1));
+	}
+
+	/**
+	 * Purchases and restocks over the network change the inventory.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMakeCoffeeAndInventory() throws Exception {
+		client.addRecipe(coffee);
+		assertEquals(25, client.makeCoffee(0, 75));
+		assertEquals(10, client.makeCoffee(0, 10));
+		client.addInventory(new int[] {1, 0, 0, 5});
+		assertArrayEquals(new int[] {13, 14, 14, 20}, client.checkInventory());
+	}
+
+	/**
+	 * A refused restock comes back as an InventoryException and
+	 * the connection keeps working.
+	 * @throws IOException
+	 */
+	@Test
+	public void testAddInventoryRefused() throws IOException {
+		try {
+			client.addInventory(new int[] {1, -1});
+			fail("A negative amount should be refused");
+		} catch (InventoryException e) {
+			assertEquals("Units of milk must be a positive integer", e.getMessage());
+		}
+		assertArrayEquals(new int[] {15, 15, 15, 15}, client.checkInventory());
+	}
+
+	/**
+	 * A delivery longer than the ingredient catalog is refused, and
+	 * every connection can still check the inventory.
+	 * @throws IOException
+	 */
+	@Test
+	public void testAddInventoryTooLong() throws IOException {
+		int[] delivery = new int[IngredientCatalog.size() + 36];
+		delivery[delivery.length - 1] = 1;
+		try {
+			client.addInventory(delivery);
+			fail("A delivery longer than the catalog should be refused");
+		} catch (InventoryException e) {
+			assertEquals("There are only " + IngredientCatalog.size() + " ingredients", e.getMessage());
+		}
+		try (CoffeeMakerClient other = new CoffeeMakerClient(server.getAddress())) {
+			assertArrayEquals(new int[] {15, 15, 15, 15}, other.checkInventory());
+		}
+	}
+
+	/**
+	 * A request for a slot that does not exist is an error, not a
+	 * dropped connection.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBadSlot() throws IOException {
+		try {
+			client.makeCoffee(99, 50);
+			fail("A missing slot should be refused");
+		} catch (ServerException e) {
+			assertEquals("No recipe slot 99", e.getMessage());
+		}
+		assertEquals(50, client.makeCoffee(0, 50));
+	}
+
+	/**
+	 * Pipelined orders are answered in order.
+	 * @throws IOException
+	 */
+	@Test
+	public void testPipelinedOrders() throws IOException {
+		client.addRecipe(coffee);
+		int[] recipes = new int[1000];
+		int[] paid = new int[1000];
+		for (int i = 0; i < paid.length; i++) {
+			paid[i] = 50 + i;
+		}
+		int[] change = client.makeCoffee(recipes, paid);
+		for (int i = 0; i < change.length; i++) {
+			assertEquals(i < 5 ? i : 50 + i, change[i]);
+		}
+	}
+
+	/**
+	 * Given a client that sends far more requests than the server will
+	 * buffer responses for before reading any of them
+	 * Then every response still arrives, in order.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testBackpressure() throws Exception {
+		final int requests = 50000;
+		final SocketChannel raw = SocketChannel.open(server.getAddress());
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> sent = writer.submit(() -> {
+				ByteBuffer request = ByteBuffer.allocate(5 * requests);
+				for (int i = 0; i < requests; i++) {
+					request.putInt(1).put(CoffeeMakerProtocol.CHECK_INVENTORY);
+				}
+				request.flip();
+				while (request.hasRemaining()) {
+					raw.write(request);
+				}
+				return null;
+			});
+			Thread.sleep(200);
+			ByteBuffer response = ByteBuffer.allocate(25 * requests);
+			while (response.hasRemaining()) {
+				if (raw.read(response) < 0) {
+					fail("Server closed the connection");
+				}
+			}
+			sent.get();
+			response.flip();
+			for (int i = 0; i < requests; i++) {
+				assertEquals(21, response.getInt());
+				assertEquals(CoffeeMakerProtocol.OK, response.get());
+				assertEquals(4, response.getInt());
+				assertEquals(15, response.getInt());
+				response.position(response.position() + 12);
+			}
+		} finally {
+			writer.shutdown();
+			raw.close();
+		}
+	}
+
+	/**
+	 * Many clients at once are all served by the two workers.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testManyClients() throws Exception {
+		client.addRecipe(coffee);
+		coffeeMaker.addInventory(1000, 1000, 1000, 0);
+		List<CoffeeMakerClient> clients = new ArrayList<CoffeeMakerClient>();
+		try {
+			for (int i = 0; i < 200; i++) {
+				clients.add(new CoffeeMakerClient(server.getAddress()));
+			}
+			for (CoffeeMakerClient other : clients) {
+				assertEquals(0, other.makeCoffee(0, 50));
+			}
+		} finally {
+			for (CoffeeMakerClient other : clients) {
+				other.close();
+			}
+		}
+		assertArrayEquals(new int[] {415, 815, 815, 15}, client.checkInventory());
+	}
+
+	/**
+	 * A purchase held up inside the coffee maker does not stop the
+	 * worker serving its other connections.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testSlowRequestDoesNotBlockWorker() throws Exception {
+		Inventory inventory = new Inventory();
+		CoffeeMaker slow = new CoffeeMaker(new RecipeBook(), inventory);
+		slow.addRecipe(coffee);
+		CountDownLatch release = new CountDownLatch(1);
+		inventory.addListener((inv, before, after) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		CoffeeMakerServer single = new CoffeeMakerServer(slow, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+		ExecutorService buyer = Executors.newSingleThreadExecutor();
+		try (CoffeeMakerClient held = new CoffeeMakerClient(single.getAddress());
+				CoffeeMakerClient other = new CoffeeMakerClient(single.getAddress())) {
+			Future<Integer> change = buyer.submit(() -> held.makeCoffee(0, 60));
+			assertEquals("Coffee", other.getRecipes()[0].getName());
+			assertFalse(change.isDone());
+			release.countDown();
+			assertEquals(10, (int) change.get(10, TimeUnit.SECONDS));
+			assertArrayEquals(new int[] {12, 14, 14, 15}, other.checkInventory());
+		} finally {
+			release.countDown();
+			buyer.shutdown();
+			single.close();
+		}
+	}
+
+	/**
+	 * Recipes too large for one response are an error rather than a
+	 * frame the client cannot read, and a name too long to encode is
+	 * refused before it is sent.
+	 * @throws IOException
+	 */
+	@Test
+	public void testOversizedResponses() throws IOException {
+		char[] name = new char[30000];
+		Arrays.fill(name, 'c');
+		for (int i = 0; i < 3; i++) {
+			Recipe large = new Recipe(coffee);
+			large.setName(new String(name) + i);
+			assertTrue(coffeeMaker.addRecipe(large));
+		}
+		try {
+			client.getRecipes();
+			fail("Recipes larger than a frame should be refused");
+		} catch (ServerException e) {
+			assertEquals("Response is larger than " + CoffeeMakerProtocol.MAX_FRAME_BYTES + " bytes", e.getMessage());
+		}
+
+		Recipe tooLong = new Recipe(coffee);
+		tooLong.setName(new String(new char[WireFormat.MAX_STRING_BYTES + 1]).replace('\0', 'c'));
+		try {
+			client.addRecipe(tooLong);
+			fail("A name longer than a string holds should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Text of 65536 bytes is longer than 65535", e.getMessage());
+		}
+		assertArrayEquals(new int[] {15, 15, 15, 15}, client.checkInventory());
+	}
+}
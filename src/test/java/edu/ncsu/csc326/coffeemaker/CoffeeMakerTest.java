@@ -23,6 +23,9 @@ import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -118,14 +121,16 @@ public class CoffeeMakerTest {
     }
 
     /**
-     * Coffee maker can only save up to 3 recipe
+     * Coffee maker keeps accepting recipes past its initial four slots
      */
     @Test
     public void testAddRecipeMax() {
         assertTrue(coffeeMaker.addRecipe(recipe1));
         assertTrue(coffeeMaker.addRecipe(recipe2));
         assertTrue(coffeeMaker.addRecipe(recipe3));
-        assertFalse(coffeeMaker.addRecipe(recipe4));
+        assertTrue(coffeeMaker.addRecipe(recipe4));
+        assertTrue(coffeeMaker.addRecipe(recipe5));
+        assertEquals("Ultimate Coffee", coffeeMaker.getRecipes()[4].getName());
     }
 
     /**
@@ -350,7 +355,7 @@ public class CoffeeMakerTest {
                 .thenReturn(recipesArray);
         // verify
         assertEquals(25, mockCoffeeMaker.makeCoffee(0, 75));
-        verify(mockRecipeBook, times(4)).getRecipes();
+        verify(mockRecipeBook, times(1)).getRecipes();
     }
 
     /**
@@ -369,7 +374,7 @@ public class CoffeeMakerTest {
                 .thenReturn(recipesArray);
         // verify
         assertEquals(25, mockCoffeeMaker.makeCoffee(0, 25));
-        verify(mockRecipeBook, times(4)).getRecipes();
+        verify(mockRecipeBook, times(1)).getRecipes();
     }
 
     /**
@@ -388,7 +393,7 @@ public class CoffeeMakerTest {
                 .thenReturn(recipesArray);
         // verify
         mockCoffeeMaker.makeCoffee(0, -10);
-        verify(mockRecipeBook, times(2)).getRecipes();
+        verify(mockRecipeBook, times(1)).getRecipes();
     }
 
     /**
@@ -407,7 +412,7 @@ public class CoffeeMakerTest {
                 .thenReturn(recipesArray);
         // verify
         mockCoffeeMaker.makeCoffee(100, 25);
-        verify(mockRecipeBook, times(2)).getRecipes();
+        verify(mockRecipeBook, times(1)).getRecipes();
     }
 
     /** Add recipe5 which used large amount of ingredient
@@ -424,7 +429,7 @@ public class CoffeeMakerTest {
                 .thenReturn(recipesArray);
         // verify
         mockCoffeeMaker.makeCoffee(0, 50);
-        verify(mockRecipeBook, times(3)).getRecipes();
+        verify(mockRecipeBook, times(1)).getRecipes();
     }
 
     /** makeCoffee() with null recipe
@@ -502,4 +507,137 @@ public class CoffeeMakerTest {
         coffeeMaker.editRecipe(0, recipe2);
         assertNull(coffeeMaker.getRecipes()[0]);
     }
+
+    /**
+     * Given a coffee maker with one valid recipe and stock for five cups
+     * When many threads buy that recipe at the same time
+     * Then exactly five purchases succeed and no ingredient goes negative.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting
+     */
+    @Test
+    public void testMakeCoffeeConcurrentNoOversell() throws InterruptedException {
+        coffeeMaker.addRecipe(recipe1);
+        final AtomicInteger sold = new AtomicInteger();
+        Thread[] buyers = new Thread[8];
+        for (int i = 0; i < buyers.length; i++) {
+            buyers[i] = new Thread(() -> {
+                for (int j = 0; j < 10; j++) {
+                    if (coffeeMaker.makeCoffee(0, 50) == 0) {
+                        sold.incrementAndGet();
+                    }
+                }
+            });
+            buyers[i].start();
+        }
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+        assertEquals(5, sold.get());
+        assertEquals("Coffee: 0\nMilk: 10\nSugar: 10\nChocolate: 15\n", coffeeMaker.checkInventory());
+    }
+
+    /**
+     * Given a coffee maker with two recipes and stock for five coffees
+     * When a batch of orders arrives, some underpaid or for a missing recipe
+     * Then orders are filled in order until the coffee runs out, and
+     * every other order gets its money back.
+     */
+    @Test
+    public void testMakeCoffeeBatch() {
+        coffeeMaker.addRecipe(recipe1);
+        coffeeMaker.addRecipe(recipe3);
+        int[] recipes = {0, 1, 0, 3, 0, 1, 0, 0};
+        int[] paid = {60, 100, 40, 50, 50, 100, 75, 50};
+
+        int[] change = coffeeMaker.makeCoffeeBatch(recipes, paid);
+
+        assertArrayEquals(new int[] {10, 0, 40, 50, 0, 0, 25, 50}, change);
+        assertEquals("Coffee: 0\nMilk: 6\nSugar: 10\nChocolate: 15\n", coffeeMaker.checkInventory());
+    }
+
+    /**
+     * A batch with a different number of recipes and payments is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMakeCoffeeBatchMismatchedOrders() {
+        coffeeMaker.makeCoffeeBatch(new int[] {0, 1}, new int[] {50});
+    }
+
+    /**
+     * Given a coffee maker with the default inventory
+     * When we add inventory as numbers
+     * Then every ingredient is added.
+     *
+     * @throws InventoryException if an amount is negative.
+     */
+    @Test
+    public void testAddInventoryTyped() throws InventoryException {
+        coffeeMaker.addInventory(1, 2, 3, 4);
+        assertEquals("Coffee: 16\nMilk: 17\nSugar: 18\nChocolate: 19\n", coffeeMaker.checkInventory());
+    }
+
+    /**
+     * Given a delivery with one negative amount
+     * Then nothing from the delivery is added.
+     */
+    @Test
+    public void testRestockNegativeAddsNothing() {
+        try {
+            coffeeMaker.restock(new int[] {5, 5, -1, 5});
+            fail("A negative amount should be refused");
+        } catch (InventoryException e) {
+            assertEquals("Units of sugar must be a positive integer", e.getMessage());
+        }
+        assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", coffeeMaker.checkInventory());
+    }
+
+    /**
+     * Given another thread holding the coffee maker's monitor
+     * Then reading the inventory still completes without waiting.
+     */
+    @Test(timeout = 5000)
+    public void testCheckInventoryTakesNoLock() throws InterruptedException {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            public void run() {
+                synchronized (coffeeMaker) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        holder.start();
+        locked.await();
+        try {
+            assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 15\n", coffeeMaker.checkInventory());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+
+    /**
+     * Given a recipe that lists a registered ingredient never stocked,
+     * with no units of it
+     * Then single, batch and combined orders for it are all made.
+     *
+     * @throws RecipeException if an amount is negative.
+     */
+    @Test
+    public void testRecipeWithUnstockedIngredient() throws RecipeException {
+        recipe1.setAmount(IngredientCatalog.register("Cardamom"), 0);
+        coffeeMaker.addRecipe(recipe1);
+
+        assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+        assertArrayEquals(new int[] {0, 0}, coffeeMaker.makeCoffeeBatch(new int[] {0, 0}, new int[] {50, 50}));
+        coffeeMaker.setOrderCombining(true);
+        assertEquals(0, coffeeMaker.makeCoffee(0, 50));
+        assertEquals("Coffee: 3\nMilk: 11\nSugar: 11\nChocolate: 15\n", coffeeMaker.checkInventory());
+    }
 }
@@ -0,0 +1,136 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for DeliveryImporter class.
+ */
+public class DeliveryImporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CoffeeMakerFleet fleet;
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		fleet = new CoffeeMakerFleet();
+		fleet.addMachine();
+		fleet.addMachine();
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private Path manifest(String contents) throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * Given a manifest with a header and rows for two machines
+	 * Then every row is added to its machine.
+	 * @throws IOException
+	 */
+	@Test
+	public void testImport() throws IOException {
+		Path file = manifest("machine,ingredient,units\n0,Coffee,5\n1,chocolate,3\r\n0, milk ,2\n0,3,1");
+
+		DeliveryImporter.Report report = new DeliveryImporter(fleet).importFile(file);
+
+		assertEquals(4, report.getRowsApplied());
+		assertEquals(0, report.getBadRowCount());
+		assertEquals("Coffee: 20\nMilk: 17\nSugar: 15\nChocolate: 16\n", fleet.getMachine(0).checkInventory());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 18\n", fleet.getMachine(1).checkInventory());
+	}
+
+	/**
+	 * Given a manifest with bad rows
+	 * Then each bad row is reported with its line and the good rows
+	 * are still added.
+	 * @throws IOException
+	 */
+	@Test
+	public void testBadRows() throws IOException {
+		Path file = manifest("0,Coffee,1\n7,Coffee,1\n0,Gravel,1\n0,Sugar,-1\n0,Sugar\n\n0,Sugar,99999999999\n1,Sugar,4\n");
+
+		DeliveryImporter.Report report = new DeliveryImporter(fleet).importFile(file);
+
+		assertEquals(2, report.getRowsApplied());
+		assertEquals(5, report.getBadRowCount());
+		assertEquals("Line 2: Unknown machine 7", report.getBadRows().get(0).toString());
+		assertEquals("Line 3: Unknown ingredient Gravel", report.getBadRows().get(1).toString());
+		assertEquals("Line 4: Units of sugar must be a positive integer", report.getBadRows().get(2).toString());
+		assertEquals("Line 5: Expected machine,ingredient,units", report.getBadRows().get(3).toString());
+		assertEquals(7, report.getBadRows().get(4).getLine());
+		assertEquals("Coffee: 16\nMilk: 15\nSugar: 15\nChocolate: 15\n", fleet.getMachine(0).checkInventory());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 19\nChocolate: 15\n", fleet.getMachine(1).checkInventory());
+	}
+
+	/**
+	 * Given chunks smaller than the manifest
+	 * Then rows split across chunks are still read whole, and a row
+	 * longer than a chunk is reported and skipped.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSmallChunks() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			contents.append(i % 2).append(",Milk,1\n");
+			if (i == 20) {
+				contents.append("1,Milk,000000000000000000000000000001\n");
+			}
+		}
+		Path file = manifest(contents.toString());
+
+		DeliveryImporter.Report report = new DeliveryImporter(fleet, 16, pool).importFile(file);
+
+		assertEquals(50, report.getRowsApplied());
+		assertEquals(1, report.getBadRowCount());
+		assertEquals(22, report.getBadRows().get(0).getLine());
+		assertEquals("Coffee: 15\nMilk: 40\nSugar: 15\nChocolate: 15\n", fleet.getMachine(0).checkInventory());
+		assertEquals("Coffee: 15\nMilk: 40\nSugar: 15\nChocolate: 15\n", fleet.getMachine(1).checkInventory());
+	}
+
+	/**
+	 * Given a manifest large enough to be parsed in parallel slices
+	 * Then every row is added exactly once and bad rows keep their
+	 * line numbers.
+	 * @throws IOException
+	 */
+	@Test
+	public void testParallelSlices() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		int rows = 200000;
+		for (int i = 0; i < rows; i++) {
+			contents.append(i % 2 == 0 ? "0,Sugar,1\n" : "1,Chocolate,2\n");
+		}
+		contents.append("0,Sugar,x\n");
+		Path file = manifest(contents.toString());
+
+		DeliveryImporter.Report report = new DeliveryImporter(fleet, 512 << 10, pool).importFile(file);
+
+		assertEquals(rows, report.getRowsApplied());
+		assertEquals(rows + 1, report.getBadRows().get(0).getLine());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 100015\nChocolate: 15\n", fleet.getMachine(0).checkInventory());
+		assertEquals("Coffee: 15\nMilk: 15\nSugar: 15\nChocolate: 200015\n", fleet.getMachine(1).checkInventory());
+	}
+}
@@ -0,0 +1,141 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for IngredientCatalog and for recipes and inventories
+ * that use ingredients beyond the built-in four.
+ */
+public class IngredientCatalogTest {
+
+	/**
+	 * The built-in ingredients keep their ids and registering a name
+	 * twice, in any case, gives the same id.
+	 */
+	@Test
+	public void testRegister() {
+		assertEquals(IngredientCatalog.COFFEE, IngredientCatalog.idOf("coffee"));
+		assertEquals(IngredientCatalog.CHOCOLATE, IngredientCatalog.register("Chocolate"));
+		int oatMilk = IngredientCatalog.register("Oat Milk");
+		assertTrue(oatMilk >= IngredientCatalog.NUM_BUILT_IN);
+		assertEquals(oatMilk, IngredientCatalog.register("oat milk"));
+		assertEquals("Oat Milk", IngredientCatalog.nameOf(oatMilk));
+		assertEquals(-1, IngredientCatalog.idOf("Sawdust"));
+	}
+
+	/**
+	 * Registering an empty name is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testRegisterEmpty() {
+		IngredientCatalog.register(" ");
+	}
+
+	/**
+	 * A recipe that uses a registered ingredient can only be made once
+	 * the inventory has been stocked with it, and making it takes the
+	 * ingredient out of the inventory.
+	 * @throws RecipeException
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testRecipeWithExtraIngredient() throws RecipeException, InventoryException {
+		int caramel = IngredientCatalog.register("Caramel");
+		Recipe latte = new Recipe();
+		latte.setName("Caramel Latte");
+		latte.setAmtCoffee("2");
+		latte.setAmtMilk("3");
+		latte.setAmount(caramel, "4");
+		assertEquals(4, latte.getAmount(caramel));
+
+		Inventory inventory = new Inventory();
+		assertFalse(inventory.useIngredients(latte));
+		inventory.addAmount(caramel, "6");
+		assertTrue(inventory.useIngredients(latte));
+		assertEquals(2, inventory.getAmount(caramel));
+		assertEquals(13, inventory.getCoffee());
+		assertFalse(inventory.useIngredients(latte));
+		assertTrue(inventory.toString().endsWith("Caramel: 2\n"));
+	}
+
+	/**
+	 * Extra ingredients are checked like the built-in ones.
+	 * @throws RecipeException
+	 */
+	@Test(expected = RecipeException.class)
+	public void testSetAmountNegative() throws RecipeException {
+		new Recipe().setAmount(IngredientCatalog.register("Vanilla Syrup"), "-1");
+	}
+
+	/**
+	 * A recipe with thirty ingredients is made exactly as often as its
+	 * scarcest ingredient allows.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testThirtyIngredients() throws RecipeException {
+		Recipe recipe = new Recipe();
+		Inventory inventory = new Inventory();
+		int last = -1;
+		for (int i = 0; i < 30; i++) {
+			last = IngredientCatalog.register("Ingredient " + i);
+			recipe.setAmount(last, "1");
+			inventory.setAmount(last, 3);
+		}
+		inventory.setAmount(last, 2);
+		assertTrue(inventory.useIngredients(recipe));
+		assertTrue(inventory.useIngredients(recipe));
+		assertFalse(inventory.enoughIngredients(recipe));
+		assertEquals(0, inventory.getAmount(last));
+		assertEquals(1, inventory.getAmount(last - 1));
+	}
+
+	/**
+	 * Amounts for ids outside the catalog are refused with the usual
+	 * exceptions, and leave the stock vector as it was.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testUnknownIngredient() throws InventoryException {
+		Inventory inventory = new Inventory();
+		int unknown = IngredientCatalog.size() + 35;
+		int[] delivery = new int[unknown + 1];
+		delivery[unknown] = 1;
+		try {
+			inventory.restock(delivery);
+			fail("An unknown ingredient should be refused");
+		} catch (InventoryException e) {
+			assertEquals("There is no ingredient " + unknown, e.getMessage());
+		}
+		delivery[unknown] = -1;
+		try {
+			inventory.restock(delivery);
+			fail("An unknown ingredient should be refused");
+		} catch (InventoryException e) {
+			assertEquals("There is no ingredient " + unknown, e.getMessage());
+		}
+		try {
+			inventory.addAmount(-1, 3);
+			fail("An unknown ingredient should be refused");
+		} catch (InventoryException e) {
+			assertEquals("There is no ingredient -1", e.getMessage());
+		}
+		try {
+			new Recipe().setAmount(-1, 3);
+			fail("An unknown ingredient should be refused");
+		} catch (RecipeException e) {
+			assertEquals("There is no ingredient -1", e.getMessage());
+		}
+		inventory.setAmount(unknown, 3);
+		inventory.restock(new int[] {1, 0, 0, 0, 0, 0});
+		assertEquals("Coffee: 16\nMilk: 15\nSugar: 15\nChocolate: 15\n", inventory.toString());
+	}
+}
@@ -0,0 +1,137 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+
+/**
+ * Unit tests for the structured inventory snapshots.
+ */
+public class InventorySnapshotTest {
+
+	private CoffeeMaker coffeeMaker;
+
+	@Before
+	public void setUp() throws InventoryException {
+		coffeeMaker = new CoffeeMaker();
+		coffeeMaker.addInventory(1, 2, 3, 4);
+	}
+
+	/**
+	 * A holder reused across polls sees every change.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testHolder() throws InventoryException {
+		InventorySnapshot holder = new InventorySnapshot();
+		assertSame(holder, coffeeMaker.checkInventory(holder));
+		assertEquals(4, holder.getLength());
+		assertEquals(16, holder.getCoffee());
+		assertEquals(19, holder.getChocolate());
+
+		coffeeMaker.addInventory(1, 0, 0, 0);
+		coffeeMaker.checkInventory(holder);
+		assertEquals(17, holder.getCoffee());
+		assertEquals(0, holder.getAmount(40));
+	}
+
+	/**
+	 * An array gets as many counters as fit, and the result says how
+	 * many there are.
+	 */
+	@Test
+	public void testArray() {
+		int[] units = new int[3];
+		assertEquals(4, coffeeMaker.checkInventory(units));
+		assertArrayEquals(new int[] {16, 17, 18}, units);
+	}
+
+	/**
+	 * A buffer gets the count and then every counter, and a buffer
+	 * that is too small is left untouched.
+	 */
+	@Test
+	public void testBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		assertEquals(20, coffeeMaker.checkInventory(buffer));
+		buffer.flip();
+		assertEquals(4, buffer.getInt());
+		assertEquals(16, buffer.getInt());
+		assertEquals(17, buffer.getInt());
+		assertEquals(18, buffer.getInt());
+		assertEquals(19, buffer.getInt());
+
+		ByteBuffer small = ByteBuffer.allocate(8);
+		try {
+			coffeeMaker.checkInventory(small);
+			fail("A buffer that is too small should be refused");
+		} catch (BufferOverflowException e) {
+			assertEquals(0, small.position());
+		}
+	}
+
+	/**
+	 * A holder stays current until the inventory changes.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testIsCurrent() throws InventoryException {
+		Inventory inventory = new Inventory();
+		InventorySnapshot holder = inventory.snapshot(new InventorySnapshot());
+		assertTrue(inventory.isCurrent(holder));
+		assertFalse(new Inventory().isCurrent(holder));
+
+		inventory.addCoffee(0);
+		assertFalse(inventory.isCurrent(holder));
+		inventory.snapshot(holder);
+		assertTrue(inventory.isCurrent(holder));
+	}
+
+	/**
+	 * Given readers polling while orders are sold
+	 * Then every snapshot shows whole orders only: a recipe takes one
+	 * unit of coffee and one of milk, so the two always match.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConsistentWhileSelling() throws Exception {
+		final Inventory inventory = new Inventory();
+		inventory.setCoffee(100000);
+		inventory.setMilk(100000);
+		final Recipe recipe = new Recipe();
+		recipe.setAmtCoffee(1);
+		recipe.setAmtMilk(1);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicBoolean torn = new AtomicBoolean();
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				InventorySnapshot holder = new InventorySnapshot();
+				while (!done.get()) {
+					inventory.snapshot(holder);
+					if (holder.getCoffee() != holder.getMilk()) {
+						torn.set(true);
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < 100000; i++) {
+			inventory.useIngredients(recipe);
+		}
+		done.set(true);
+		reader.join();
+		assertFalse(torn.get());
+	}
+}
@@ -0,0 +1,259 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Journal class.
+ */
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private Recipe coffee;
+    private Recipe mocha;
+    private Recipe black;
+
+    @Before
+    public void setUp() throws RecipeException {
+        directory = folder.getRoot().toPath();
+        coffee = createRecipe("Coffee", "0", "1", "1", "1", "50");
+        mocha = createRecipe("Mocha", "2", "1", "1", "1", "75");
+        black = createRecipe("Black", "0", "1", "0", "0", "10");
+    }
+
+    private static Recipe createRecipe(String name, String amtChocolate, String amtCoffee, String amtMilk, String amtSugar, String price) throws RecipeException {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        recipe.setAmtChocolate(amtChocolate);
+        recipe.setAmtCoffee(amtCoffee);
+        recipe.setAmtMilk(amtMilk);
+        recipe.setAmtSugar(amtSugar);
+        recipe.setPrice(price);
+        return recipe;
+    }
+
+    /**
+     * Given sales and menu changes recorded by a journal
+     * When a new recipe book and inventory open the same journal
+     * Then they are restored to the recorded state, ids included.
+     */
+    @Test
+    public void testRecoversInventoryAndRecipes() throws IOException {
+        RecipeBook recipeBook = new RecipeBook();
+        Inventory inventory = new Inventory();
+        Journal journal = Journal.open(directory, recipeBook, inventory);
+        CoffeeMaker coffeeMaker = new CoffeeMaker(recipeBook, inventory);
+        coffeeMaker.addRecipe(coffee);
+        coffeeMaker.addRecipe(mocha);
+        coffeeMaker.makeCoffee(0, 50);
+        coffeeMaker.makeCoffee(1, 75);
+        inventory.setMilk(40);
+        coffeeMaker.deleteRecipe(0);
+        int mochaId = recipeBook.getRecipeId("Mocha");
+        journal.close();
+
+        RecipeBook recoveredBook = new RecipeBook();
+        Inventory recoveredInventory = new Inventory();
+        Journal.open(directory, recoveredBook, recoveredInventory).close();
+
+        assertEquals(inventory.toString(), recoveredInventory.toString());
+        assertNull(recoveredBook.getRecipe("Coffee"));
+        assertEquals(mochaId, recoveredBook.getRecipeId("Mocha"));
+        assertEquals(75, recoveredBook.getRecipes()[1].getPrice());
+        assertTrue(recoveredBook.addRecipe(coffee));
+        assertNotEquals(-1, recoveredBook.getRecipeId("Coffee"));
+        assertTrue(recoveredBook.getRecipeId("Coffee") > mochaId);
+    }
+
+    /**
+     * Given more sales than fit in one small segment
+     * Then the journal moves on to new segments, keeps only the newest
+     * one and still recovers every sale.
+     */
+    @Test
+    public void testRollsOverToNewSegments() throws IOException {
+        RecipeBook recipeBook = new RecipeBook();
+        Inventory inventory = new Inventory();
+        inventory.setCoffee(100000);
+        Journal journal = Journal.open(directory, recipeBook, inventory, 4096);
+        CoffeeMaker coffeeMaker = new CoffeeMaker(recipeBook, inventory);
+        coffeeMaker.addRecipe(black);
+        for (int i = 0; i < 1000; i++) {
+            coffeeMaker.makeCoffee(0, 10);
+        }
+        journal.close();
+
+        assertEquals(1, directory.toFile().list().length);
+        Inventory recovered = new Inventory();
+        Journal.open(directory, new RecipeBook(), recovered, 4096).close();
+        assertEquals(99000, recovered.getCoffee());
+    }
+
+    /**
+     * Given a new segment that cannot be created when the current one fills
+     * Then sales carry on without seeing the failure, and once segments can
+     * be created again the journal catches up and recovers every sale.
+     */
+    @Test
+    public void testFailedRollover() throws IOException {
+        RecipeBook recipeBook = new RecipeBook();
+        Inventory inventory = new Inventory();
+        inventory.setCoffee(100000);
+        Journal journal = Journal.open(directory, recipeBook, inventory, 4096);
+        CoffeeMaker coffeeMaker = new CoffeeMaker(recipeBook, inventory);
+        coffeeMaker.addRecipe(black);
+        File blocker = new File(directory.toFile(), "journal-0000000000000002.log");
+        assertTrue(blocker.mkdir());
+        final AtomicInteger warnings = new AtomicInteger();
+        Handler counter = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                    warnings.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger log = Logger.getLogger(Journal.class.getName());
+        log.addHandler(counter);
+        try {
+            for (int i = 0; i < 300; i++) {
+                assertEquals(0, coffeeMaker.makeCoffee(0, 10));
+            }
+        } finally {
+            log.removeHandler(counter);
+        }
+        assertNotNull(journal.getFailure());
+        assertEquals(1, warnings.get());
+
+        assertTrue(blocker.delete());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journal.getFailure() != null && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertNull(journal.getFailure());
+        for (int i = 0; i < 300; i++) {
+            coffeeMaker.makeCoffee(0, 10);
+        }
+        assertNull(journal.getFailure());
+        journal.close();
+
+        Inventory recovered = new Inventory();
+        Journal.open(directory, new RecipeBook(), recovered, 4096).close();
+        assertEquals(99400, recovered.getCoffee());
+    }
+
+    /**
+     * Given concurrent sales sharing the flusher's forces
+     * Then every sale is in the journal.
+     *
+     * @throws Exception if a worker fails or the journal cannot be read
+     */
+    @Test
+    public void testConcurrentSales() throws Exception {
+        RecipeBook recipeBook = new RecipeBook();
+        Inventory inventory = new Inventory();
+        inventory.setCoffee(10000);
+        Journal journal = Journal.open(directory, recipeBook, inventory);
+        final CoffeeMaker coffeeMaker = new CoffeeMaker(recipeBook, inventory);
+        coffeeMaker.addRecipe(black);
+        Thread[] workers = new Thread[4];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < 200; j++) {
+                    coffeeMaker.makeCoffee(0, 10);
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        journal.close();
+
+        Inventory recovered = new Inventory();
+        Journal.open(directory, new RecipeBook(), recovered).close();
+        assertEquals(9200, recovered.getCoffee());
+    }
+
+    /**
+     * Given a journal whose last record was torn by a crash
+     * Then recovery keeps every intact record before it.
+     */
+    @Test
+    public void testIgnoresTornRecord() throws IOException {
+        Inventory inventory = new Inventory();
+        Journal journal = Journal.open(directory, new RecipeBook(), inventory, 4096);
+        inventory.setCoffee(20);
+        journal.close();
+        File segment = directory.toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            int end = 8;
+            while (true) {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                end += 8 + length;
+            }
+            file.seek(end);
+            file.writeInt(13);
+            file.writeInt(12345);
+            file.write(new byte[] {1, 2, 3});
+        }
+
+        Inventory recovered = new Inventory();
+        Journal.open(directory, new RecipeBook(), recovered, 4096).close();
+        assertEquals(20, recovered.getCoffee());
+    }
+
+    /**
+     * Given a journal directory holding only an unreadable segment
+     * When a journal is opened there
+     * Then the segment is moved aside and a new journal starts.
+     *
+     * @throws IOException if the journal cannot be read or created
+     */
+    @Test
+    public void testSetsAsideUnreadableSegment() throws IOException {
+        Path segment = directory.resolve("journal-0000000000000001.log");
+        Files.write(segment, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        Inventory inventory = new Inventory();
+        inventory.setCoffee(30);
+        Journal journal = Journal.open(directory, new RecipeBook(), inventory, 4096);
+        inventory.setCoffee(40);
+        journal.close();
+        assertTrue(Files.exists(directory.resolve("journal-0000000000000001.log.unreadable")));
+
+        Inventory recovered = new Inventory();
+        Journal.open(directory, new RecipeBook(), recovered, 4096).close();
+        assertEquals(40, recovered.getCoffee());
+    }
+}
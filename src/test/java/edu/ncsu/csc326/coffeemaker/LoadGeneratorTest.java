@@ -0,0 +1,91 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for LoadGenerator class.
+ */
+public class LoadGeneratorTest {
+
+	private LoadGenerator.Settings settings;
+
+	@Before
+	public void setUp() {
+		settings = new LoadGenerator.Settings();
+		settings.setOrderThreads(1);
+		settings.setOrdersPerThread(5000);
+		settings.setPollerThreads(0);
+		settings.setRecipeMix(3, 1);
+	}
+
+	private LoadGenerator.Interval run() throws RecipeException, InterruptedException {
+		CoffeeMaker coffeeMaker = new CoffeeMaker();
+		Recipe coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setPrice(50);
+		coffee.setAmtCoffee(3);
+		coffeeMaker.addRecipe(coffee);
+		Recipe mocha = new Recipe();
+		mocha.setName("Mocha");
+		mocha.setPrice(75);
+		mocha.setAmtCoffee(2);
+		mocha.setAmtChocolate(2);
+		coffeeMaker.addRecipe(mocha);
+		return new LoadGenerator(coffeeMaker, settings).run().getTotal();
+	}
+
+	/**
+	 * Given the same seed and one order thread
+	 * Then two runs end with exactly the same outcomes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameSeedSameOutcomes() throws Exception {
+		LoadGenerator.Interval first = run();
+		LoadGenerator.Interval second = run();
+
+		assertEquals(5000, first.getOrders());
+		for (Outcome outcome : Outcome.values()) {
+			assertEquals(first.getCount(outcome), second.getCount(outcome));
+		}
+		assertTrue(first.getCount(Outcome.NOT_ENOUGH_MONEY) > 0);
+		assertEquals(0, first.getCount(Outcome.NO_RECIPE));
+	}
+
+	/**
+	 * A different seed gives a different order stream.
+	 * @throws Exception
+	 */
+	@Test
+	public void testDifferentSeed() throws Exception {
+		LoadGenerator.Interval first = run();
+		settings.setSeed(327);
+		LoadGenerator.Interval second = run();
+
+		assertNotEquals(first.getCount(Outcome.NOT_ENOUGH_MONEY), second.getCount(Outcome.NOT_ENOUGH_MONEY));
+	}
+
+	/**
+	 * Given several order threads and pollers
+	 * Then every order is counted once and the pollers ran.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentLoad() throws Exception {
+		settings.setOrderThreads(4);
+		settings.setPollerThreads(2);
+		settings.setIntervalMillis(10);
+		LoadGenerator.Interval total = run();
+
+		assertEquals(20000, total.getOrders());
+		assertEquals(20000, total.getLatency().getCount());
+	}
+}
@@ -0,0 +1,175 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for MenuAvailability.
+ */
+public class MenuAvailabilityTest {
+
+	private CoffeeMaker coffeeMaker;
+	private MenuAvailability menu;
+	private Recipe coffee;
+	private Recipe mocha;
+
+	@Before
+	public void setUp() throws RecipeException {
+		coffeeMaker = new CoffeeMaker();
+		coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setAmtMilk(1);
+		coffee.setPrice(50);
+		mocha = new Recipe();
+		mocha.setName("Mocha");
+		mocha.setAmtCoffee(2);
+		mocha.setAmtChocolate(5);
+		mocha.setPrice(75);
+		coffeeMaker.addRecipe(coffee);
+		coffeeMaker.addRecipe(mocha);
+		menu = coffeeMaker.getMenuAvailability();
+	}
+
+	/**
+	 * The servings of each recipe follow sales and restocks.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testServingsFollowStock() throws InventoryException {
+		assertSame(menu, coffeeMaker.getMenuAvailability());
+		assertEquals(5, menu.getServings(0));
+		assertEquals(3, menu.getServings(1));
+		assertEquals(0, menu.getServings(2));
+
+		coffeeMaker.makeCoffee(1, 75);
+		assertEquals(4, menu.getServings(0));
+		assertEquals(2, menu.getServings(1));
+
+		coffeeMaker.addInventory(0, 0, 0, 10);
+		assertEquals(4, menu.getServings(0));
+		assertEquals(4, menu.getServings(1));
+		coffeeMaker.addInventory(2, 0, 0, 0);
+		assertEquals(5, menu.getServings(0));
+		assertEquals(4, menu.getServings(1));
+	}
+
+	/**
+	 * A recipe goes unavailable when its last serving is sold and
+	 * available again after a restock.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testAvailableBits() throws InventoryException {
+		long[] bits = new long[2];
+		assertEquals(4, menu.getAvailable(bits));
+		assertArrayEquals(new long[] {3L, 0L}, bits);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, coffeeMaker.makeCoffee(1, 75));
+		}
+		assertTrue(menu.isAvailable(0));
+		assertFalse(menu.isAvailable(1));
+		assertFalse(menu.isAvailable(1000));
+		menu.getAvailable(bits);
+		assertArrayEquals(new long[] {1L, 0L}, bits);
+
+		coffeeMaker.addInventory(0, 0, 0, 5);
+		assertTrue(menu.isAvailable(1));
+	}
+
+	/**
+	 * Adding, editing and deleting recipes recounts their slots.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testRecipeChanges() throws RecipeException {
+		Recipe latte = new Recipe();
+		latte.setName("Latte");
+		latte.setAmtMilk(4);
+		coffeeMaker.addRecipe(latte);
+		assertEquals(3, menu.getServings(2));
+
+		Recipe stronger = new Recipe(coffee);
+		stronger.setAmtCoffee(10);
+		coffeeMaker.editRecipe(0, stronger);
+		assertEquals(1, menu.getServings(0));
+
+		coffeeMaker.deleteRecipe(1);
+		assertEquals(0, menu.getServings(1));
+		assertFalse(menu.isAvailable(1));
+
+		Recipe water = new Recipe();
+		water.setName("Water");
+		coffeeMaker.addRecipe(water);
+		assertEquals(MenuAvailability.UNLIMITED, menu.getServings(1));
+	}
+
+	/**
+	 * Slots beyond the first 64 grow the bitset.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testManySlots() throws RecipeException {
+		for (int i = 0; i < 70; i++) {
+			Recipe r = new Recipe(coffee);
+			r.setName("Coffee " + i);
+			r.setAmtCoffee(i < 68 ? 3 : 20);
+			coffeeMaker.addRecipe(r);
+		}
+		assertTrue(menu.isAvailable(69));
+		assertFalse(menu.isAvailable(70));
+		long[] bits = new long[2];
+		assertEquals(128, menu.getAvailable(bits));
+		assertEquals(-1L, bits[0]);
+		assertEquals(0x3fL, bits[1]);
+	}
+
+	/**
+	 * After concurrent sales and restocks have finished, the servings
+	 * match a count taken from the final stock.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentChanges() throws Exception {
+		coffeeMaker.addInventory(1000, 1000, 0, 1000);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int slot = t % 2;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					coffeeMaker.makeCoffee(slot, 100);
+					if (i % 10 == 0) {
+						try {
+							coffeeMaker.addInventory(3, 1, 0, 5);
+						} catch (InventoryException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int[] stock = new int[4];
+		coffeeMaker.checkInventory(stock);
+		assertEquals(Math.min(stock[0] / 3, stock[1]), menu.getServings(0));
+		assertEquals(Math.min(stock[0] / 2, stock[3] / 5), menu.getServings(1));
+	}
+}
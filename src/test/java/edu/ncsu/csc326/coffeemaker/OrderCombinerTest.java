@@ -0,0 +1,191 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for OrderCombiner and combined orders in CoffeeMaker.
+ */
+public class OrderCombinerTest {
+
+	private Inventory inventory;
+	private Recipe coffee;
+
+	@Before
+	public void setUp() throws RecipeException {
+		inventory = new Inventory();
+		coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setAmtMilk(1);
+		coffee.setPrice(50);
+	}
+
+	/**
+	 * Several servings are taken in one step, as many as the stock
+	 * allows.
+	 */
+	@Test
+	public void testUseIngredientsMultiplied() {
+		final AtomicInteger changes = new AtomicInteger();
+		inventory.addListener((inv, before, after) -> changes.incrementAndGet());
+		assertEquals(3, inventory.useIngredients(coffee, 3));
+		assertEquals(6, inventory.getCoffee());
+		assertEquals(12, inventory.getMilk());
+		assertEquals(2, inventory.useIngredients(coffee, 5));
+		assertEquals(0, inventory.getCoffee());
+		assertEquals(0, inventory.useIngredients(coffee, 1));
+		assertEquals(0, inventory.useIngredients(coffee, -1));
+		assertEquals(2, changes.get());
+	}
+
+	/**
+	 * A single order through the combiner behaves like a plain one.
+	 */
+	@Test
+	public void testSingleOrder() {
+		OrderCombiner combiner = new OrderCombiner(inventory);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(combiner.useIngredients(0, coffee));
+		}
+		assertFalse(combiner.useIngredients(0, coffee));
+		assertTrue(combiner.useIngredients(7, new Recipe()));
+		assertEquals(0, inventory.getCoffee());
+	}
+
+	/**
+	 * Concurrent orders through a combining coffee maker sell exactly
+	 * as many servings as the stock holds, and no more.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testConcurrentOrders() throws Exception {
+		final CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		coffeeMaker.addRecipe(coffee);
+		Recipe latte = new Recipe(coffee);
+		latte.setName("Latte");
+		latte.setAmtCoffee(1);
+		latte.setAmtMilk(3);
+		coffeeMaker.addRecipe(latte);
+		coffeeMaker.setOrderCombining(true);
+		coffeeMaker.addInventory(3000, 3000, 0, 0);
+		final AtomicInteger sold = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int slot = t % 2;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					if (coffeeMaker.makeCoffee(slot, 50) == 0) {
+						sold.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(inventory.getCoffee() >= 0);
+		assertTrue(inventory.getMilk() >= 0);
+		int usedCoffee = 3015 - inventory.getCoffee();
+		int usedMilk = 3015 - inventory.getMilk();
+		// 3c + l = usedCoffee and c + 3l = usedMilk for c coffees and l lattes
+		assertEquals(0, (3 * usedCoffee - usedMilk) % 8);
+		assertEquals(sold.get(), (3 * usedCoffee - usedMilk) / 8 + (3 * usedMilk - usedCoffee) / 8);
+		// An order is refused only once the stock can no longer make it.
+		assertTrue(sold.get() == 8000 || inventory.getCoffee() < 3 || inventory.getMilk() < 3);
+	}
+
+	/**
+	 * When a listener throws during a combined update, every order in
+	 * that update gets the exception instead of waiting forever, and
+	 * the lane keeps working once the listener is gone.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testListenerThrowsMidCombine() throws Exception {
+		final OrderCombiner combiner = new OrderCombiner(inventory);
+		inventory.setCoffee(3000);
+		inventory.setMilk(3000);
+		InventoryListener failing = (inv, before, after) -> {
+			throw new IllegalStateException("journal unavailable");
+		};
+		inventory.addListener(failing);
+		final AtomicInteger failed = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					try {
+						combiner.useIngredients(0, coffee);
+					} catch (IllegalStateException e) {
+						failed.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(400, failed.get());
+
+		inventory.removeListener(failing);
+		assertTrue(combiner.useIngredients(0, coffee));
+	}
+
+	/**
+	 * With combining on, batches and single sales for the same recipe
+	 * share its lane and never sell more than the stock holds.
+	 * @throws Exception
+	 */
+	@Test(timeout = 30000)
+	public void testBatchesJoinLanes() throws Exception {
+		final CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		coffeeMaker.addRecipe(coffee);
+		coffeeMaker.setOrderCombining(true);
+		inventory.setCoffee(3000);
+		inventory.setMilk(3000);
+		final AtomicInteger sold = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final boolean batches = t % 2 == 0;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					if (batches) {
+						for (int change : coffeeMaker.makeCoffeeBatch(new int[] {0, 0}, new int[] {50, 50})) {
+							if (change == 0) {
+								sold.incrementAndGet();
+							}
+						}
+					} else if (coffeeMaker.makeCoffee(0, 50) == 0) {
+						sold.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1000, sold.get());
+		assertEquals(0, inventory.getCoffee());
+		assertEquals(2000, inventory.getMilk());
+	}
+}
@@ -0,0 +1,203 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for RecipeBookLeader and RecipeBookFollower.
+ */
+public class RecipeBookReplicationTest {
+
+	private LoopbackTransport transport;
+	private RecipeBook leaderBook;
+	private RecipeBookLeader leader;
+	private RecipeBook followerBook;
+	private RecipeBookFollower follower;
+
+	@Before
+	public void setUp() {
+		transport = new LoopbackTransport();
+		leaderBook = new RecipeBook();
+		leader = RecipeBookLeader.lead(leaderBook, 0, transport, 4);
+		followerBook = new RecipeBook();
+		follower = RecipeBookFollower.follow(followerBook, 1, 0, transport);
+	}
+
+	private static Recipe recipe(String name, int price) throws RecipeException {
+		Recipe r = new Recipe();
+		r.setName(name);
+		r.setPrice(price);
+		r.setAmtCoffee(2);
+		return r;
+	}
+
+	private void assertSameBook() {
+		assertEquals(leaderBook.getVersion(), followerBook.getVersion());
+		Recipe[] expected = leaderBook.getRecipes();
+		Recipe[] actual = followerBook.getRecipes();
+		for (int slot = 0; slot < Math.max(expected.length, actual.length); slot++) {
+			Recipe e = slot < expected.length ? expected[slot] : null;
+			Recipe a = slot < actual.length ? actual[slot] : null;
+			assertEquals(e == null, a == null);
+			if (e != null) {
+				assertEquals(e.getName(), a.getName());
+				assertEquals(e.getPrice(), a.getPrice());
+				assertEquals(e.getAmtCoffee(), a.getAmtCoffee());
+				assertEquals(leaderBook.snapshot().getRecipeIdAt(slot), followerBook.snapshot().getRecipeIdAt(slot));
+			}
+		}
+	}
+
+	/**
+	 * Adds, edits and deletes reach a follower that polls.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testPollDeltas() throws RecipeException {
+		leaderBook.addRecipe(recipe("Coffee", 50));
+		leaderBook.addRecipe(recipe("Mocha", 75));
+		assertTrue(follower.poll());
+		assertSameBook();
+		assertEquals("Mocha", followerBook.getRecipe("Mocha").getName());
+
+		leaderBook.editRecipe(0, recipe("Coffee", 60));
+		leaderBook.deleteRecipe(1);
+		follower.poll();
+		assertSameBook();
+		assertNull(followerBook.getRecipe("Mocha"));
+		assertEquals(60, followerBook.getRecipe("Coffee").getPrice());
+	}
+
+	/**
+	 * A delta is small and applying it again changes nothing.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testDeltaIdempotent() throws RecipeException {
+		leaderBook.addRecipe(recipe("Coffee", 50));
+		ByteBuffer full = leader.changesSince(0);
+		assertTrue(follower.apply(full.duplicate()));
+		for (int i = 0; i < 3; i++) {
+			leaderBook.addRecipe(recipe("Latte " + i, 60));
+		}
+		ByteBuffer delta = leader.changesSince(1);
+		assertEquals(RecipeBookLeader.DELTA, delta.get(0));
+		assertTrue(follower.apply(delta.duplicate()));
+		assertFalse(follower.apply(delta.duplicate()));
+		assertFalse(follower.apply(full.duplicate()));
+		assertSameBook();
+		assertEquals(3, leader.changesSince(4).remaining());
+	}
+
+	/**
+	 * A follower the log no longer reaches back to gets a snapshot.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testSnapshotWhenFarBehind() throws RecipeException {
+		for (int i = 0; i < 10; i++) {
+			leaderBook.addRecipe(recipe("Drink " + i, 10 + i));
+		}
+		leaderBook.deleteRecipe(3);
+		assertEquals(RecipeBookLeader.SNAPSHOT, leader.changesSince(0).get(0));
+		assertEquals(RecipeBookLeader.DELTA, leader.changesSince(8).get(0));
+		follower.poll();
+		assertSameBook();
+		assertNull(followerBook.getRecipe("Drink 3"));
+
+		leaderBook.addRecipe(recipe("Drink 10", 20));
+		follower.poll();
+		assertSameBook();
+		assertEquals("Drink 10", followerBook.getRecipes()[3].getName());
+		assertEquals(10, followerBook.getRecipeId("Drink 10"));
+	}
+
+	/**
+	 * The leader pushes new changes to followers that have polled,
+	 * and one that was offline catches up when it polls again.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testPushAndOffline() throws RecipeException {
+		RecipeBook otherBook = new RecipeBook();
+		RecipeBookFollower other = RecipeBookFollower.follow(otherBook, 2, 0, transport);
+		follower.poll();
+		other.poll();
+		leaderBook.addRecipe(recipe("Coffee", 50));
+		transport.disconnect(2);
+		assertEquals(1, leader.push());
+		assertSameBook();
+		assertEquals(0, otherBook.getVersion());
+
+		transport.reconnect(2);
+		leaderBook.addRecipe(recipe("Tea", 30));
+		assertEquals(2, leader.push());
+		assertEquals(leaderBook.getVersion(), otherBook.getVersion());
+		assertEquals(30, otherBook.getRecipe("Tea").getPrice());
+		assertEquals(0, leader.push());
+	}
+
+	/**
+	 * A delta that starts after the follower's version is not applied.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testGapIgnored() throws RecipeException {
+		leaderBook.addRecipe(recipe("Coffee", 50));
+		leaderBook.addRecipe(recipe("Tea", 30));
+		assertFalse(follower.apply(leader.changesSince(1)));
+		assertEquals(0, follower.getVersion());
+	}
+
+	/**
+	 * Deltas with a negative slot, an id too large for an int, or a
+	 * live id without a recipe are refused and change nothing.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testMalformedDelta() throws RecipeException {
+		Recipe coffee = recipe("Coffee", 50);
+		assertMalformed(delta(-1, 1, coffee), "Bad slot -1");
+		assertMalformed(delta(0, 1L << 40, coffee), "Recipe id does not fit in an int");
+		assertMalformed(delta(0, -1, coffee), "Recipe id does not fit in an int");
+		assertMalformed(delta(0, 1, null), "Recipe id 0 has no recipe");
+		assertEquals(0, follower.getVersion());
+		assertNull(followerBook.getRecipes()[0]);
+
+		assertTrue(follower.apply(delta(0, 1, coffee)));
+		assertEquals("Coffee", followerBook.getRecipes()[0].getName());
+	}
+
+	/** Returns a delta from version 0 with one change of the given slot. */
+	private static ByteBuffer delta(long slot, long sentId, Recipe recipe) {
+		ByteBuffer message = ByteBuffer.allocate(64 + WireFormat.recipeBytes(recipe));
+		message.put(RecipeBookLeader.DELTA);
+		WireFormat.putVarLong(message, 0);
+		WireFormat.putVarLong(message, 1);
+		WireFormat.putVarLong(message, 1);
+		WireFormat.putVarLong(message, slot);
+		WireFormat.putVarLong(message, sentId);
+		WireFormat.putRecipe(message, recipe);
+		message.flip();
+		return message;
+	}
+
+	private void assertMalformed(ByteBuffer message, String error) {
+		try {
+			follower.apply(message);
+			fail("A malformed delta should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals(error, e.getMessage());
+		}
+	}
+}
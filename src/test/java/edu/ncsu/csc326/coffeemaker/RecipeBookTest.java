@@ -0,0 +1,158 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RecipeBook class.
+ */
+public class RecipeBookTest {
+
+    private RecipeBook recipeBook;
+
+    @Before
+    public void setUp() {
+        recipeBook = new RecipeBook();
+    }
+
+    private static Recipe namedRecipe(String name) {
+        Recipe recipe = new Recipe();
+        recipe.setName(name);
+        return recipe;
+    }
+
+    /**
+     * Given a recipe book with many recipes
+     * Then each recipe is found by name and by its stable id,
+     * and the recipes stay in the order they were added.
+     */
+    @Test
+    public void testLookupByNameAndId() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(recipeBook.addRecipe(namedRecipe("Recipe " + i)));
+        }
+        assertEquals(100, recipeBook.size());
+        for (int i = 0; i < 100; i++) {
+            int id = recipeBook.getRecipeId("Recipe " + i);
+            assertSame(recipeBook.getRecipe("Recipe " + i), recipeBook.getRecipeById(id));
+            assertEquals("Recipe " + i, recipeBook.getRecipes()[i].getName());
+        }
+    }
+
+    /**
+     * Given a deleted recipe
+     * Then its name and id no longer resolve, the name can be added
+     * again under a new id and the freed slot is reused.
+     */
+    @Test
+    public void testDeleteFreesNameAndSlot() {
+        recipeBook.addRecipe(namedRecipe("Coffee"));
+        recipeBook.addRecipe(namedRecipe("Mocha"));
+        int oldId = recipeBook.getRecipeId("Coffee");
+
+        assertEquals("Coffee", recipeBook.deleteRecipe(0));
+        assertNull(recipeBook.getRecipe("Coffee"));
+        assertNull(recipeBook.getRecipeById(oldId));
+
+        assertTrue(recipeBook.addRecipe(namedRecipe("Coffee")));
+        assertNotEquals(oldId, recipeBook.getRecipeId("Coffee"));
+        assertEquals("Coffee", recipeBook.getRecipes()[0].getName());
+    }
+
+    /**
+     * Given an edit that renames a recipe
+     * Then the recipe keeps its id and is found under the new name,
+     * while renaming onto another recipe's name is refused.
+     */
+    @Test
+    public void testEditKeepsIdAndUpdatesName() {
+        recipeBook.addRecipe(namedRecipe("Coffee"));
+        recipeBook.addRecipe(namedRecipe("Mocha"));
+        int id = recipeBook.getRecipeId("Coffee");
+
+        assertEquals("Coffee", recipeBook.editRecipe(0, namedRecipe("Latte")));
+        assertNull(recipeBook.getRecipe("Coffee"));
+        assertEquals(id, recipeBook.getRecipeId("Latte"));
+
+        assertNull(recipeBook.editRecipe(0, namedRecipe("Mocha")));
+        assertEquals("Latte", recipeBook.getRecipes()[0].getName());
+    }
+
+    /**
+     * Given an edit without a name, as the console menu does
+     * Then the recipe keeps its old name.
+     */
+    @Test
+    public void testEditWithoutNameKeepsName() {
+        recipeBook.addRecipe(namedRecipe("Coffee"));
+        assertEquals("Coffee", recipeBook.editRecipe(0, new Recipe()));
+        assertEquals("Coffee", recipeBook.getRecipes()[0].getName());
+    }
+
+    /**
+     * Given a snapshot taken before a series of edits
+     * Then the snapshot still shows the book as it was, and every
+     * edit moves the version on by one.
+     */
+    @Test
+    public void testSnapshotIsUnaffectedByLaterEdits() {
+        recipeBook.addRecipe(namedRecipe("Coffee"));
+        RecipeBook.Snapshot before = recipeBook.snapshot();
+
+        recipeBook.editRecipe(0, namedRecipe("Latte"));
+        recipeBook.addRecipe(namedRecipe("Mocha"));
+        recipeBook.deleteRecipe(1);
+
+        assertEquals("Coffee", before.getRecipes()[0].getName());
+        assertNull(before.getRecipes()[1]);
+        assertEquals(1, before.size());
+        assertEquals(before.getVersion() + 3, recipeBook.getVersion());
+    }
+
+    /**
+     * Given a recipe that is changed after it was added
+     * Then the book keeps the recipe as it was when added.
+     */
+    @Test
+    public void testBookKeepsItsOwnCopy() throws Exception {
+        Recipe coffee = namedRecipe("Coffee");
+        coffee.setPrice("50");
+        recipeBook.addRecipe(coffee);
+        coffee.setPrice("75");
+        assertEquals(50, recipeBook.getRecipe("Coffee").getPrice());
+    }
+
+    /**
+     * Given a recipe read from the book or one of its snapshots
+     * Then neither the array nor the recipe can change what other
+     * readers see, and an edited copy replaces it through editRecipe.
+     *
+     * @throws RecipeException if the price is negative.
+     */
+    @Test
+    public void testReadersCannotChangeBook() throws RecipeException {
+        recipeBook.addRecipe(namedRecipe("Coffee"));
+        RecipeBook.Snapshot snapshot = recipeBook.snapshot();
+        recipeBook.getRecipes()[0] = namedRecipe("Tea");
+        snapshot.getRecipes()[0] = null;
+        assertEquals("Coffee", recipeBook.getRecipes()[0].getName());
+        assertEquals("Coffee", snapshot.getRecipes()[0].getName());
+
+        Recipe shared = recipeBook.getRecipe("Coffee");
+        try {
+            shared.setPrice(75);
+            fail("A recipe in the book should refuse changes");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(0, snapshot.getRecipes()[0].getPrice());
+        }
+        Recipe copy = new Recipe(shared);
+        copy.setPrice(75);
+        assertEquals("Coffee", recipeBook.editRecipe(0, copy));
+        assertEquals(75, recipeBook.getRecipes()[0].getPrice());
+        assertEquals(0, snapshot.getRecipes()[0].getPrice());
+    }
+}
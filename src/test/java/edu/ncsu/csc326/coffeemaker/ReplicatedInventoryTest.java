@@ -0,0 +1,190 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for ReplicatedInventory over a LoopbackTransport.
+ */
+public class ReplicatedInventoryTest {
+
+	private AtomicLong now;
+	private LoopbackTransport transport;
+	private ReplicatedInventory a;
+	private ReplicatedInventory b;
+	private ReplicatedInventory c;
+	private Recipe coffee;
+
+	@Before
+	public void setUp() throws RecipeException {
+		now = new AtomicLong(1000);
+		transport = new LoopbackTransport();
+		a = ReplicatedInventory.join(0, 3, transport, now::get);
+		b = ReplicatedInventory.join(1, 3, transport, now::get);
+		c = ReplicatedInventory.join(2, 3, transport, now::get);
+		coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setAmtMilk(1);
+	}
+
+	private void syncAll() {
+		a.sync();
+		b.sync();
+		c.sync();
+	}
+
+	/**
+	 * Restocks and sales on any node reach every node.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testConverge() throws InventoryException {
+		a.restock(new int[] {10, 10});
+		assertEquals(0, b.getAmount(IngredientCatalog.COFFEE));
+		syncAll();
+		assertTrue(b.useIngredients(coffee));
+		assertTrue(c.useIngredients(coffee));
+		syncAll();
+		for (ReplicatedInventory node : new ReplicatedInventory[] {a, b, c}) {
+			assertEquals(4, node.getAmount(IngredientCatalog.COFFEE));
+			assertEquals(8, node.getAmount(IngredientCatalog.MILK));
+		}
+		assertFalse(a.useIngredients(coffee) && a.useIngredients(coffee));
+	}
+
+	/**
+	 * Changes made while a node is offline are sent once it is back,
+	 * and counters pass through a node to peers that never met.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testOfflineAndRelay() throws InventoryException {
+		transport.disconnect(2);
+		a.restock(new int[] {6, 2});
+		assertEquals(1, a.sync());
+		transport.disconnect(0);
+		transport.reconnect(2);
+		b.sync();
+		assertEquals(6, c.getAmount(IngredientCatalog.COFFEE));
+
+		assertTrue(c.useIngredients(coffee));
+		c.sync();
+		transport.reconnect(0);
+		b.sync();
+		assertEquals(3, a.getAmount(IngredientCatalog.COFFEE));
+		assertEquals(1, a.getAmount(IngredientCatalog.MILK));
+	}
+
+	/**
+	 * Two partitioned nodes can sell the same units; the oversell is
+	 * seen once they merge, and merging again changes nothing.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testOversellDetected() throws InventoryException {
+		a.restock(new int[] {3, 1});
+		syncAll();
+		transport.disconnect(0);
+		assertTrue(a.useIngredients(coffee));
+		assertTrue(b.useIngredients(coffee));
+		assertEquals(0, b.getOversold(IngredientCatalog.COFFEE));
+		transport.reconnect(0);
+		syncAll();
+		syncAll();
+		assertEquals(3, a.getOversold(IngredientCatalog.COFFEE));
+		assertEquals(-3, c.getAmount(IngredientCatalog.COFFEE));
+		assertEquals(1, b.getOversold(IngredientCatalog.MILK));
+	}
+
+	/**
+	 * A node that has not heard from a peer for too long stops selling
+	 * until it hears from it again.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testMaxStaleness() throws InventoryException {
+		a.restock(new int[] {30, 10});
+		a.setMaxStaleness(500);
+		transport.disconnect(2);
+		now.addAndGet(400);
+		syncAll();
+		assertTrue(a.useIngredients(coffee));
+		now.addAndGet(200);
+		b.sync();
+		assertEquals(600, a.getStaleness());
+		assertTrue(a.isStale());
+		assertFalse(a.useIngredients(coffee));
+		transport.reconnect(2);
+		c.sync();
+		assertFalse(a.isStale());
+		assertTrue(a.useIngredients(coffee));
+	}
+
+	/**
+	 * A delta names only the counters that changed, a few bytes each.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testCompactDeltas() throws InventoryException {
+		a.restock(new int[] {1000, 1000});
+		syncAll();
+		long before = transport.getBytes();
+		assertTrue(a.useIngredients(coffee));
+		a.sync();
+		// Per peer: a count, then two counters of a one-byte key and a one-byte value.
+		assertEquals(2 * 5, transport.getBytes() - before);
+	}
+
+	/**
+	 * A malformed message is refused.
+	 */
+	@Test
+	public void testMalformed() {
+		try {
+			a.receive(1, ByteBuffer.wrap(new byte[] {2, 0}));
+			fail("A truncated message should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Truncated message from node 1", e.getMessage());
+		}
+		try {
+			a.receive(1, ByteBuffer.wrap(new byte[] {1, (byte) 0xff, (byte) 0xff, 0x7f, 1}));
+			fail("An unknown counter should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Bad counter 2097151", e.getMessage());
+		}
+	}
+
+	/**
+	 * A corrupt delta whose counter key decodes to a negative number is
+	 * refused rather than indexing the counters with it.
+	 */
+	@Test
+	public void testNegativeKey() {
+		byte[] message = new byte[12];
+		message[0] = 1;
+		// Ten varint bytes setting all 64 bits: the key decodes to -1.
+		for (int i = 1; i < 10; i++) {
+			message[i] = (byte) 0xff;
+		}
+		message[10] = 0x01;
+		message[11] = 1;
+		try {
+			a.receive(1, ByteBuffer.wrap(message));
+			fail("A negative counter should be refused");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Bad counter -1", e.getMessage());
+		}
+	}
+}
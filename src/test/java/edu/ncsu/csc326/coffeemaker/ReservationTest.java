@@ -0,0 +1,152 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for reserving, committing and aborting ingredients.
+ */
+public class ReservationTest {
+
+    private Inventory inventory;
+    private ReservationWheel wheel;
+    private Recipe coffee;
+
+    @Before
+    public void setUp() throws RecipeException {
+        inventory = new Inventory();
+        wheel = new ReservationWheel(10, 8);
+        coffee = new Recipe();
+        coffee.setName("Coffee");
+        coffee.setAmtCoffee("5");
+        coffee.setAmtMilk("1");
+        coffee.setPrice("50");
+    }
+
+    /**
+     * Held ingredients are not available to other sales, so the
+     * fourth reservation of a recipe needing 5 of 15 coffee fails.
+     */
+    @Test
+    public void testReservedStockIsNotAvailable() {
+        assertNotNull(inventory.reserve(coffee, 60000, wheel));
+        assertNotNull(inventory.reserve(coffee, 60000, wheel));
+        assertNotNull(inventory.reserve(coffee, 60000, wheel));
+        assertNull(inventory.reserve(coffee, 60000, wheel));
+        assertFalse(inventory.useIngredients(coffee));
+    }
+
+    /**
+     * A committed reservation keeps its ingredients and cannot be aborted.
+     */
+    @Test
+    public void testCommit() {
+        Reservation reservation = inventory.reserve(coffee, 60000, wheel);
+        assertTrue(inventory.commit(reservation));
+        assertFalse(inventory.abort(reservation));
+        assertTrue(reservation.isCommitted());
+        assertEquals(10, inventory.getCoffee());
+    }
+
+    /**
+     * An aborted reservation puts its ingredients back exactly once.
+     */
+    @Test
+    public void testAbort() {
+        Reservation reservation = inventory.reserve(coffee, 60000, wheel);
+        assertTrue(inventory.abort(reservation));
+        assertFalse(inventory.abort(reservation));
+        assertFalse(inventory.commit(reservation));
+        assertEquals(15, inventory.getCoffee());
+        assertEquals(15, inventory.getMilk());
+    }
+
+    /**
+     * A reservation nobody settles is released once the wheel passes
+     * its deadline, and not before.
+     */
+    @Test
+    public void testTimeoutReleases() {
+        Reservation reservation = inventory.reserve(coffee, 1000, wheel);
+        wheel.advanceTo(reservation.getDeadline() - 500);
+        assertTrue(reservation.isPending());
+        assertEquals(10, inventory.getCoffee());
+
+        wheel.advanceTo(reservation.getDeadline() + 10);
+        assertFalse(reservation.isPending());
+        assertEquals(15, inventory.getCoffee());
+        assertFalse(inventory.commit(reservation));
+    }
+
+    /**
+     * Through the coffee maker, a short payment releases the
+     * reservation and a full payment returns the change.
+     */
+    @Test
+    public void testCoffeeMakerReserveAndCommit() {
+        CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+        coffeeMaker.addRecipe(coffee);
+
+        Reservation shortPaid = coffeeMaker.reserveCoffee(0, 60000);
+        assertEquals(25, coffeeMaker.commitCoffee(shortPaid, 25));
+        assertEquals(15, inventory.getCoffee());
+
+        Reservation paid = coffeeMaker.reserveCoffee(0, 60000);
+        assertEquals(25, coffeeMaker.commitCoffee(paid, 75));
+        assertEquals(10, inventory.getCoffee());
+    }
+
+    /**
+     * A listener that throws while an expired reservation is released
+     * does not stop the wheel from releasing the others in its bucket.
+     */
+    @Test
+    public void testTimeoutSurvivesFailingListener() {
+        Reservation first = inventory.reserve(coffee, 1000, wheel);
+        Reservation second = inventory.reserve(coffee, 1000, wheel);
+        inventory.addListener((inv, before, after) -> {
+            throw new IllegalStateException("listener failed");
+        });
+
+        wheel.advanceTo(Math.max(first.getDeadline(), second.getDeadline()) + 10);
+        assertFalse(first.isPending());
+        assertFalse(second.isPending());
+        assertEquals(15, inventory.getCoffee());
+    }
+
+    /**
+     * A committed purchase is counted, recorded and paid out like one
+     * made by makeCoffee, and one without exact change is refused and
+     * released.
+     */
+    @Test
+    public void testCommitAccounting() {
+        CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+        coffeeMaker.addRecipe(coffee);
+        SalesLedger ledger = new SalesLedger();
+        coffeeMaker.setSalesLedger(ledger);
+        ChangeDispenser dispenser = new ChangeDispenser(100, 25, 10, 5);
+        dispenser.addCoins(1, 0, 0);
+        coffeeMaker.setChangeDispenser(dispenser);
+
+        int[] coins = new int[3];
+        Reservation paid = coffeeMaker.reserveCoffee(0, 60000);
+        assertEquals(25, coffeeMaker.commitCoffee(paid, 75, coins));
+        assertArrayEquals(new int[] {1, 0, 0}, coins);
+        assertTrue(paid.isCommitted());
+
+        Reservation noChange = coffeeMaker.reserveCoffee(0, 60000);
+        assertEquals(75, coffeeMaker.commitCoffee(noChange, 75, coins));
+        assertArrayEquals(new int[] {0, 0, 0}, coins);
+        assertFalse(noChange.isPending());
+        assertEquals(10, inventory.getCoffee());
+
+        CoffeeMakerMetrics.Snapshot snapshot = coffeeMaker.getMetrics().snapshot();
+        assertEquals(1, snapshot.getCount(0, CoffeeMakerMetrics.Outcome.SOLD));
+        assertEquals(1, snapshot.getCount(0, CoffeeMakerMetrics.Outcome.NOT_ENOUGH_CHANGE));
+        assertEquals(2, ledger.size());
+    }
+}
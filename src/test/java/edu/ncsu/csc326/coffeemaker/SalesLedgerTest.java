@@ -0,0 +1,168 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.CoffeeMakerMetrics.Outcome;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for SalesLedger.
+ */
+public class SalesLedgerTest {
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long START = 1700000000000L;
+
+	private SalesLedger ledger;
+
+	@Before
+	public void setUp() {
+		ledger = new SalesLedger();
+	}
+
+	/**
+	 * Columns survive being compressed and decoded.
+	 */
+	@Test
+	public void testEncodeDecode() {
+		long[] times = {START, START + 5, START + 5, START - 1000, 0};
+		long[] decodedTimes = new long[times.length];
+		SalesLedger.decodeSteps(SalesLedger.encodeSteps(times, times.length), decodedTimes);
+		assertArrayEquals(times, decodedTimes);
+
+		int[] values = {0, 1, -1, 300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		int[] decoded = new int[values.length];
+		SalesLedger.decode(SalesLedger.encode(values, values.length), decoded);
+		assertArrayEquals(values, decoded);
+		assertEquals(3, SalesLedger.encode(new int[] {0, 1, 2}, 3).length);
+	}
+
+	/**
+	 * Revenue is added up per recipe and hour, counting only sales
+	 * inside the period.
+	 */
+	@Test
+	public void testRevenueByRecipeAndHour() {
+		ledger.record(START, 0, 50, 60, Outcome.SOLD);
+		ledger.record(START + 10, 0, 50, 50, Outcome.SOLD);
+		ledger.record(START + HOUR + 1, 0, 50, 75, Outcome.SOLD);
+		ledger.record(START + HOUR + 2, 3, 75, 80, Outcome.SOLD);
+		ledger.record(START + HOUR + 3, 3, 75, 10, Outcome.NOT_ENOUGH_MONEY);
+		ledger.record(START + 3 * HOUR, 3, 75, 75, Outcome.SOLD);
+		ledger.record(START - 1, 0, 50, 50, Outcome.SOLD);
+		ledger.record(START, -1, 0, 50, Outcome.NO_RECIPE);
+
+		SalesLedger.Revenue revenue = ledger.revenueByRecipeAndHour(START, 3);
+		assertEquals(100, revenue.getRevenue(0, 0));
+		assertEquals(2, revenue.getSold(0, 0));
+		assertEquals(50, revenue.getRevenue(0, 1));
+		assertEquals(75, revenue.getRevenue(3, 1));
+		assertEquals(1, revenue.getSold(3, 1));
+		assertEquals(75, revenue.getRevenue(3));
+		assertEquals(0, revenue.getRevenue(7, 2));
+		assertEquals(8, ledger.size());
+		assertArrayEquals(new long[] {6, 1, 1, 0, 0}, ledger.countByOutcome());
+	}
+
+	/**
+	 * Orders recorded by many threads, filling and compressing many
+	 * chunks, are all counted.
+	 * @throws Exception
+	 */
+	@Test
+	public void testManyChunks() throws Exception {
+		final int perThread = 3 * SalesLedger.CHUNK_ROWS + 100;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int recipe = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < perThread; i++) {
+					ledger.record(START + i, recipe, 10 + recipe, 100, Outcome.SOLD);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4L * perThread, ledger.size());
+		SalesLedger.Revenue revenue = ledger.revenueByRecipeAndHour(START, 1);
+		for (int recipe = 0; recipe < 4; recipe++) {
+			assertEquals(perThread, revenue.getSold(recipe, 0));
+			assertEquals((10L + recipe) * perThread, revenue.getRevenue(recipe, 0));
+		}
+	}
+
+	/**
+	 * Chunks left part full by threads that have died are sealed by
+	 * the next query at the latest and still counted, while a live thread's chunk
+	 * stays open.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAbandonedChunksSealed() throws Exception {
+		ledger.record(START, 0, 10, 10, Outcome.SOLD);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 20; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 3; i++) {
+					ledger.record(START + i, 1, 20, 20, Outcome.SOLD);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(61L, ledger.size());
+		assertEquals(61L, ledger.countByOutcome()[Outcome.SOLD.ordinal()]);
+		assertEquals(1, ledger.rawChunks());
+		assertEquals(60L, ledger.revenueByRecipeAndHour(START, 1).getSold(1, 0));
+
+		ledger.record(START, 0, 10, 10, Outcome.SOLD);
+		assertEquals(2L, ledger.revenueByRecipeAndHour(START, 1).getSold(0, 0));
+	}
+
+	/**
+	 * A coffee maker records every order with the recipe's stable id.
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testCoffeeMakerRecords() throws RecipeException {
+		CoffeeMaker coffeeMaker = new CoffeeMaker();
+		coffeeMaker.setSalesLedger(ledger);
+		Recipe coffee = new Recipe();
+		coffee.setName("Coffee");
+		coffee.setAmtCoffee(3);
+		coffee.setPrice(50);
+		Recipe tea = new Recipe(coffee);
+		tea.setName("Tea");
+		coffeeMaker.addRecipe(coffee);
+		coffeeMaker.addRecipe(tea);
+		coffeeMaker.deleteRecipe(0);
+		Recipe latte = new Recipe(coffee);
+		latte.setName("Latte");
+		latte.setPrice(60);
+		coffeeMaker.addRecipe(latte);
+
+		long start = System.currentTimeMillis() - 1;
+		coffeeMaker.makeCoffee(0, 100);
+		coffeeMaker.makeCoffee(1, 20);
+		coffeeMaker.makeCoffeeBatch(new int[] {0, 1, 3}, new int[] {60, 50, 50});
+		assertArrayEquals(new long[] {3, 1, 1, 0, 0}, ledger.countByOutcome());
+		SalesLedger.Revenue revenue = ledger.revenueByRecipeAndHour(start, 1);
+		assertEquals(120, revenue.getRevenue(2));
+		assertEquals(50, revenue.getRevenue(1));
+		assertEquals(0, revenue.getRevenue(0));
+	}
+}
@@ -0,0 +1,170 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for stock threshold alerts.
+ */
+public class StockAlertTest {
+
+	private Inventory inventory;
+	private StockAlertDispatcher dispatcher;
+	private List<StockAlert> alerts;
+	private StockThresholdListener recorder;
+	private Recipe latte;
+
+	@Before
+	public void setUp() throws RecipeException {
+		inventory = new Inventory();
+		dispatcher = new StockAlertDispatcher();
+		alerts = new ArrayList<StockAlert>();
+		recorder = alerts::add;
+		latte = new Recipe();
+		latte.setName("Latte");
+		latte.setAmtMilk(4);
+	}
+
+	/**
+	 * Falling below the threshold and climbing back each queue one
+	 * alert; changes that stay on one side queue nothing.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testCrossings() throws InventoryException {
+		inventory.addThresholdListener(IngredientCatalog.MILK, 5, recorder, dispatcher);
+		assertTrue(inventory.useIngredients(latte));
+		assertTrue(inventory.useIngredients(latte));
+		assertEquals(0, dispatcher.deliverPending());
+
+		assertTrue(inventory.useIngredients(latte));
+		assertTrue(alerts.isEmpty());
+		assertEquals(1, dispatcher.deliverPending());
+		StockAlert low = alerts.get(0);
+		assertTrue(low.isLow());
+		assertEquals(IngredientCatalog.MILK, low.getIngredient());
+		assertEquals(3, low.getUnits());
+		assertEquals("Milk low: 3 units (threshold 5)", low.toString());
+
+		inventory.addMilk(1);
+		inventory.addCoffee(10);
+		assertEquals(0, dispatcher.deliverPending());
+		inventory.addMilk(1);
+		assertEquals(1, dispatcher.deliverPending());
+		assertFalse(alerts.get(1).isLow());
+		assertEquals(5, alerts.get(1).getUnits());
+	}
+
+	/**
+	 * A listener registered while the stock is already low hears so
+	 * at once, and a removed listener hears nothing more.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testRegisterWhileLowAndRemove() throws InventoryException {
+		inventory.addThresholdListener(IngredientCatalog.COFFEE, 20, recorder, dispatcher);
+		assertEquals(1, dispatcher.deliverPending());
+		assertEquals(15, alerts.get(0).getUnits());
+
+		inventory.removeThresholdListener(recorder);
+		inventory.addCoffee(10);
+		assertEquals(0, dispatcher.deliverPending());
+	}
+
+	/**
+	 * A listener that throws does not stop the alerts after it.
+	 */
+	@Test
+	public void testFailingListener() {
+		inventory.addThresholdListener(IngredientCatalog.MILK, 100, alert -> {
+			throw new IllegalStateException("broken");
+		}, dispatcher);
+		inventory.addThresholdListener(IngredientCatalog.MILK, 100, recorder, dispatcher);
+		assertEquals(2, dispatcher.deliverPending());
+		assertEquals(1, alerts.size());
+	}
+
+	/**
+	 * A listener that blocks is called on the dispatcher thread and
+	 * does not hold up sales.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void testSlowListenerDoesNotBlockSales() throws Exception {
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		latte.setPrice(10);
+		coffeeMaker.addRecipe(latte);
+		final CountDownLatch called = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread seller = Thread.currentThread();
+		final List<Thread> callers = new ArrayList<Thread>();
+		coffeeMaker.addThresholdListener(IngredientCatalog.MILK, 10, alert -> {
+			callers.add(Thread.currentThread());
+			called.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, coffeeMaker.makeCoffee(0, 10));
+		}
+		assertTrue(called.await(5, TimeUnit.SECONDS));
+		assertFalse(callers.contains(seller));
+		release.countDown();
+	}
+
+	/**
+	 * An alert the stock has moved back past by delivery time is
+	 * dropped, so the last alert heard agrees with the stock.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testStaleAlertDropped() throws InventoryException {
+		inventory.addThresholdListener(IngredientCatalog.MILK, 5, recorder, dispatcher);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(inventory.useIngredients(latte));
+		}
+		inventory.addMilk(10);
+		assertEquals(1, dispatcher.deliverPending());
+		assertEquals(1, alerts.size());
+		assertFalse(alerts.get(0).isLow());
+		assertEquals(13, alerts.get(0).getUnits());
+	}
+
+	/**
+	 * A listener that throws an Error does not stop the dispatcher
+	 * thread from delivering later alerts.
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void testDispatcherSurvivesError() throws Exception {
+		dispatcher.start();
+		final CountDownLatch delivered = new CountDownLatch(1);
+		inventory.addThresholdListener(IngredientCatalog.MILK, 5, alert -> {
+			if (alert.isLow()) {
+				throw new AssertionError("broken");
+			}
+			delivered.countDown();
+		}, dispatcher);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(inventory.useIngredients(latte));
+		}
+		Thread.sleep(50);
+		inventory.addMilk(10);
+		assertTrue(delivered.await(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,219 @@
+package edu.ncsu.csc326.coffeemaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ncsu.csc326.coffeemaker.exceptions.InventoryException;
+import edu.ncsu.csc326.coffeemaker.exceptions.RecipeException;
+
+/**
+ * Unit tests for StripedRestocker and striped restocking in CoffeeMaker.
+ */
+public class StripedRestockerTest {
+
+	private Inventory inventory;
+	private StripedRestocker restocker;
+
+	@Before
+	public void setUp() {
+		inventory = new Inventory();
+		restocker = new StripedRestocker(inventory, 4);
+	}
+
+	/**
+	 * Restocks wait in the cells until they are folded in.
+	 * @throws InventoryException
+	 */
+	@Test
+	public void testFold() throws InventoryException {
+		restocker.restock(new int[] {1, 2, 3, 4});
+		restocker.restock(new int[] {1});
+		assertEquals(15, inventory.getCoffee());
+		assertTrue(restocker.fold());
+		assertEquals(17, inventory.getCoffee());
+		assertEquals(17, inventory.getMilk());
+		assertEquals(19, inventory.getChocolate());
+		assertFalse(restocker.fold());
+	}
+
+	/**
+	 * A delivery with a negative amount adds nothing.
+	 */
+	@Test
+	public void testNegative() {
+		try {
+			restocker.restock(new int[] {5, 0, -1});
+			fail("A negative amount should be refused");
+		} catch (InventoryException e) {
+			assertEquals("Units of sugar must be a positive integer", e.getMessage());
+		}
+		assertFalse(restocker.fold());
+	}
+
+	/**
+	 * Every unit added from many threads arrives exactly once.
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentRestocks() throws Exception {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					try {
+						restocker.restock(new int[] {1, 0, 2});
+					} catch (InventoryException e) {
+						throw new IllegalStateException(e);
+					}
+					if (i % 1000 == 0) {
+						restocker.fold();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		restocker.fold();
+		assertEquals(80015, inventory.getCoffee());
+		assertEquals(15, inventory.getMilk());
+		assertEquals(160015, inventory.getSugar());
+	}
+
+	/**
+	 * A sale that finds the stock short folds in the waiting restocks,
+	 * and checking the inventory shows them.
+	 * @throws InventoryException
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testCoffeeMakerFoldsWhenShort() throws InventoryException, RecipeException {
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		Recipe mocha = new Recipe();
+		mocha.setName("Mocha");
+		mocha.setAmtChocolate(20);
+		mocha.setPrice(10);
+		coffeeMaker.addRecipe(mocha);
+		coffeeMaker.setStripedRestocking(true);
+		try {
+			coffeeMaker.addInventory(0, 0, 0, 5);
+			assertEquals(0, coffeeMaker.makeCoffee(0, 10));
+			assertEquals(0, inventory.getChocolate());
+
+			coffeeMaker.addInventory(7, 0, 0, 0);
+			assertTrue(coffeeMaker.checkInventory().startsWith("Coffee: 22\n"));
+		} finally {
+			coffeeMaker.setStripedRestocking(false);
+		}
+		coffeeMaker.addInventory(1, 0, 0, 0);
+		assertEquals(23, inventory.getCoffee());
+	}
+
+	/**
+	 * A batch that finds the stock short folds in the waiting restocks,
+	 * and so do the snapshot forms of checkInventory.
+	 * @throws InventoryException
+	 * @throws RecipeException
+	 */
+	@Test
+	public void testBatchAndSnapshotsFold() throws InventoryException, RecipeException {
+		CoffeeMaker coffeeMaker = new CoffeeMaker(new RecipeBook(), inventory);
+		Recipe mocha = new Recipe();
+		mocha.setName("Mocha");
+		mocha.setAmtChocolate(10);
+		mocha.setPrice(10);
+		coffeeMaker.addRecipe(mocha);
+		coffeeMaker.setStripedRestocking(true);
+		try {
+			coffeeMaker.addInventory(0, 0, 0, 5);
+			int[] change = coffeeMaker.makeCoffeeBatch(new int[] {0, 0, 0}, new int[] {10, 10, 10});
+			assertEquals(0, change[0]);
+			assertEquals(0, change[1]);
+			assertEquals(10, change[2]);
+
+			coffeeMaker.addInventory(7, 0, 0, 0);
+			int[] stock = new int[4];
+			coffeeMaker.checkInventory(stock);
+			assertEquals(22, stock[0]);
+			coffeeMaker.addInventory(1, 0, 0, 0);
+			assertEquals(23, coffeeMaker.checkInventory(new InventorySnapshot()).getCoffee());
+		} finally {
+			coffeeMaker.setStripedRestocking(false);
+		}
+	}
+
+	/**
+	 * Restocks racing with stop all reach the inventory, before or
+	 * after it.
+	 * @throws Exception
+	 */
+	@Test
+	public void testStopKeepsRestocksInFlight() throws Exception {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 20000; i++) {
+					try {
+						restocker.restock(new int[] {1});
+					} catch (InventoryException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(1);
+		restocker.stop();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(restocker.fold());
+		assertEquals(80015, inventory.getCoffee());
+	}
+
+	/**
+	 * The background reconciler keeps folding after a fold fails.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReconcilerSurvivesFailure() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		inventory.addListener((inv, before, after) -> {
+			if (calls.getAndIncrement() == 0) {
+				throw new IllegalStateException("listener failed");
+			}
+		});
+		restocker.start(1);
+		try {
+			restocker.restock(new int[] {1});
+			waitForCoffee(16);
+			restocker.restock(new int[] {2});
+			waitForCoffee(18);
+		} finally {
+			restocker.stop();
+		}
+		assertEquals(2, calls.get());
+	}
+
+	private void waitForCoffee(int units) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (inventory.getCoffee() != units && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(units, inventory.getCoffee());
+	}
+}